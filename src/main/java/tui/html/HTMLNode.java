@@ -17,6 +17,8 @@ package tui.html;
 
 import tui.ui.style.StyleSet;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -162,27 +164,38 @@ public class HTMLNode {
 
 	public String toHTML() {
 		final StringBuilder result = new StringBuilder();
+		try {
+			writeHTML(result);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e); // never happens with a StringBuilder
+		}
+		return result.toString();
+	}
 
+	/**
+	 * Writes the same content as {@link #toHTML()}, without building the whole string first.
+	 */
+	public void writeHTML(Appendable out) throws IOException {
 		if(m_isRoot) {
-			result.append("<!DOCTYPE html><?xml version='1.0' encoding='UTF-8'?>");
-			endOfTag(result);
+			out.append("<!DOCTYPE html><?xml version='1.0' encoding='UTF-8'?>");
+			endOfTag(out);
 		}
 
-		prettyPrintTab(result).append("<").append(m_tagName);
+		prettyPrintTab(out).append("<").append(m_tagName);
 		for(Map.Entry<String, String> attribute : m_attributes.entrySet()) {
-			result.append(" ").append(attribute.getKey());
+			out.append(" ").append(attribute.getKey());
 			if(attribute.getValue() != null) {
 				final String value = attribute.getValue();
 				if(m_decorateAttributesWithSimpleQuotes) {
-					result.append("='").append(value).append("'");
+					out.append("='").append(value).append("'");
 				} else {
-					result.append("=\"").append(value).append("\"");
+					out.append("=\"").append(value).append("\"");
 				}
 			}
 		}
 
 		if(!m_styleProperties.isEmpty()) {
-			result.append(" style")
+			out.append(" style")
 					.append("=\"")
 					.append(StyleSet.computeStyleAttribute(m_styleProperties))
 					.append("\"");
@@ -197,48 +210,47 @@ public class HTMLNode {
 		) {
 			// Empty node
 			if(VOID_TAGS.contains(m_tagName)) {
-				result.append(">"); // HTML5 standard
-				endOfTag(result);
+				out.append(">"); // HTML5 standard
+				endOfTag(out);
 			} else {
-				result.append("></")
+				out.append("></")
 						.append(m_tagName)
 						.append(">");
-				endOfTag(result);
+				endOfTag(out);
 			}
 
 		} else {
 			// Node with content
-			result.append(">"); // ending node's opening tag
+			out.append(">"); // ending node's opening tag
 
 			if(!m_text.isEmpty()) {
 				final String text = m_text.toString();
 				if(m_decorateNewLineWithBR) {
-					result.append(text.replaceAll("\\n", "<br/>"));
+					out.append(text.replaceAll("\\n", "<br/>"));
 				} else {
-					result.append(text);
+					out.append(text);
 				}
 			} else {
-				endOfTag(result);
+				endOfTag(out);
 			}
 
 			for(HTMLNode child : m_children) {
-				result.append(child.toHTML());
+				child.writeHTML(out);
 			}
 
 			if(m_text.isEmpty()) {
-				prettyPrintTab(result);
+				prettyPrintTab(out);
 			}
-			result.append("</").append(m_tagName).append(">");
-			endOfTag(result);
+			out.append("</").append(m_tagName).append(">");
+			endOfTag(out);
 		}
-		return result.toString();
 	}
 
-	private StringBuilder prettyPrintTab(StringBuilder builder) {
+	private Appendable prettyPrintTab(Appendable out) throws IOException {
 		if(PRETTY_PRINT) {
-			builder.append("  ".repeat(Math.max(0, m_prettyPrintDepth)));
+			out.append("  ".repeat(Math.max(0, m_prettyPrintDepth)));
 		}
-		return builder;
+		return out;
 	}
 
 	public static void endOfTag(StringBuilder builder) {
@@ -247,4 +259,10 @@ public class HTMLNode {
 		}
 	}
 
+	static void endOfTag(Appendable out) throws IOException {
+		if(PRETTY_PRINT) {
+			out.append("\n");
+		}
+	}
+
 }
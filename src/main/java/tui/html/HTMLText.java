@@ -15,6 +15,8 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package tui.html;
 
+import java.io.IOException;
+
 public class HTMLText extends HTMLNode {
 
 	private final String m_text;
@@ -28,4 +30,9 @@ public class HTMLText extends HTMLNode {
 	public String toHTML() {
 		return m_text.replaceAll("\\n", "<br/>");
 	}
+
+	@Override
+	public void writeHTML(Appendable out) throws IOException {
+		out.append(toHTML());
+	}
 }
@@ -0,0 +1,283 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Access log written by a background thread. The request threads only copy the fields of their entry into a preallocated ring buffer,
+ * without lock: when the buffer is full, the entry is dropped. The writer formats the entries as JSON lines, writes them in batches
+ * and rolls the file when it is too large.
+ */
+class AccessLog {
+
+	private static final Logger LOG = Logger.getLogger(AccessLog.class.getSimpleName());
+
+	static final long IDLE_PERIOD_ns = 10_000_000;
+	static final long STOP_TIMEOUT_ms = 5_000;
+
+	private final AccessLogSettings m_settings;
+	private final int m_mask;
+
+	// Fields of the entries, by slot
+	private final long[] m_times_ms;
+	private final long[] m_durations_us;
+	private final long[] m_bytes;
+	private final int[] m_statuses;
+	private final String[] m_methods;
+	private final String[] m_paths;
+	private final String[] m_types;
+	private final String[] m_routes;
+	private final String[] m_sessions;
+	private final AtomicLongArray m_published; // sequence + 1 of the entry that is written in each slot
+
+	private final AtomicLong m_tail = new AtomicLong(); // next sequence to be claimed by a request thread
+	private volatile long m_head = 0; // next sequence to be written, moved by the writer only
+	private final LongAdder m_dropped = new LongAdder();
+	private final AtomicLong m_written = new AtomicLong();
+
+	private volatile boolean m_running = false;
+	private Thread m_writer = null;
+	private OutputStream m_out = null;
+	private long m_fileSize = 0;
+
+	AccessLog(AccessLogSettings settings) {
+		m_settings = settings;
+		final int size = settings.getBufferSize();
+		m_mask = size - 1;
+		m_times_ms = new long[size];
+		m_durations_us = new long[size];
+		m_bytes = new long[size];
+		m_statuses = new int[size];
+		m_methods = new String[size];
+		m_paths = new String[size];
+		m_types = new String[size];
+		m_routes = new String[size];
+		m_sessions = new String[size];
+		m_published = new AtomicLongArray(size);
+	}
+
+	synchronized void start() throws IOException {
+		open();
+		m_running = true;
+		m_writer = new Thread(this::run, "tui-access-log");
+		m_writer.setDaemon(true);
+		m_writer.start();
+	}
+
+	/**
+	 * Writes the pending entries, then closes the file.
+	 */
+	synchronized void stop() throws InterruptedException {
+		if(m_writer == null) {
+			return;
+		}
+		m_running = false;
+		LockSupport.unpark(m_writer);
+		m_writer.join(STOP_TIMEOUT_ms);
+		m_writer = null;
+	}
+
+	/**
+	 * Called by the request threads, never blocks.
+	 *
+	 * @param route   Template of the route, or null when the request has not been routed.
+	 * @param session Value of the refresh key header, which starts with the id of the page instance. May be null.
+	 * @return False when the entry is sampled out or dropped.
+	 */
+	boolean append(String method, String path, String type, String route, int status, long bytes, long duration_us, String session) {
+		final double samplingRate = m_settings.getSamplingRate();
+		if(status < 400 && samplingRate < 1 && ThreadLocalRandom.current().nextDouble() >= samplingRate) {
+			return false;
+		}
+		long sequence;
+		do {
+			sequence = m_tail.get();
+			if(sequence - m_head > m_mask) { // full
+				m_dropped.increment();
+				return false;
+			}
+		} while(!m_tail.compareAndSet(sequence, sequence + 1));
+
+		final int slot = (int) sequence & m_mask;
+		m_times_ms[slot] = System.currentTimeMillis();
+		m_durations_us[slot] = duration_us;
+		m_bytes[slot] = bytes;
+		m_statuses[slot] = status;
+		m_methods[slot] = method;
+		m_paths[slot] = path;
+		m_types[slot] = type;
+		m_routes[slot] = route;
+		m_sessions[slot] = session;
+		m_published.set(slot, sequence + 1); // publishes the fields to the writer
+		return true;
+	}
+
+	long getDropped() {
+		return m_dropped.sum();
+	}
+
+	long getWritten() {
+		return m_written.get();
+	}
+
+	private void run() {
+		final StringBuilder line = new StringBuilder(256);
+		while(true) {
+			final boolean running = m_running; // read before writing, so that entries appended before stop() are written
+			final int written = writeBatch(line);
+			if(written == 0) {
+				if(!running) {
+					break;
+				}
+				LockSupport.parkNanos(IDLE_PERIOD_ns);
+			}
+		}
+		try {
+			m_out.close();
+		} catch(IOException e) {
+			LOG.log(Level.WARNING, String.format("Could not close access log %s: %s", m_settings.getFile(), e.getMessage()));
+		}
+	}
+
+	/**
+	 * @return The number of entries taken from the buffer.
+	 */
+	private int writeBatch(StringBuilder line) {
+		long head = m_head;
+		int result = 0;
+		IOException failure = null;
+		while(true) {
+			final int slot = (int) head & m_mask;
+			if(m_published.get(slot) != head + 1) {
+				break;
+			}
+			format(slot, line);
+			clear(slot);
+			head++;
+			m_head = head; // the slot can be reused
+			result++;
+			try {
+				write(line);
+				m_written.incrementAndGet();
+			} catch(IOException e) {
+				failure = e;
+				m_dropped.increment();
+			}
+		}
+		if(result > 0) {
+			try {
+				m_out.flush();
+			} catch(IOException e) {
+				failure = e;
+			}
+		}
+		if(failure != null) {
+			LOG.log(Level.SEVERE, String.format("Could not write access log %s: %s", m_settings.getFile(), failure.getMessage()));
+		}
+		return result;
+	}
+
+	private void format(int slot, StringBuilder line) {
+		line.setLength(0);
+		line.append("{\"time\":\"").append(Instant.ofEpochMilli(m_times_ms[slot])).append('"');
+		line.append(",\"method\":").append(JSONObject.quote(m_methods[slot]));
+		line.append(",\"path\":").append(JSONObject.quote(m_paths[slot]));
+		if(m_routes[slot] != null) {
+			line.append(",\"type\":\"").append(m_types[slot]).append('"');
+			line.append(",\"route\":").append(JSONObject.quote(m_routes[slot]));
+		}
+		line.append(",\"status\":").append(m_statuses[slot]);
+		line.append(",\"bytes\":").append(m_bytes[slot]);
+		line.append(",\"duration_us\":").append(m_durations_us[slot]);
+		final String session = m_sessions[slot];
+		if(session != null) {
+			final int separator = session.indexOf('/');
+			line.append(",\"session\":").append(JSONObject.quote(separator < 0 ? session : session.substring(0, separator)));
+		}
+		line.append("}\n");
+	}
+
+	private void clear(int slot) {
+		m_methods[slot] = null;
+		m_paths[slot] = null;
+		m_types[slot] = null;
+		m_routes[slot] = null;
+		m_sessions[slot] = null;
+	}
+
+	private void write(StringBuilder line) throws IOException {
+		final byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+		if(m_fileSize > 0 && m_fileSize + bytes.length > m_settings.getMaxFileSize()) {
+			roll();
+		}
+		m_out.write(bytes);
+		m_fileSize += bytes.length;
+	}
+
+	private void open() throws IOException {
+		final File file = m_settings.getFile();
+		final File parent = file.getAbsoluteFile().getParentFile();
+		if(parent != null) {
+			Files.createDirectories(parent.toPath());
+		}
+		m_out = new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024);
+		m_fileSize = file.length();
+	}
+
+	/**
+	 * The current file becomes '.1', the previous '.1' becomes '.2', and so on. The oldest file is deleted.
+	 */
+	private void roll() throws IOException {
+		m_out.close();
+		final File file = m_settings.getFile();
+		final int maxFiles = m_settings.getMaxFiles();
+		if(maxFiles == 1) {
+			Files.delete(file.toPath());
+		} else {
+			Files.deleteIfExists(getRolledFile(maxFiles - 1).toPath());
+			for(int i = maxFiles - 2; i >= 1; i--) {
+				final File rolled = getRolledFile(i);
+				if(rolled.exists()) {
+					Files.move(rolled.toPath(), getRolledFile(i + 1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			Files.move(file.toPath(), getRolledFile(1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		open();
+	}
+
+	File getRolledFile(int index) {
+		return new File(m_settings.getFile().getPath() + "." + index);
+	}
+}
@@ -0,0 +1,127 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import tui.ui.UIConfigurationException;
+
+import java.io.File;
+
+/**
+ * Immutable settings of the access log of the backend, see {@link TUIBackend#setAccessLog(AccessLogSettings)}.
+ */
+public class AccessLogSettings {
+
+	public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+	public static final long DEFAULT_MAX_FILE_SIZE = 64L * 1024 * 1024;
+	public static final int DEFAULT_MAX_FILES = 5;
+
+	private final File m_file;
+	private double m_samplingRate = 1.0;
+	private int m_bufferSize = DEFAULT_BUFFER_SIZE;
+	private long m_maxFileSize = DEFAULT_MAX_FILE_SIZE;
+	private int m_maxFiles = DEFAULT_MAX_FILES;
+
+	private AccessLogSettings(File file) {
+		m_file = file;
+	}
+
+	public static AccessLogSettings of(File file) {
+		if(file == null) {
+			throw new UIConfigurationException("Access log file must be set");
+		}
+		return new AccessLogSettings(file);
+	}
+
+	/**
+	 * Settings are never modified once built: each 'with' method modifies a copy.
+	 */
+	private AccessLogSettings copy() {
+		final AccessLogSettings result = new AccessLogSettings(m_file);
+		result.m_samplingRate = m_samplingRate;
+		result.m_bufferSize = m_bufferSize;
+		result.m_maxFileSize = m_maxFileSize;
+		result.m_maxFiles = m_maxFiles;
+		return result;
+	}
+
+	public File getFile() {
+		return m_file;
+	}
+
+	public double getSamplingRate() {
+		return m_samplingRate;
+	}
+
+	/**
+	 * @param rate Part of the successful requests that are logged, between 0 and 1. Erroneous requests are always logged.
+	 */
+	public AccessLogSettings withSamplingRate(double rate) {
+		if(!(rate >= 0 && rate <= 1)) {
+			throw new UIConfigurationException("Access log sampling rate must be between 0 and 1: %s", rate);
+		}
+		final AccessLogSettings result = copy();
+		result.m_samplingRate = rate;
+		return result;
+	}
+
+	public int getBufferSize() {
+		return m_bufferSize;
+	}
+
+	/**
+	 * @param entries Entries waiting to be written. When the buffer is full, new entries are dropped instead of blocking the requests.
+	 *                Must be a power of two.
+	 */
+	public AccessLogSettings withBufferSize(int entries) {
+		if(entries < 2 || Integer.bitCount(entries) != 1) {
+			throw new UIConfigurationException("Access log buffer size must be a power of two: %d", entries);
+		}
+		final AccessLogSettings result = copy();
+		result.m_bufferSize = entries;
+		return result;
+	}
+
+	public long getMaxFileSize() {
+		return m_maxFileSize;
+	}
+
+	public int getMaxFiles() {
+		return m_maxFiles;
+	}
+
+	/**
+	 * @param maxFileSize When the file reaches this size, it is renamed with suffix '.1', the previous ones are shifted ('.1' to '.2'...).
+	 * @param maxFiles    Number of files kept, including the current one.
+	 */
+	public AccessLogSettings withRolling(long maxFileSize, int maxFiles) {
+		if(maxFileSize < 1024) {
+			throw new UIConfigurationException("Access log max file size must be at least 1024 bytes: %d", maxFileSize);
+		}
+		if(maxFiles < 1) {
+			throw new UIConfigurationException("Access log max files must be at least 1: %d", maxFiles);
+		}
+		final AccessLogSettings result = copy();
+		result.m_maxFileSize = maxFileSize;
+		result.m_maxFiles = maxFiles;
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("file=%s, samplingRate=%s, bufferSize=%d, maxFileSize=%d, maxFiles=%d", m_file, m_samplingRate, m_bufferSize,
+				m_maxFileSize, m_maxFiles);
+	}
+}
@@ -0,0 +1,114 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission of requests under a {@link ConcurrencyLimit}: a slot is taken before serving a request and released once it is served.
+ */
+class Bulkhead {
+
+	/**
+	 * Slots taken by a request, released exactly once: when the response is sent, which for asynchronous responses happens after the
+	 * request has been dispatched.
+	 */
+	static class Admission {
+
+		static final String REQUEST_ATTRIBUTE = "tui.admission";
+
+		private final Bulkhead[] m_bulkheads;
+		private final AtomicBoolean m_released = new AtomicBoolean(false);
+
+		Admission(Bulkhead... bulkheads) {
+			m_bulkheads = bulkheads;
+		}
+
+		void release() {
+			if(m_released.compareAndSet(false, true)) {
+				for(Bulkhead bulkhead : m_bulkheads) {
+					if(bulkhead != null) {
+						bulkhead.release();
+					}
+				}
+			}
+		}
+
+		static void release(HttpServletRequest request) {
+			if(request.getAttribute(REQUEST_ATTRIBUTE) instanceof Admission admission) {
+				admission.release();
+			}
+		}
+	}
+
+	private final ConcurrencyLimit m_limit;
+	private final Semaphore m_slots;
+	private final AtomicInteger m_queued = new AtomicInteger();
+	private final LongAdder m_rejections = new LongAdder();
+
+	Bulkhead(ConcurrencyLimit limit) {
+		m_limit = limit;
+		m_slots = new Semaphore(limit.maxConcurrent(), true);
+	}
+
+	ConcurrencyLimit getLimit() {
+		return m_limit;
+	}
+
+	/**
+	 * @return False when the request is rejected: the queue is full, or no slot has been released within the max wait.
+	 */
+	boolean acquire() throws InterruptedException {
+		if(m_slots.tryAcquire()) {
+			return true;
+		}
+		if(m_queued.incrementAndGet() > m_limit.maxQueued()) {
+			m_queued.decrementAndGet();
+			m_rejections.increment();
+			return false;
+		}
+		try {
+			if(m_slots.tryAcquire(m_limit.maxWait_ms(), TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+			m_rejections.increment();
+			return false;
+		} finally {
+			m_queued.decrementAndGet();
+		}
+	}
+
+	void release() {
+		m_slots.release();
+	}
+
+	int getActive() {
+		return m_limit.maxConcurrent() - m_slots.availablePermits();
+	}
+
+	int getQueued() {
+		return m_queued.get();
+	}
+
+	long getRejections() {
+		return m_rejections.sum();
+	}
+}
@@ -0,0 +1,101 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import tui.html.HTMLConstants;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Compresses the HTML, JSON, CSS and Javascript responses when the client accepts gzip, unless their route has opted out (see
+ * {@link RouteOptions#withCompression(boolean)}). Compression is streamed by Jetty's {@link GzipHandler}.
+ * <p>
+ * Registered as a {@link HttpChannel.Listener} on the connectors, it also measures the compressed responses once they are complete,
+ * whether they have been produced synchronously or not.
+ */
+class CompressionHandler extends GzipHandler implements HttpChannel.Listener {
+
+	static final String[] COMPRESSED_MIME_TYPES = {
+			"text/html",
+			"application/json",
+			HTMLConstants.CSS_CONTENT_TYPE,
+			HTMLConstants.JAVASCRIPT_CONTENT_TYPE,
+			"application/javascript",
+			"image/svg+xml"};
+
+	private static final String REQUEST_ATTRIBUTE = "tui.compression"; // handler of the request, the connectors may be shared by backends
+
+	private final Supplier<RouteTable> m_routes;
+	private final LongAdder m_compressedResponses = new LongAdder();
+	private final LongAdder m_uncompressedBytes = new LongAdder();
+	private final LongAdder m_compressedBytes = new LongAdder();
+
+	CompressionHandler(Supplier<RouteTable> routes, int minSize, int level) {
+		m_routes = routes;
+		setMinGzipSize(minSize);
+		setCompressionLevel(level);
+		setIncludedMethods("GET", "POST"); // components are refreshed with POST requests
+		setIncludedMimeTypes(COMPRESSED_MIME_TYPES);
+	}
+
+	@Override
+	protected boolean isPathGzipable(String requestURI) {
+		return super.isPathGzipable(requestURI) && m_routes.get().findOptions(requestURI).isCompressed();
+	}
+
+	/**
+	 * Byte ranges are served as they are: a compressed range would not match the 'Content-Range' of the resource.
+	 */
+	@Override
+	public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+			throws IOException, ServletException {
+		baseRequest.setAttribute(REQUEST_ATTRIBUTE, this);
+		if(request.getHeader("Range") != null) {
+			getHandler().handle(target, baseRequest, request, response);
+		} else {
+			super.handle(target, baseRequest, request, response);
+		}
+	}
+
+	@Override
+	public void onComplete(Request request) {
+		if(request.getAttribute(REQUEST_ATTRIBUTE) == this && GZIP.equals(request.getResponse().getHeader("Content-Encoding"))) {
+			m_compressedResponses.increment();
+			m_uncompressedBytes.add(request.getResponse().getHttpOutput().getWritten());
+			m_compressedBytes.add(request.getHttpChannel().getBytesWritten());
+		}
+	}
+
+	long getCompressedResponses() {
+		return m_compressedResponses.sum();
+	}
+
+	long getUncompressedBytes() {
+		return m_uncompressedBytes.sum();
+	}
+
+	long getCompressedBytes() {
+		return m_compressedBytes.sum();
+	}
+}
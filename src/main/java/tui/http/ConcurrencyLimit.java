@@ -0,0 +1,42 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import tui.ui.UIConfigurationException;
+
+/**
+ * Bounds the number of requests served at the same time, for a route (see {@link RouteOptions#withConcurrencyLimit(ConcurrencyLimit)})
+ * or for the whole backend (see {@link TUIBackend#setConcurrencyLimit(ConcurrencyLimit)}). Requests beyond the limit wait in a bounded
+ * queue. They are rejected with 503 and 'Retry-After' when the queue is full or when they have waited too long.
+ *
+ * @param maxConcurrent Number of requests served at the same time.
+ * @param maxQueued     Number of requests waiting for a slot. With 0, requests beyond the limit are rejected immediately.
+ * @param maxWait_ms    Time a queued request waits for a slot before being rejected.
+ */
+public record ConcurrencyLimit(int maxConcurrent, int maxQueued, long maxWait_ms) {
+
+	public ConcurrencyLimit {
+		if(maxConcurrent <= 0) {
+			throw new UIConfigurationException("Max concurrent requests must be positive: %d", maxConcurrent);
+		}
+		if(maxQueued < 0) {
+			throw new UIConfigurationException("Max queued requests must not be negative: %d", maxQueued);
+		}
+		if(maxWait_ms < 0) {
+			throw new UIConfigurationException("Max wait must not be negative: %d", maxWait_ms);
+		}
+	}
+}
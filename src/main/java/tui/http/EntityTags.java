@@ -0,0 +1,150 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Computes strong entity tags from the serialized content of responses, and evaluates the request header 'If-None-Match'.
+ */
+class EntityTags {
+
+	private static final int HASH_LENGTH = 16;
+	static final int MAX_TAGGED_SIZE = 256 * 1024; // larger contents are streamed without entity tag
+
+	interface ContentWriter {
+		void write(Appendable out) throws IOException;
+	}
+
+	interface OutputOpener {
+		OutputStream open() throws IOException;
+	}
+
+	/**
+	 * Keeps the serialized content while computing its digest, so that it is serialized once. Beyond the limit, the kept bytes and the
+	 * rest of the content are streamed to the output given by the opener, and the content has no entity tag.
+	 */
+	static class TaggingOutputStream extends OutputStream {
+
+		private final MessageDigest m_digest = newDigest();
+		private final ByteArrayOutputStream m_buffer = new ByteArrayOutputStream();
+		private final int m_maxSize;
+		private final OutputOpener m_overflow;
+		private OutputStream m_out = null; // set once the limit is exceeded
+
+		TaggingOutputStream(int maxSize, OutputOpener overflow) {
+			m_maxSize = maxSize;
+			m_overflow = overflow;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			if(m_out == null && m_buffer.size() + length > m_maxSize) {
+				m_out = m_overflow.open();
+				m_buffer.writeTo(m_out);
+				m_buffer.reset();
+			}
+			if(m_out != null) {
+				m_out.write(bytes, offset, length);
+			} else {
+				m_buffer.write(bytes, offset, length);
+				m_digest.update(bytes, offset, length);
+			}
+		}
+
+		/**
+		 * @return True when the content exceeded the limit and has already been written to the output.
+		 */
+		boolean isStreamed() {
+			return m_out != null;
+		}
+
+		/**
+		 * @return The quoted entity tag of the kept content.
+		 */
+		String getEntityTag() {
+			return quote(m_digest.digest());
+		}
+
+		void writeContentTo(OutputStream out) throws IOException {
+			m_buffer.writeTo(out);
+		}
+	}
+
+	static String compute(byte[] content) {
+		return quote(newDigest().digest(content));
+	}
+
+	/**
+	 * @return The opaque part of the entity tag (without the quotes).
+	 */
+	static String opaque(String etag) {
+		return etag.substring(1, etag.length() - 1);
+	}
+
+	/**
+	 * @return True when the request's header 'If-None-Match' contains the given entity tag, or '*'. Suffixes added to entity tags by
+	 * compression handlers (like '--gzip') are ignored.
+	 */
+	static boolean isNotModified(HttpServletRequest request, String etag) {
+		final String ifNoneMatch = request.getHeader("If-None-Match");
+		if(ifNoneMatch == null) {
+			return false;
+		}
+		final String opaqueTag = opaque(etag);
+		for(String candidate : ifNoneMatch.split(",")) {
+			String tag = candidate.trim();
+			if(tag.equals("*")) {
+				return true;
+			}
+			if(tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if(tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+				final String opaqueCandidate = opaque(tag);
+				final int indexOfSuffix = opaqueCandidate.indexOf("--");
+				if(opaqueCandidate.equals(opaqueTag)
+						|| (indexOfSuffix >= 0 && opaqueCandidate.substring(0, indexOfSuffix).equals(opaqueTag))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static String quote(byte[] digest) {
+		return "\"" + HexFormat.of().formatHex(digest, 0, HASH_LENGTH / 2) + "\"";
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // SHA-256 is supported by every JVM
+		}
+	}
+}
@@ -0,0 +1,243 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import org.eclipse.jetty.server.HttpOutput;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Serves a file, or an in-memory resource.
+ * <p>
+ * In-memory resources are kept in a direct buffer that is handed to Jetty. Files are not mapped, since they can change or be
+ * truncated while being sent: they are read by the request with a small buffer, and a file that gets shorter ends the response
+ * with an error.
+ * <p>
+ * Responses carry 'Content-Length', 'Last-Modified', 'ETag' and 'Accept-Ranges'. Conditional requests ('If-None-Match',
+ * 'If-Modified-Since') are answered with 304 and single byte ranges ('Range', optionally with 'If-Range') with 206. Requests for
+ * several ranges get the whole content.
+ */
+class FileResource implements TUIFileService {
+
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	record Range(long start, long end) { // end is inclusive
+
+		static final Range UNSATISFIABLE = new Range(-1, -1);
+
+		long length() {
+			return end - start + 1;
+		}
+	}
+
+	private record Content(long length, long lastModified_ms, String etag, ByteBuffer buffer) { // buffer is null for files
+	}
+
+	private final File m_file;
+	private final String m_contentType;
+	private volatile Content m_content;
+
+	private FileResource(File file, String contentType, Content content) {
+		m_file = file;
+		m_contentType = contentType;
+		m_content = content;
+	}
+
+	static FileResource of(File file, String contentType) {
+		return new FileResource(file, contentType, null);
+	}
+
+	static FileResource of(byte[] content, String contentType) {
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+		buffer.put(content).flip();
+		final long lastModified_ms = System.currentTimeMillis() / 1000 * 1000; // HTTP dates have a precision of one second
+		return new FileResource(null, contentType,
+				new Content(content.length, lastModified_ms, EntityTags.compute(content), buffer.asReadOnlyBuffer()));
+	}
+
+	@Override
+	public void handle(String uri, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		final Content content = getContent();
+		if(content == null) {
+			response.setStatus(404);
+			return;
+		}
+
+		response.setHeader("Cache-Control", StaticAsset.CACHE_CONTROL_REVALIDATE);
+		response.setHeader("ETag", content.etag());
+		response.setDateHeader("Last-Modified", content.lastModified_ms());
+		response.setHeader("Accept-Ranges", "bytes");
+
+		if(isNotModified(request, content)) {
+			response.setStatus(304);
+			return;
+		}
+
+		response.setContentType(m_contentType);
+		Range range = null;
+		if(request.getHeader("Range") != null && isRangeApplicable(request, content)) {
+			range = parseRange(request.getHeader("Range"), content.length());
+		}
+		if(range == Range.UNSATISFIABLE) {
+			response.setHeader("Content-Range", String.format("bytes */%d", content.length()));
+			response.setStatus(416);
+			return;
+		}
+		if(range == null) {
+			range = new Range(0, content.length() - 1);
+			response.setStatus(200);
+		} else {
+			response.setHeader("Content-Range", String.format("bytes %d-%d/%d", range.start(), range.end(), content.length()));
+			response.setStatus(206);
+		}
+		response.setContentLengthLong(range.length());
+		if(range.length() > 0 && !"HEAD".equals(request.getMethod())) {
+			write(response.getOutputStream(), content, range);
+		}
+	}
+
+	/**
+	 * @return The current content, which is re-read when the file has changed, or null when the file does not exist.
+	 */
+	private Content getContent() throws IOException {
+		final Content current = m_content;
+		if(m_file == null) {
+			return current;
+		}
+		final long lastModified_ms = m_file.lastModified() / 1000 * 1000;
+		final long length = m_file.length();
+		if(lastModified_ms == 0L) {
+			return null;
+		}
+		if(current != null && current.lastModified_ms() == lastModified_ms && current.length() == length) {
+			return current;
+		}
+		final String etag = String.format("\"%x-%x\"", lastModified_ms, length);
+		final Content result = new Content(length, lastModified_ms, etag, null);
+		m_content = result;
+		return result;
+	}
+
+	private void write(ServletOutputStream out, Content content, Range range) throws IOException {
+		if(content.buffer() != null) {
+			write(out, content.buffer().duplicate().limit((int) range.end() + 1).position((int) range.start()));
+		} else {
+			try(FileChannel channel = FileChannel.open(m_file.toPath(), StandardOpenOption.READ)) {
+				final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, range.length()));
+				long position = range.start();
+				while(position <= range.end()) {
+					buffer.clear().limit((int) Math.min(buffer.capacity(), range.end() + 1 - position));
+					final int read = channel.read(buffer, position);
+					if(read < 0) {
+						throw new EOFException(String.format("File truncated while being sent: %s", m_file.getAbsolutePath()));
+					}
+					position += read;
+					write(out, buffer.flip());
+				}
+			}
+		}
+	}
+
+	private static void write(ServletOutputStream out, ByteBuffer buffer) throws IOException {
+		if(out instanceof HttpOutput httpOutput) {
+			httpOutput.write(buffer);
+		} else {
+			Channels.newChannel(out).write(buffer);
+		}
+	}
+
+	private static boolean isNotModified(HttpServletRequest request, Content content) {
+		if(request.getHeader("If-None-Match") != null) {
+			return EntityTags.isNotModified(request, content.etag()); // 'If-Modified-Since' is ignored in that case
+		}
+		final long ifModifiedSince_ms = getDateHeader(request, "If-Modified-Since");
+		return ifModifiedSince_ms >= 0 && content.lastModified_ms() <= ifModifiedSince_ms;
+	}
+
+	/**
+	 * @return False when 'If-Range' is given and does not match the current content, in which case the whole content must be sent.
+	 */
+	private static boolean isRangeApplicable(HttpServletRequest request, Content content) {
+		final String ifRange = request.getHeader("If-Range");
+		if(ifRange == null) {
+			return true;
+		}
+		if(ifRange.startsWith("\"")) {
+			return ifRange.equals(content.etag());
+		}
+		final long ifRange_ms = getDateHeader(request, "If-Range");
+		return ifRange_ms >= 0 && content.lastModified_ms() <= ifRange_ms;
+	}
+
+	private static long getDateHeader(HttpServletRequest request, String name) {
+		try {
+			return request.getDateHeader(name);
+		} catch(IllegalArgumentException e) {
+			return -1; // an invalid date is ignored
+		}
+	}
+
+	/**
+	 * @param header The value of the header 'Range', like 'bytes=0-99', 'bytes=100-' or 'bytes=-100'.
+	 * @return The requested range, clipped to the content length. Null when the header is invalid or requests several ranges, so that
+	 * the whole content is sent. {@link Range#UNSATISFIABLE} when the range starts after the end of the content.
+	 */
+	static Range parseRange(String header, long length) {
+		final String prefix = "bytes=";
+		if(!header.startsWith(prefix) || header.indexOf(',') >= 0) {
+			return null;
+		}
+		final String spec = header.substring(prefix.length()).trim();
+		final int indexOfDash = spec.indexOf('-');
+		if(indexOfDash < 0) {
+			return null;
+		}
+		try {
+			final String first = spec.substring(0, indexOfDash).trim();
+			final String last = spec.substring(indexOfDash + 1).trim();
+			if(first.isEmpty()) { // suffix range: the last bytes
+				final long suffixLength = Long.parseLong(last);
+				if(suffixLength < 0) {
+					return null;
+				}
+				if(suffixLength == 0 || length == 0) {
+					return Range.UNSATISFIABLE;
+				}
+				return new Range(Math.max(0, length - suffixLength), length - 1);
+			}
+			final long start = Long.parseLong(first);
+			final long end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+			if(start < 0 || (!last.isEmpty() && Long.parseLong(last) < start)) {
+				return null;
+			}
+			if(start >= length) {
+				return Range.UNSATISFIABLE;
+			}
+			return new Range(start, end);
+		} catch(NumberFormatException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import tui.ui.UIConfigurationException;
+
+/**
+ * Settings of the cleartext HTTP/2 (h2c) connection factory, see {@link TUIBackend#setHttp2(Http2Settings)}. The refreshes of a page
+ * are multiplexed over one connection, instead of being limited to the few parallel HTTP/1.1 connections per host.
+ *
+ * @param maxConcurrentStreams Number of requests a client can send at the same time on one connection.
+ * @param initialStreamWindow  Flow-control window of each request content, in bytes.
+ * @param initialSessionWindow Flow-control window of the whole connection, in bytes. At least the window of a stream.
+ */
+public record Http2Settings(int maxConcurrentStreams, int initialStreamWindow, int initialSessionWindow) {
+
+	static final int MIN_WINDOW = 65_535; // initial window defined by RFC 7540
+
+	public static final Http2Settings DEFAULT = new Http2Settings(128, 512 * 1024, 1024 * 1024);
+
+	public Http2Settings {
+		if(maxConcurrentStreams <= 0) {
+			throw new UIConfigurationException("Max concurrent streams must be positive: %d", maxConcurrentStreams);
+		}
+		if(initialStreamWindow < MIN_WINDOW) {
+			throw new UIConfigurationException("Stream window must be at least %d bytes: %d", MIN_WINDOW, initialStreamWindow);
+		}
+		if(initialSessionWindow < initialStreamWindow) {
+			throw new UIConfigurationException("Session window must be at least the stream window (%d bytes): %d", initialStreamWindow,
+					initialSessionWindow);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets: each power of two of microseconds is split into {@link #SUB_BUCKETS} linear
+ * buckets, which bounds the relative error of the percentiles to 25%.
+ */
+class LatencyHistogram {
+
+	static final int SUB_BUCKET_BITS = 2;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	static final int MAX_EXPONENT = 35; // about 9.5 hours, longer durations are counted in the last bucket
+	static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray m_counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder m_count = new LongAdder();
+	private final LongAdder m_sum_us = new LongAdder();
+
+	void record(long duration_ns) {
+		final long duration_us = Math.max(0, duration_ns / 1_000);
+		m_counts.incrementAndGet(indexOf(duration_us));
+		m_count.increment();
+		m_sum_us.add(duration_us);
+	}
+
+	long getCount() {
+		return m_count.sum();
+	}
+
+	long getSum_us() {
+		return m_sum_us.sum();
+	}
+
+	long getBucketCount(int index) {
+		return m_counts.get(index);
+	}
+
+	/**
+	 * @return The upper bound of the bucket that contains the percentile, 0 when nothing has been recorded.
+	 */
+	long getPercentile_us(double percentile) {
+		long total = 0;
+		final long[] counts = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++) {
+			counts[i] = m_counts.get(i);
+			total += counts[i];
+		}
+		if(total == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+		long cumulated = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			cumulated += counts[i];
+			if(cumulated >= rank) {
+				return getUpperBound_us(i);
+			}
+		}
+		return getUpperBound_us(BUCKETS - 1);
+	}
+
+	static int indexOf(long value_us) {
+		if(value_us < SUB_BUCKETS) {
+			return (int) value_us;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(value_us);
+		if(exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		final int shift = exponent - SUB_BUCKET_BITS;
+		final int subBucket = (int) (value_us >> shift) & (SUB_BUCKETS - 1);
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @return The smallest duration that is above the bucket: the bucket counts durations strictly lower.
+	 */
+	static long getUpperBound_us(int index) {
+		if(index < SUB_BUCKETS) {
+			return index + 1;
+		}
+		final int shift = index / SUB_BUCKETS - 1;
+		final long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lowerBound + (1L << shift);
+	}
+}
@@ -0,0 +1,266 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Telemetry of the backend, updated without locks from the request threads: latency histograms, response bytes and responses by
+ * status class for each route, in-flight requests by service type, and counters of the backend's components.
+ * <p>
+ * The registry is written in the Prometheus text format, see {@link TUIBackend#enableMetricsEndpoint(String)}.
+ */
+public class MetricsRegistry {
+
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	static final String REQUEST_ATTRIBUTE = "tui.metrics";
+
+	/**
+	 * Latencies are exported between these bounds, the shorter ones are counted in the first exported bucket.
+	 */
+	static final long EXPORTED_MIN_us = 1L << 7;
+	static final long EXPORTED_MAX_us = 1L << 25;
+
+	public enum ServiceType {
+		PAGE, WEB, FILE, STATIC, INTERNAL;
+
+		String getLabel() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	private record RouteKey(ServiceType type, String route) {
+	}
+
+	private static class RouteMetrics {
+		private final LatencyHistogram m_latency = new LatencyHistogram();
+		private final LongAdder m_responseBytes = new LongAdder();
+		private final LongAdder[] m_responsesByClass = new LongAdder[5]; // 1xx to 5xx
+
+		RouteMetrics() {
+			for(int i = 0; i < m_responsesByClass.length; i++) {
+				m_responsesByClass[i] = new LongAdder();
+			}
+		}
+	}
+
+	/**
+	 * Attached to the request when it is routed, until it is complete.
+	 */
+	record Exchange(ServiceType type, String route, long start_ns) {
+	}
+
+	private record Sampled(String name, String help, String type, LongSupplier value) {
+	}
+
+	private final Map<RouteKey, RouteMetrics> m_routes = new ConcurrentHashMap<>();
+	private final Map<ServiceType, LongAdder> m_inFlight = new ConcurrentHashMap<>();
+	private final LongAdder m_successfulResponses = new LongAdder();
+	private final LongAdder m_erroneousResponses = new LongAdder();
+	private final List<Sampled> m_sampled = new CopyOnWriteArrayList<>();
+
+	MetricsRegistry() {
+		for(ServiceType type : ServiceType.values()) {
+			m_inFlight.put(type, new LongAdder());
+		}
+	}
+
+	/**
+	 * Exports a counter that is kept by another component. The value is read when the registry is written.
+	 */
+	public void registerCounter(String name, String help, LongSupplier value) {
+		m_sampled.add(new Sampled(name, help, "counter", value));
+	}
+
+	/**
+	 * Exports a gauge that is kept by another component. The value is read when the registry is written.
+	 */
+	public void registerGauge(String name, String help, LongSupplier value) {
+		m_sampled.add(new Sampled(name, help, "gauge", value));
+	}
+
+	/**
+	 * Starts timing the request, under the route template that serves it. A request is timed once.
+	 */
+	void start(HttpServletRequest request, ServiceType type, String route) {
+		if(request.getAttribute(REQUEST_ATTRIBUTE) == null) {
+			request.setAttribute(REQUEST_ATTRIBUTE, new Exchange(type, route, System.nanoTime()));
+			m_inFlight.get(type).increment();
+		}
+	}
+
+	/**
+	 * Records the request when it has been started. Called once the response is complete.
+	 *
+	 * @return The recorded exchange, null when the request has not been routed.
+	 */
+	Exchange complete(HttpServletRequest request, int status, long responseBytes) {
+		if(request.getAttribute(REQUEST_ATTRIBUTE) instanceof Exchange exchange) {
+			request.removeAttribute(REQUEST_ATTRIBUTE);
+			m_inFlight.get(exchange.type()).decrement();
+			record(new RouteKey(exchange.type(), exchange.route()), status, System.nanoTime() - exchange.start_ns(), responseBytes);
+			return exchange;
+		}
+		return null;
+	}
+
+	private void record(RouteKey key, int status, long duration_ns, long responseBytes) {
+		final RouteMetrics metrics = m_routes.computeIfAbsent(key, (k) -> new RouteMetrics());
+		metrics.m_latency.record(duration_ns);
+		metrics.m_responseBytes.add(responseBytes);
+		final int statusClass = status / 100 - 1;
+		if(statusClass >= 0 && statusClass < metrics.m_responsesByClass.length) {
+			metrics.m_responsesByClass[statusClass].increment();
+		}
+	}
+
+	void countSuccess() {
+		m_successfulResponses.increment();
+	}
+
+	void countError() {
+		m_erroneousResponses.increment();
+	}
+
+	public long getSuccessfulResponses() {
+		return m_successfulResponses.sum();
+	}
+
+	public long getErroneousResponses() {
+		return m_erroneousResponses.sum();
+	}
+
+	public long getInFlightRequests(ServiceType type) {
+		return m_inFlight.get(type).sum();
+	}
+
+	/**
+	 * @param route The template of the route, as registered.
+	 */
+	public long getRequests(ServiceType type, String route) {
+		final RouteMetrics metrics = m_routes.get(new RouteKey(type, route));
+		return metrics == null ? 0 : metrics.m_latency.getCount();
+	}
+
+	public long getResponseBytes(ServiceType type, String route) {
+		final RouteMetrics metrics = m_routes.get(new RouteKey(type, route));
+		return metrics == null ? 0 : metrics.m_responseBytes.sum();
+	}
+
+	/**
+	 * @param percentile For example 99.
+	 * @return An upper bound of the latency percentile, with a relative error of 25% at most. 0 when nothing has been recorded.
+	 */
+	public double getLatencyPercentile_ms(ServiceType type, String route, double percentile) {
+		final RouteMetrics metrics = m_routes.get(new RouteKey(type, route));
+		return metrics == null ? 0 : metrics.m_latency.getPercentile_us(percentile) / 1_000.0;
+	}
+
+	/**
+	 * Writes all metrics in the Prometheus text exposition format.
+	 */
+	public void write(Appendable out) throws IOException {
+		final List<Map.Entry<RouteKey, RouteMetrics>> routes = new ArrayList<>(m_routes.entrySet());
+		routes.sort(Comparator.comparing((Map.Entry<RouteKey, RouteMetrics> entry) -> entry.getKey().type())
+				.thenComparing((entry) -> entry.getKey().route()));
+
+		writeHeader(out, "tui_request_duration_seconds", "Time to serve the requests, by route.", "histogram");
+		for(Map.Entry<RouteKey, RouteMetrics> entry : routes) {
+			final String labels = toLabels(entry.getKey());
+			final LatencyHistogram latency = entry.getValue().m_latency;
+			long cumulated = 0;
+			for(int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+				cumulated += latency.getBucketCount(i);
+				final long upperBound_us = LatencyHistogram.getUpperBound_us(i);
+				if(upperBound_us >= EXPORTED_MIN_us && upperBound_us <= EXPORTED_MAX_us) {
+					out.append("tui_request_duration_seconds_bucket{").append(labels).append(",le=\"")
+							.append(toSeconds(upperBound_us)).append("\"} ").append(String.valueOf(cumulated)).append('\n');
+				}
+			}
+			final long count = latency.getCount();
+			out.append("tui_request_duration_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ").append(String.valueOf(count))
+					.append('\n');
+			out.append("tui_request_duration_seconds_sum{").append(labels).append("} ").append(toSeconds(latency.getSum_us()))
+					.append('\n');
+			out.append("tui_request_duration_seconds_count{").append(labels).append("} ").append(String.valueOf(count)).append('\n');
+		}
+
+		writeHeader(out, "tui_response_bytes_total", "Bytes of the response bodies, as sent, by route.", "counter");
+		for(Map.Entry<RouteKey, RouteMetrics> entry : routes) {
+			out.append("tui_response_bytes_total{").append(toLabels(entry.getKey())).append("} ")
+					.append(String.valueOf(entry.getValue().m_responseBytes.sum())).append('\n');
+		}
+
+		writeHeader(out, "tui_responses_total", "Responses by route and status class.", "counter");
+		for(Map.Entry<RouteKey, RouteMetrics> entry : routes) {
+			final LongAdder[] responsesByClass = entry.getValue().m_responsesByClass;
+			for(int i = 0; i < responsesByClass.length; i++) {
+				final long count = responsesByClass[i].sum();
+				if(count > 0) {
+					out.append("tui_responses_total{").append(toLabels(entry.getKey())).append(",code=\"").append(String.valueOf(i + 1))
+							.append("xx\"} ").append(String.valueOf(count)).append('\n');
+				}
+			}
+		}
+
+		writeHeader(out, "tui_requests_in_flight", "Requests being served, by service type.", "gauge");
+		for(ServiceType type : ServiceType.values()) {
+			out.append("tui_requests_in_flight{type=\"").append(type.getLabel()).append("\"} ")
+					.append(String.valueOf(getInFlightRequests(type))).append('\n');
+		}
+
+		writeSampled(out, new Sampled("tui_responses_successful_total", "Requests answered successfully.", "counter",
+				this::getSuccessfulResponses));
+		writeSampled(out, new Sampled("tui_responses_erroneous_total", "Requests answered with an error.", "counter",
+				this::getErroneousResponses));
+		for(Sampled sampled : m_sampled) {
+			writeSampled(out, sampled);
+		}
+	}
+
+	private static void writeHeader(Appendable out, String name, String help, String type) throws IOException {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void writeSampled(Appendable out, Sampled sampled) throws IOException {
+		writeHeader(out, sampled.name(), sampled.help(), sampled.type());
+		out.append(sampled.name()).append(' ').append(String.valueOf(sampled.value().getAsLong())).append('\n');
+	}
+
+	private static String toLabels(RouteKey key) {
+		return String.format("type=\"%s\",route=\"%s\"", key.type().getLabel(), escape(key.route()));
+	}
+
+	static String escape(String labelValue) {
+		return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static String toSeconds(long duration_us) {
+		return BigDecimal.valueOf(duration_us, 6).stripTrailingZeros().toPlainString();
+	}
+}
@@ -0,0 +1,480 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import tui.ui.UIConfigurationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable prefix tree that maps paths to services. Routes are registered as templates where each segment is either a literal or a
+ * typed variable: <code>/orders/{id:long}/lines</code>. Supported variable types are <code>string</code> (default), <code>int</code>
+ * and <code>long</code>.
+ * <p>
+ * Registering a route returns a new router that shares all untouched branches with the current one. Lookups walk the segments of the
+ * path in place and never allocate. They are proportional to the path length, unless overlapping templates make the lookup go back
+ * from a literal segment that leads to no route to the variables of the same level. When several routes match, literal segments win
+ * over variables, and the most restrictive variable type wins over the others.
+ */
+public class PathRouter<S> {
+
+	public enum VariableType {
+		INT(String.valueOf(Integer.MAX_VALUE)),
+		LONG(String.valueOf(Long.MAX_VALUE)),
+		STRING(null);
+
+		private final String m_maxValue;
+
+		VariableType(String maxValue) {
+			m_maxValue = maxValue;
+		}
+
+		boolean accepts(String path, int start, int end) {
+			final int length = end - start;
+			if(length == 0) {
+				return false;
+			} else if(m_maxValue == null) {
+				return true;
+			} else if(length > m_maxValue.length()) {
+				return false;
+			}
+			for(int i = start; i < end; i++) {
+				final char c = path.charAt(i);
+				if(c < '0' || c > '9') {
+					return false;
+				}
+			}
+			if(length < m_maxValue.length()) {
+				return true;
+			}
+			// Same number of digits: compares with the maximum value, digit after digit
+			for(int i = 0; i < length; i++) {
+				final int difference = path.charAt(start + i) - m_maxValue.charAt(i);
+				if(difference != 0) {
+					return difference < 0;
+				}
+			}
+			return true;
+		}
+
+		static VariableType parse(String name) {
+			for(VariableType type : values()) {
+				if(type.name().equalsIgnoreCase(name)) {
+					return type;
+				}
+			}
+			throw new UIConfigurationException("Unsupported type of path variable: '%s'", name);
+		}
+	}
+
+	public static class Route<S> {
+
+		private final String m_template;
+		private final S m_service;
+		private final String[] m_variableNames; // indexed by segment, null for literal segments
+		private final VariableType[] m_variableTypes;
+		private final boolean m_hasVariables;
+
+		private Route(String template, S service, String[] variableNames, VariableType[] variableTypes) {
+			m_template = template;
+			m_service = service;
+			m_variableNames = variableNames;
+			m_variableTypes = variableTypes;
+			m_hasVariables = Arrays.stream(variableNames).anyMatch((name) -> name != null);
+		}
+
+		public String getTemplate() {
+			return m_template;
+		}
+
+		public S getService() {
+			return m_service;
+		}
+
+		public boolean hasVariables() {
+			return m_hasVariables;
+		}
+
+		String getVariableName(int segmentIndex) {
+			return m_variableNames[segmentIndex];
+		}
+
+		VariableType getVariableType(int segmentIndex) {
+			return m_variableTypes[segmentIndex];
+		}
+
+		int getSegmentsCount() {
+			return m_variableNames.length;
+		}
+	}
+
+	private static final Node<?> EMPTY_NODE = new Node<>(null, null, new int[0], noNodes(), noNodes(), null);
+
+	private final Node<S> m_root;
+	private final int m_size;
+
+	private PathRouter(Node<S> root, int size) {
+		m_root = root;
+		m_size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <S> PathRouter<S> empty() {
+		return new PathRouter<>((Node<S>) EMPTY_NODE, 0);
+	}
+
+	public int size() {
+		return m_size;
+	}
+
+	public boolean isEmpty() {
+		return m_size == 0;
+	}
+
+	/**
+	 * @return A new router where the given template is mapped to the service. A route previously registered with an equivalent template
+	 * (same literals and same variable types) is replaced.
+	 */
+	public PathRouter<S> with(String template, S service) {
+		final Template parsed = new Template(template);
+		final Route<S> route = new Route<>(template, service, parsed.variableNames(), parsed.variableTypes());
+		final boolean replacing = getRoute(parsed) != null;
+		return new PathRouter<>(insert(m_root, parsed, 0, route), replacing ? m_size : m_size + 1);
+	}
+
+	/**
+	 * @return A new router without the route registered with an equivalent template, or this router when there is no such route.
+	 */
+	public PathRouter<S> without(String template) {
+		final Template parsed = new Template(template);
+		if(getRoute(parsed) == null) {
+			return this;
+		}
+		return new PathRouter<>(remove(m_root, parsed, 0), m_size - 1);
+	}
+
+	/**
+	 * @return The route registered with the given template or an equivalent one, or null.
+	 */
+	public Route<S> get(String template) {
+		return getRoute(new Template(template));
+	}
+
+	/**
+	 * @return The route matching the given path, or null when none matches.
+	 */
+	public Route<S> find(String path) {
+		if(path == null || path.isEmpty() || path.charAt(0) != '/') {
+			return null;
+		}
+		return match(m_root, path, 1);
+	}
+
+	/**
+	 * Compares two routes that match the same path, like the lookup does: the first segment where they differ decides, a literal wins
+	 * over a variable and the most restrictive variable type wins over the others.
+	 *
+	 * @return A negative value when the first route is the most specific, 0 when both are equivalent.
+	 */
+	static int compareSpecificity(Route<?> first, Route<?> second) {
+		final int count = Math.min(first.getSegmentsCount(), second.getSegmentsCount());
+		for(int i = 0; i < count; i++) {
+			final int difference = getRank(first.getVariableType(i)) - getRank(second.getVariableType(i));
+			if(difference != 0) {
+				return difference;
+			}
+		}
+		return 0;
+	}
+
+	private static int getRank(VariableType type) {
+		return type == null ? -1 : type.ordinal(); // literals first, then variable types from the most restrictive
+	}
+
+	/**
+	 * @return All the registered routes.
+	 */
+	public List<Route<S>> getRoutes() {
+		final List<Route<S>> result = new ArrayList<>(m_size);
+		collectRoutes(m_root, result);
+		return result;
+	}
+
+	private record Template(String[] segments, String[] variableNames, VariableType[] variableTypes) {
+
+		Template(String template) {
+			this(splitSegments(template));
+			for(int i = 0; i < segments.length; i++) {
+				final String segment = segments[i];
+				if(isVariable(segment)) {
+					final String declaration = segment.substring(1, segment.length() - 1);
+					final int indexOfColon = declaration.indexOf(':');
+					variableNames[i] = indexOfColon < 0 ? declaration : declaration.substring(0, indexOfColon);
+					variableTypes[i] = indexOfColon < 0 ? VariableType.STRING : VariableType.parse(declaration.substring(indexOfColon + 1));
+					if(variableNames[i].isEmpty()) {
+						throw new UIConfigurationException("Path variable without name in template '%s'", template);
+					}
+				}
+			}
+		}
+
+		private Template(String[] segments) {
+			this(segments, new String[segments.length], new VariableType[segments.length]);
+		}
+	}
+
+	static String[] splitSegments(String template) {
+		if(template == null || template.isEmpty() || template.charAt(0) != '/') {
+			throw new UIConfigurationException("Path must start with '/': '%s'", template);
+		}
+		return template.substring(1).split("/", -1);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <S> Node<S>[] noNodes() {
+		return (Node<S>[]) new Node<?>[0];
+	}
+
+	private static boolean isVariable(String segment) {
+		return segment.length() >= 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}';
+	}
+
+	private Route<S> getRoute(Template template) {
+		Node<S> node = m_root;
+		for(int i = 0; i < template.segments().length && node != null; i++) {
+			final VariableType type = template.variableTypes()[i];
+			node = type == null ? node.getLiteral(template.segments()[i]) : node.getVariable(type);
+		}
+		return node == null ? null : node.m_route;
+	}
+
+	private static <S> Node<S> insert(Node<S> node, Template template, int index, Route<S> route) {
+		if(index == template.segments().length) {
+			return node.withRoute(route);
+		}
+		final String segment = template.segments()[index];
+		final VariableType type = template.variableTypes()[index];
+		if(type == null) {
+			final Node<S> child = node.getLiteral(segment);
+			final Node<S> base = child != null ? child : Node.<S>emptyNode().withSegment(segment, null);
+			return node.withLiteral(insert(base, template, index + 1, route));
+		} else {
+			final Node<S> child = node.getVariable(type);
+			final Node<S> base = child != null ? child : Node.<S>emptyNode().withSegment(null, type);
+			return node.withVariable(insert(base, template, index + 1, route));
+		}
+	}
+
+	/**
+	 * The route must exist. Branches that no longer lead to any route are pruned.
+	 */
+	private static <S> Node<S> remove(Node<S> node, Template template, int index) {
+		if(index == template.segments().length) {
+			return node.withRoute(null);
+		}
+		final String segment = template.segments()[index];
+		final VariableType type = template.variableTypes()[index];
+		final Node<S> child = type == null ? node.getLiteral(segment) : node.getVariable(type);
+		final Node<S> newChild = remove(child, template, index + 1);
+		if(!newChild.isEmpty()) {
+			return type == null ? node.withLiteral(newChild) : node.withVariable(newChild);
+		} else {
+			return type == null ? node.withoutLiteral(segment) : node.withoutVariable(type);
+		}
+	}
+
+	/**
+	 * @param start Index of the first character of the current segment, greater than the path length when all segments are consumed.
+	 */
+	private static <S> Route<S> match(Node<S> node, String path, int start) {
+		if(start > path.length()) {
+			return node.m_route;
+		}
+		int end = path.indexOf('/', start);
+		if(end < 0) {
+			end = path.length();
+		}
+
+		final Node<S> literal = node.findLiteral(path, start, end);
+		if(literal != null) {
+			final Route<S> result = match(literal, path, end + 1);
+			if(result != null) {
+				return result;
+			}
+		}
+		for(Node<S> variable : node.m_variables) {
+			if(variable.m_type.accepts(path, start, end)) {
+				final Route<S> result = match(variable, path, end + 1);
+				if(result != null) {
+					return result;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static <S> void collectRoutes(Node<S> node, List<Route<S>> result) {
+		if(node.m_route != null) {
+			result.add(node.m_route);
+		}
+		for(Node<S> literal : node.m_literals) {
+			collectRoutes(literal, result);
+		}
+		for(Node<S> variable : node.m_variables) {
+			collectRoutes(variable, result);
+		}
+	}
+
+	static int hash(String path, int start, int end) {
+		int result = 0;
+		for(int i = start; i < end; i++) {
+			result = 31 * result + path.charAt(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Literal children are sorted by the hash of their segment, so that they are found by binary search. Variable children are sorted by
+	 * type, from the most restrictive to the least.
+	 */
+	private static class Node<S> {
+
+		private final String m_segment;
+		private final VariableType m_type;
+		private final int[] m_literalHashes;
+		private final Node<S>[] m_literals;
+		private final Node<S>[] m_variables;
+		private final Route<S> m_route;
+
+		private Node(String segment, VariableType type, int[] literalHashes, Node<S>[] literals, Node<S>[] variables, Route<S> route) {
+			m_segment = segment;
+			m_type = type;
+			m_literalHashes = literalHashes;
+			m_literals = literals;
+			m_variables = variables;
+			m_route = route;
+		}
+
+		@SuppressWarnings("unchecked")
+		static <S> Node<S> emptyNode() {
+			return (Node<S>) EMPTY_NODE;
+		}
+
+		Node<S> withSegment(String segment, VariableType type) {
+			return new Node<>(segment, type, m_literalHashes, m_literals, m_variables, m_route);
+		}
+
+		Node<S> withRoute(Route<S> route) {
+			return new Node<>(m_segment, m_type, m_literalHashes, m_literals, m_variables, route);
+		}
+
+		Node<S> getLiteral(String segment) {
+			return findLiteral(segment, 0, segment.length());
+		}
+
+		Node<S> findLiteral(String path, int start, int end) {
+			final int hash = hash(path, start, end);
+			int index = Arrays.binarySearch(m_literalHashes, hash);
+			if(index < 0) {
+				return null;
+			}
+			// Several segments may share the same hash
+			while(index > 0 && m_literalHashes[index - 1] == hash) {
+				index--;
+			}
+			final int length = end - start;
+			for(; index < m_literals.length && m_literalHashes[index] == hash; index++) {
+				final String segment = m_literals[index].m_segment;
+				if(segment.length() == length && path.regionMatches(start, segment, 0, length)) {
+					return m_literals[index];
+				}
+			}
+			return null;
+		}
+
+		boolean isEmpty() {
+			return m_route == null && m_literals.length == 0 && m_variables.length == 0;
+		}
+
+		Node<S> getVariable(VariableType type) {
+			for(Node<S> variable : m_variables) {
+				if(variable.m_type == type) {
+					return variable;
+				}
+			}
+			return null;
+		}
+
+		Node<S> withLiteral(Node<S> child) {
+			final int hash = child.m_segment.hashCode();
+			int index = 0;
+			while(index < m_literals.length && m_literalHashes[index] < hash) {
+				index++;
+			}
+			int replacedIndex = -1;
+			for(int i = index; i < m_literals.length && m_literalHashes[i] == hash; i++) {
+				if(m_literals[i].m_segment.equals(child.m_segment)) {
+					replacedIndex = i;
+				}
+			}
+
+			final int[] hashes;
+			final Node<S>[] literals;
+			if(replacedIndex >= 0) {
+				hashes = m_literalHashes;
+				literals = m_literals.clone();
+				literals[replacedIndex] = child;
+			} else {
+				hashes = new int[m_literalHashes.length + 1];
+				literals = Arrays.copyOf(m_literals, m_literals.length + 1);
+				System.arraycopy(m_literalHashes, 0, hashes, 0, index);
+				System.arraycopy(m_literals, 0, literals, 0, index);
+				hashes[index] = hash;
+				literals[index] = child;
+				System.arraycopy(m_literalHashes, index, hashes, index + 1, m_literalHashes.length - index);
+				System.arraycopy(m_literals, index, literals, index + 1, m_literals.length - index);
+			}
+			return new Node<>(m_segment, m_type, hashes, literals, m_variables, m_route);
+		}
+
+		Node<S> withoutLiteral(String segment) {
+			final Node<S> child = getLiteral(segment);
+			final int index = Arrays.asList(m_literals).indexOf(child);
+			final int[] hashes = new int[m_literalHashes.length - 1];
+			final Node<S>[] literals = Arrays.copyOf(m_literals, m_literals.length - 1);
+			System.arraycopy(m_literalHashes, 0, hashes, 0, index);
+			System.arraycopy(m_literalHashes, index + 1, hashes, index, hashes.length - index);
+			System.arraycopy(m_literals, index + 1, literals, index, literals.length - index);
+			return new Node<>(m_segment, m_type, hashes, literals, m_variables, m_route);
+		}
+
+		Node<S> withoutVariable(VariableType type) {
+			final List<Node<S>> variables = new ArrayList<>(Arrays.asList(m_variables));
+			variables.removeIf((variable) -> variable.m_type == type);
+			return new Node<>(m_segment, m_type, m_literalHashes, m_literals, variables.toArray(Arrays.copyOf(m_variables, 0)), m_route);
+		}
+
+		Node<S> withVariable(Node<S> child) {
+			final List<Node<S>> variables = new ArrayList<>(Arrays.asList(m_variables));
+			variables.removeIf((variable) -> variable.m_type == child.m_type);
+			variables.add(child);
+			variables.sort((a, b) -> a.m_type.compareTo(b.m_type));
+			return new Node<>(m_segment, m_type, m_literalHashes, m_literals, variables.toArray(m_variables.clone()), m_route);
+		}
+	}
+}
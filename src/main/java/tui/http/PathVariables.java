@@ -0,0 +1,76 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Values of the variables declared in the template of the route that handles a request (see {@link PathRouter}).
+ */
+public class PathVariables {
+
+	static final String REQUEST_ATTRIBUTE_ROUTE = "tui.route";
+	static final String REQUEST_ATTRIBUTE_PATH = "tui.path";
+
+	private final Map<String, String> m_values = new LinkedHashMap<>();
+
+	PathVariables(PathRouter.Route<?> route, String path) {
+		if(route != null && route.hasVariables()) {
+			final String[] segments = PathRouter.splitSegments(path);
+			for(int i = 0; i < route.getSegmentsCount(); i++) {
+				final String name = route.getVariableName(i);
+				if(name != null) {
+					m_values.put(name, segments[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The variables of the route that the backend has selected for the given request. Empty when the route has no variable.
+	 */
+	public static PathVariables of(HttpServletRequest request) {
+		final PathRouter.Route<?> route = (PathRouter.Route<?>) request.getAttribute(REQUEST_ATTRIBUTE_ROUTE);
+		final String path = (String) request.getAttribute(REQUEST_ATTRIBUTE_PATH);
+		return new PathVariables(route, path);
+	}
+
+	public boolean has(String name) {
+		return m_values.containsKey(name);
+	}
+
+	public String getString(String name) {
+		final String result = m_values.get(name);
+		if(result == null) {
+			throw new NullPointerException(String.format("expected path variable '%s' not found in request", name));
+		}
+		return result;
+	}
+
+	public int getInt(String name) {
+		return Integer.parseInt(getString(name));
+	}
+
+	public long getLong(String name) {
+		return Long.parseLong(getString(name));
+	}
+
+	public Map<String, String> asMap() {
+		return Map.copyOf(m_values);
+	}
+}
@@ -0,0 +1,149 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the computations of the {@link RefreshAheadService}s on a background executor, following their {@link RefreshSchedule}. A
+ * service is computed as soon as it is scheduled, then again at each scheduled time (plus a random jitter). Services that are no
+ * longer registered in the backend are dropped at their next run.
+ */
+class RefreshAheadScheduler {
+
+	private static final Logger LOG = Logger.getLogger(RefreshAheadScheduler.class.getName());
+
+	static final int THREADS = 2;
+
+	private final Predicate<RefreshAheadService> m_isRegistered;
+	private final List<RefreshAheadService> m_services = new ArrayList<>();
+	private ScheduledExecutorService m_executor = null;
+	private final LongAdder m_computations = new LongAdder();
+	private final LongAdder m_failures = new LongAdder();
+
+	RefreshAheadScheduler(Predicate<RefreshAheadService> isRegistered) {
+		m_isRegistered = isRegistered;
+	}
+
+	synchronized void start() {
+		final AtomicInteger threadCount = new AtomicInteger();
+		final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(THREADS, (runnable) -> {
+			final Thread result = new Thread(runnable, "tui-refresh-ahead-" + threadCount.incrementAndGet());
+			result.setDaemon(true);
+			return result;
+		});
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false); // see drain()
+		m_executor = executor;
+		m_services.removeIf((service) -> !m_isRegistered.test(service));
+		for(RefreshAheadService service : m_services) {
+			submit(service, 0);
+		}
+	}
+
+	synchronized void stop() {
+		if(m_executor != null) {
+			m_executor.shutdownNow();
+			m_executor = null;
+		}
+	}
+
+	/**
+	 * Stops the scheduler once the running computations are done: the scheduled ones are cancelled.
+	 *
+	 * @return False when computations are still running after the timeout, they are then interrupted.
+	 */
+	boolean drain(long timeout_ms) throws InterruptedException {
+		final ScheduledExecutorService executor;
+		synchronized(this) {
+			executor = m_executor;
+			m_executor = null; // running computations are not scheduled again
+		}
+		if(executor == null) {
+			return true;
+		}
+		executor.shutdown();
+		if(executor.awaitTermination(timeout_ms, TimeUnit.MILLISECONDS)) {
+			return true;
+		}
+		executor.shutdownNow();
+		return false;
+	}
+
+	/**
+	 * The service is computed immediately when the scheduler is started, otherwise when it starts.
+	 */
+	synchronized void schedule(RefreshAheadService service) {
+		m_services.removeIf((registered) -> !m_isRegistered.test(registered));
+		m_services.add(service);
+		if(m_executor != null) {
+			submit(service, 0);
+		}
+	}
+
+	long getComputations() {
+		return m_computations.sum();
+	}
+
+	long getFailures() {
+		return m_failures.sum();
+	}
+
+	private void submit(RefreshAheadService service, long delay_ms) {
+		final ScheduledExecutorService executor = m_executor;
+		try {
+			executor.schedule(() -> run(service, executor), delay_ms, TimeUnit.MILLISECONDS);
+		} catch(RejectedExecutionException e) {
+			// the scheduler is stopping
+		}
+	}
+
+	private void run(RefreshAheadService service, ScheduledExecutorService executor) {
+		if(!m_isRegistered.test(service)) {
+			return;
+		}
+		try {
+			service.refresh();
+			m_computations.increment();
+		} catch(Throwable t) {
+			m_failures.increment();
+			LOG.log(Level.SEVERE, String.format("Background computation of '%s' failed, the previous response is kept: %s",
+					service.getPath(), t.getMessage()), t);
+		}
+
+		final RefreshSchedule schedule = service.getSchedule();
+		long delay_ms = schedule.getNextDelay_ms(ZonedDateTime.now());
+		if(schedule.getMaxJitter_ms() > 0) {
+			delay_ms += ThreadLocalRandom.current().nextLong(schedule.getMaxJitter_ms() + 1);
+		}
+		synchronized(this) {
+			if(m_executor == executor) { // not stopped nor restarted meanwhile
+				submit(service, delay_ms);
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import tui.html.HTMLConstants;
+import tui.json.JsonObject;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Web service that answers the latest response computed in the background by the {@link RefreshAheadScheduler}. The response is
+ * computed when requested only when none has been computed yet, or when the latest one is older than the schedule's max staleness.
+ */
+class RefreshAheadService implements TUIWebService {
+
+	private record Result(JsonObject node, SerializedResponse serialized, long computed_ns) {
+	}
+
+	private final String m_path;
+	private final TUIPrecomputedWebService m_service;
+	private final RefreshSchedule m_schedule;
+	private final Object m_computationLock = new Object();
+	private volatile Result m_latest = null;
+
+	RefreshAheadService(String path, TUIPrecomputedWebService service, RefreshSchedule schedule) {
+		m_path = path;
+		m_service = service;
+		m_schedule = schedule;
+	}
+
+	String getPath() {
+		return m_path;
+	}
+
+	RefreshSchedule getSchedule() {
+		return m_schedule;
+	}
+
+	@Override
+	public JsonObject handle(String uri, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		return getLatest().node();
+	}
+
+	SerializedResponse getLatestSerialized() throws IOException {
+		return getLatest().serialized();
+	}
+
+	/**
+	 * Computes the response and makes it the latest one. Called by the scheduler.
+	 */
+	void refresh() throws Exception {
+		synchronized(m_computationLock) {
+			m_latest = compute();
+		}
+	}
+
+	private Result getLatest() throws IOException {
+		final Result latest = m_latest;
+		if(isFresh(latest)) {
+			return latest;
+		}
+		synchronized(m_computationLock) { // concurrent requests wait for a single computation
+			if(isFresh(m_latest)) {
+				return m_latest;
+			}
+			try {
+				m_latest = compute();
+			} catch(IOException | RuntimeException e) {
+				throw e;
+			} catch(Exception e) {
+				throw new IOException(e);
+			}
+			return m_latest;
+		}
+	}
+
+	private boolean isFresh(Result result) {
+		if(result == null) {
+			return false;
+		}
+		final long maxStaleness_ms = m_schedule.getMaxStaleness_ms();
+		return maxStaleness_ms == 0 || (System.nanoTime() - result.computed_ns()) / 1_000_000 <= maxStaleness_ms;
+	}
+
+	private Result compute() throws Exception {
+		final JsonObject node = m_service.compute();
+		return new Result(node, SerializedResponse.ofJson(node, HTMLConstants.JSON_CONTENT_TYPE), System.nanoTime());
+	}
+}
@@ -0,0 +1,198 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import tui.ui.UIConfigurationException;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+
+/**
+ * Immutable schedule of the background computations of a {@link TUIPrecomputedWebService}: either a fixed period, or a cron
+ * expression with the five standard fields (minute, hour, day of month, month, day of week), in the default time zone.
+ */
+public class RefreshSchedule {
+
+	private final long m_period_ms; // 0 when the schedule is a cron expression
+	private final String m_cronExpression;
+	private final BitSet[] m_cronFields;
+	private final long m_maxJitter_ms;
+	private final long m_maxStaleness_ms; // 0 when unbounded
+
+	private static final int MINUTE = 0;
+	private static final int HOUR = 1;
+	private static final int DAY_OF_MONTH = 2;
+	private static final int MONTH = 3;
+	private static final int DAY_OF_WEEK = 4;
+	private static final int[][] CRON_BOUNDS = {{0, 59}, {0, 23}, {1, 31}, {1, 12}, {0, 7}};
+
+	private RefreshSchedule(long period_ms, String cronExpression, BitSet[] cronFields, long maxJitter_ms, long maxStaleness_ms) {
+		m_period_ms = period_ms;
+		m_cronExpression = cronExpression;
+		m_cronFields = cronFields;
+		m_maxJitter_ms = maxJitter_ms;
+		m_maxStaleness_ms = maxStaleness_ms;
+	}
+
+	public static RefreshSchedule every(long period_ms) {
+		if(period_ms <= 0) {
+			throw new UIConfigurationException("Refresh period must be positive: %d", period_ms);
+		}
+		return new RefreshSchedule(period_ms, null, null, 0, 0);
+	}
+
+	/**
+	 * @param expression Five fields separated by spaces: minute (0-59), hour (0-23), day of month (1-31), month (1-12) and day of week
+	 *                   (0-7, both 0 and 7 are Sunday). Each field is '*' or a list of values, ranges 'a-b' and steps '*&#47;n' or
+	 *                   'a-b/n'. Example: '*&#47;15 8-18 * * 1-5' runs every 15 minutes during working hours.
+	 */
+	public static RefreshSchedule cron(String expression) {
+		final String[] fields = expression.trim().split("\\s+");
+		if(fields.length != 5) {
+			throw new UIConfigurationException("Cron expression must have 5 fields: '%s'", expression);
+		}
+		final BitSet[] cronFields = new BitSet[5];
+		for(int i = 0; i < fields.length; i++) {
+			cronFields[i] = parseCronField(expression, fields[i], CRON_BOUNDS[i][0], CRON_BOUNDS[i][1]);
+		}
+		if(cronFields[DAY_OF_WEEK].get(7)) {
+			cronFields[DAY_OF_WEEK].set(0);
+		}
+		final RefreshSchedule result = new RefreshSchedule(0, expression, cronFields, 0, 0);
+		if(result.next(ZonedDateTime.now()) == null) {
+			throw new UIConfigurationException("Cron expression never matches: '%s'", expression);
+		}
+		return result;
+	}
+
+	/**
+	 * @param maxJitter_ms Each computation is delayed by a random duration up to this one, so that the services scheduled at the same
+	 *                     time do not all run at once.
+	 */
+	public RefreshSchedule withJitter(long maxJitter_ms) {
+		if(maxJitter_ms < 0) {
+			throw new UIConfigurationException("Refresh jitter must not be negative: %d", maxJitter_ms);
+		}
+		return new RefreshSchedule(m_period_ms, m_cronExpression, m_cronFields, maxJitter_ms, m_maxStaleness_ms);
+	}
+
+	/**
+	 * @param maxStaleness_ms When the latest computed response is older than this (for example because the background computations
+	 *                        fail), the response is computed again when requested. Unbounded by default.
+	 */
+	public RefreshSchedule withMaxStaleness(long maxStaleness_ms) {
+		if(maxStaleness_ms <= 0) {
+			throw new UIConfigurationException("Max staleness must be positive: %d", maxStaleness_ms);
+		}
+		return new RefreshSchedule(m_period_ms, m_cronExpression, m_cronFields, m_maxJitter_ms, maxStaleness_ms);
+	}
+
+	public long getMaxJitter_ms() {
+		return m_maxJitter_ms;
+	}
+
+	public long getMaxStaleness_ms() {
+		return m_maxStaleness_ms;
+	}
+
+	@Override
+	public String toString() {
+		return m_cronExpression == null ? String.format("every %d ms", m_period_ms) : String.format("cron '%s'", m_cronExpression);
+	}
+
+	/**
+	 * @return The delay before the next computation, jitter excluded.
+	 */
+	long getNextDelay_ms(ZonedDateTime now) {
+		if(m_cronExpression == null) {
+			return m_period_ms;
+		}
+		return Math.max(0, ChronoUnit.MILLIS.between(now, next(now)));
+	}
+
+	/**
+	 * @return The first time strictly after 'now' that matches the cron expression, or null when there is none within 5 years.
+	 */
+	ZonedDateTime next(ZonedDateTime now) {
+		ZonedDateTime result = now.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+		final ZonedDateTime limit = now.plusYears(5);
+		while(result.isBefore(limit)) {
+			if(!m_cronFields[MONTH].get(result.getMonthValue())) {
+				result = result.plusMonths(1).withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS);
+			} else if(!matchesDay(result)) {
+				result = result.plusDays(1).truncatedTo(ChronoUnit.DAYS);
+			} else if(!m_cronFields[HOUR].get(result.getHour())) {
+				result = result.plusHours(1).truncatedTo(ChronoUnit.HOURS);
+			} else if(!m_cronFields[MINUTE].get(result.getMinute())) {
+				result = result.plusMinutes(1);
+			} else {
+				return result;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Like cron, when both the day of month and the day of week are restricted, a day matches when either matches.
+	 */
+	private boolean matchesDay(ZonedDateTime time) {
+		final boolean dayOfMonthMatches = m_cronFields[DAY_OF_MONTH].get(time.getDayOfMonth());
+		final boolean dayOfWeekMatches = m_cronFields[DAY_OF_WEEK].get(time.getDayOfWeek().getValue() % 7);
+		final boolean dayOfMonthRestricted = m_cronFields[DAY_OF_MONTH].cardinality() < 31;
+		final boolean dayOfWeekRestricted = m_cronFields[DAY_OF_WEEK].cardinality() < 8;
+		if(dayOfMonthRestricted && dayOfWeekRestricted) {
+			return dayOfMonthMatches || dayOfWeekMatches;
+		}
+		return dayOfMonthMatches && dayOfWeekMatches;
+	}
+
+	private static BitSet parseCronField(String expression, String field, int min, int max) {
+		final BitSet result = new BitSet(max + 1);
+		for(String item : field.split(",")) {
+			try {
+				int step = 1;
+				String range = item;
+				final int indexOfSlash = item.indexOf('/');
+				if(indexOfSlash >= 0) {
+					step = Integer.parseInt(item.substring(indexOfSlash + 1));
+					range = item.substring(0, indexOfSlash);
+				}
+				int from;
+				int to;
+				if(range.equals("*")) {
+					from = min;
+					to = max;
+				} else if(range.indexOf('-') > 0) {
+					from = Integer.parseInt(range.substring(0, range.indexOf('-')));
+					to = Integer.parseInt(range.substring(range.indexOf('-') + 1));
+				} else {
+					from = Integer.parseInt(range);
+					to = indexOfSlash >= 0 ? max : from;
+				}
+				if(step <= 0 || from < min || to > max || from > to) {
+					throw new UIConfigurationException("Invalid item '%s' in cron expression '%s'", item, expression);
+				}
+				for(int value = from; value <= to; value += step) {
+					result.set(value);
+				}
+			} catch(NumberFormatException e) {
+				throw new UIConfigurationException("Invalid item '%s' in cron expression '%s'", item, expression);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,100 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-flight execution of identical web service calls: while a call is being computed, the identical calls that arrive wait for
+ * its result instead of computing it again. See {@link RouteOptions#withCoalescing(boolean)}.
+ * <p>
+ * The calls are coalesced when they have the same key and the same generation of their route (see {@link ResponseCache}): the calls
+ * that arrive after an invalidation start a new computation.
+ */
+class RequestCoalescer {
+
+	interface Computation {
+		/**
+		 * @return Null when the result cannot be shared, in which case each waiting call computes its own.
+		 */
+		SerializedResponse compute() throws IOException;
+	}
+
+	private record FlightKey(RequestKey key, long generation) {
+	}
+
+	private final Map<FlightKey, CompletableFuture<SerializedResponse>> m_inFlight = new ConcurrentHashMap<>();
+	private final LongAdder m_coalescedCalls = new LongAdder();
+
+	/**
+	 * @return The result of the computation, made by this call or by an identical call in flight.
+	 */
+	SerializedResponse execute(RequestKey requestKey, long generation, Computation computation) throws IOException {
+		final FlightKey key = new FlightKey(requestKey, generation);
+		final CompletableFuture<SerializedResponse> future = new CompletableFuture<>();
+		final CompletableFuture<SerializedResponse> inFlight = m_inFlight.putIfAbsent(key, future);
+		if(inFlight != null) {
+			m_coalescedCalls.increment();
+			return await(inFlight);
+		}
+		try {
+			final SerializedResponse result = computation.compute();
+			future.complete(result);
+			return result;
+		} catch(CancellationException e) {
+			future.complete(null); // the waiting calls are not cancelled, they compute their own result
+			throw e;
+		} catch(IOException | RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			m_inFlight.remove(key, future);
+		}
+	}
+
+	long getCoalescedCalls() {
+		return m_coalescedCalls.sum();
+	}
+
+	int getInFlightComputations() {
+		return m_inFlight.size();
+	}
+
+	private static SerializedResponse await(CompletableFuture<SerializedResponse> future) throws IOException {
+		try {
+			return future.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a coalesced call", e);
+		} catch(ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if(cause instanceof IOException ioException) {
+				throw ioException;
+			} else if(cause instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			} else if(cause instanceof Error error) {
+				throw error;
+			}
+			throw new IOException(cause);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cancellation signal and deadline of a request, for services that can stop expensive work early: check {@link #isCancelled()}
+ * between steps, or register an action with {@link #onCancel(Runnable)} (for example to cancel a JDBC statement).
+ * <p>
+ * A request is cancelled when:
+ * <ul>
+ *     <li>the page refreshes the same component again before the response (the former request is superseded),</li>
+ *     <li>the page is closed or left,</li>
+ *     <li>its deadline passes: see {@link #TIMEOUT_HEADER}.</li>
+ * </ul>
+ * The response of a cancelled request is not sent.
+ */
+public class RequestContext {
+
+	private static final Logger LOG = Logger.getLogger(RequestContext.class.getSimpleName());
+
+	static final String REQUEST_ATTRIBUTE = "tui.requestContext";
+
+	/**
+	 * Optional request header: number of milliseconds after which the client no longer needs the response. Timeouts longer than
+	 * {@link #MAX_TIMEOUT_ms} are ignored, as if the header was absent.
+	 */
+	public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+	public static final long MAX_TIMEOUT_ms = TimeUnit.DAYS.toMillis(1);
+
+	/**
+	 * Request header set by tui.js: the page instance and the refreshed component, so that a newer refresh supersedes the former one.
+	 */
+	public static final String REFRESH_KEY_HEADER = "X-TUI-Refresh-Key";
+
+	public enum Reason {
+		SUPERSEDED, // the same component has been refreshed again
+		PAGE_CLOSED,
+		DEADLINE_EXCEEDED
+	}
+
+	private final String m_refreshKey;
+	private final long m_deadline_ns; // Long.MAX_VALUE when none
+	private final List<Runnable> m_onCancel = new ArrayList<>();
+	private volatile Reason m_cancellationReason = null;
+
+	RequestContext(String refreshKey, long deadline_ns) {
+		m_refreshKey = refreshKey;
+		m_deadline_ns = deadline_ns;
+	}
+
+	/**
+	 * @return The context of the request being served. A request that has not been dispatched by the backend is never cancelled.
+	 */
+	public static RequestContext of(HttpServletRequest request) {
+		if(request.getAttribute(REQUEST_ATTRIBUTE) instanceof RequestContext context) {
+			return context;
+		}
+		return new RequestContext(null, Long.MAX_VALUE);
+	}
+
+	String getRefreshKey() {
+		return m_refreshKey;
+	}
+
+	public boolean hasDeadline() {
+		return m_deadline_ns != Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return The time left before the deadline, Long.MAX_VALUE when the request has no deadline.
+	 */
+	public long getRemaining_ms() {
+		return hasDeadline() ? Math.max(0, (m_deadline_ns - System.nanoTime()) / 1_000_000) : Long.MAX_VALUE;
+	}
+
+	long getDeadline_ns() {
+		return m_deadline_ns;
+	}
+
+	public boolean isCancelled() {
+		if(m_cancellationReason == null && hasDeadline() && System.nanoTime() >= m_deadline_ns) {
+			cancel(Reason.DEADLINE_EXCEEDED);
+		}
+		return m_cancellationReason != null;
+	}
+
+	/**
+	 * @return Null unless the request is cancelled.
+	 */
+	public Reason getCancellationReason() {
+		return isCancelled() ? m_cancellationReason : null;
+	}
+
+	/**
+	 * @throws CancellationException When the request is cancelled. The backend then drops the response.
+	 */
+	public void throwIfCancelled() {
+		if(isCancelled()) {
+			throw new CancellationException(String.format("Request cancelled: %s", m_cancellationReason));
+		}
+	}
+
+	/**
+	 * @param action Run once, by the thread that cancels the request. Run immediately when the request is already cancelled.
+	 */
+	public void onCancel(Runnable action) {
+		synchronized(m_onCancel) {
+			if(m_cancellationReason == null) {
+				m_onCancel.add(action);
+				return;
+			}
+		}
+		run(action);
+	}
+
+	void cancel(Reason reason) {
+		final List<Runnable> actions;
+		synchronized(m_onCancel) {
+			if(m_cancellationReason != null) {
+				return;
+			}
+			m_cancellationReason = reason;
+			actions = new ArrayList<>(m_onCancel);
+			m_onCancel.clear();
+		}
+		actions.forEach(this::run);
+	}
+
+	private void run(Runnable action) {
+		try {
+			action.run();
+		} catch(Throwable t) {
+			LOG.log(Level.WARNING, String.format("Cancellation action failed: %s", t.getMessage()), t);
+		}
+	}
+}
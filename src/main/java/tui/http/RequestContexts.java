@@ -0,0 +1,132 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Contexts of the requests being served: a newer refresh of a component cancels the former one, a closed page cancels all of its
+ * requests, and a timer cancels the requests at their deadline.
+ */
+class RequestContexts {
+
+	private static final Logger LOG = Logger.getLogger(RequestContexts.class.getSimpleName());
+
+	private final Map<String, RequestContext> m_byRefreshKey = new ConcurrentHashMap<>();
+	private final Map<RequestContext, ScheduledFuture<?>> m_deadlineTimers = new ConcurrentHashMap<>();
+	private final LongAdder m_cancelled = new LongAdder();
+	private ScheduledThreadPoolExecutor m_timer = null;
+
+	synchronized void start() {
+		m_timer = new ScheduledThreadPoolExecutor(1, (runnable) -> {
+			final Thread result = new Thread(runnable, "tui-request-deadlines");
+			result.setDaemon(true);
+			return result;
+		});
+		m_timer.setRemoveOnCancelPolicy(true);
+	}
+
+	synchronized void stop() {
+		if(m_timer != null) {
+			m_timer.shutdownNow();
+			m_timer = null;
+		}
+		m_deadlineTimers.clear();
+	}
+
+	RequestContext open(HttpServletRequest request) {
+		final String refreshKey = request.getHeader(RequestContext.REFRESH_KEY_HEADER);
+		final RequestContext result = new RequestContext(refreshKey, parseDeadline_ns(request));
+		request.setAttribute(RequestContext.REQUEST_ATTRIBUTE, result);
+
+		if(refreshKey != null) {
+			final RequestContext superseded = m_byRefreshKey.put(refreshKey, result);
+			if(superseded != null) {
+				superseded.cancel(RequestContext.Reason.SUPERSEDED);
+			}
+		}
+		final ScheduledThreadPoolExecutor timer = m_timer;
+		if(result.hasDeadline() && timer != null) {
+			try {
+				m_deadlineTimers.put(result, timer.schedule(() -> result.cancel(RequestContext.Reason.DEADLINE_EXCEEDED),
+						Math.max(0, result.getDeadline_ns() - System.nanoTime()), TimeUnit.NANOSECONDS));
+			} catch(RejectedExecutionException e) {
+				// the backend is stopping, the deadline is still checked by isCancelled()
+			}
+		}
+		return result;
+	}
+
+	void close(RequestContext context) {
+		if(context.getRefreshKey() != null) {
+			m_byRefreshKey.remove(context.getRefreshKey(), context);
+		}
+		final ScheduledFuture<?> deadlineTimer = m_deadlineTimers.remove(context);
+		if(deadlineTimer != null) {
+			deadlineTimer.cancel(false);
+		}
+		if(context.isCancelled()) {
+			m_cancelled.increment();
+		}
+	}
+
+	/**
+	 * @param pageId Identifies the instance of a page, as the first part of the refresh keys of its requests.
+	 */
+	void cancelPage(String pageId) {
+		final String prefix = pageId + "/";
+		for(Map.Entry<String, RequestContext> entry : m_byRefreshKey.entrySet()) {
+			if(entry.getKey().startsWith(prefix)) {
+				entry.getValue().cancel(RequestContext.Reason.PAGE_CLOSED);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of requests that have been cancelled while being served.
+	 */
+	long getCancelled() {
+		return m_cancelled.sum();
+	}
+
+	private static long parseDeadline_ns(HttpServletRequest request) {
+		final String timeout = request.getHeader(RequestContext.TIMEOUT_HEADER);
+		if(timeout == null) {
+			return Long.MAX_VALUE;
+		}
+		try {
+			final long timeout_ms = Long.parseLong(timeout.trim());
+			if(timeout_ms > RequestContext.MAX_TIMEOUT_ms) {
+				return Long.MAX_VALUE; // no deadline, the request is not kept that long anyway
+			} else if(timeout_ms >= 0) {
+				return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout_ms);
+			}
+		} catch(NumberFormatException e) {
+			// ignored below
+		}
+		LOG.log(Level.WARNING, String.format("Invalid %s header ignored: %s", RequestContext.TIMEOUT_HEADER, timeout));
+		return Long.MAX_VALUE;
+	}
+}
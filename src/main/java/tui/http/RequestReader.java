@@ -28,6 +28,7 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -46,13 +47,23 @@ public class RequestReader {
 	private record FileInput(String name, InputStream inputStream) {
 	}
 
+	static final String REQUEST_ATTRIBUTE = "tui.requestReader";
+
 	private final Map<String, String> m_parameters = new HashMap<>();
 	private final Map<String, FileInput> m_files = new HashMap<>();
 
+	/**
+	 * The content of the request can be read only once: the parsed parameters are attached to the request, so that further readers
+	 * (from the backend and from the service) get them too.
+	 */
 	public RequestReader(HttpServletRequest request) {
-		final String contentType = request.getContentType();
+		if(request.getAttribute(REQUEST_ATTRIBUTE) instanceof RequestReader reader) {
+			m_parameters.putAll(reader.m_parameters);
+			m_files.putAll(reader.m_files);
+			return;
+		}
 		try {
-			if(contentType != null && contentType.startsWith("multipart/")) {
+			if(isMultipart(request)) {
 				MultipartConfigElement multipartConfigElement =
 						new MultipartConfigElement("/tmp", 2048, 2048, 256);
 				request.setAttribute("org.eclipse.multipartConfig", multipartConfigElement);
@@ -77,6 +88,25 @@ public class RequestReader {
 		} catch(Exception e) {
 			throw new RuntimeException(e);
 		}
+		request.setAttribute(REQUEST_ATTRIBUTE, this);
+	}
+
+	/**
+	 * Attaches already known parameters to a request that has no content to parse: calls received through WebSocket or within a
+	 * batch.
+	 */
+	RequestReader(HttpServletRequest request, Map<String, String> parameters) {
+		m_parameters.putAll(parameters);
+		request.setAttribute(REQUEST_ATTRIBUTE, this);
+	}
+
+	static boolean isMultipart(HttpServletRequest request) {
+		final String contentType = request.getContentType();
+		return contentType != null && contentType.startsWith("multipart/");
+	}
+
+	Map<String, String> getParameters() {
+		return Collections.unmodifiableMap(m_parameters);
 	}
 
 	public String getStringParameter(String key, String defaultValue) {
@@ -0,0 +1,121 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Collects the many small pieces written by the JSON and HTML serializers, encodes them in UTF-8 and sends them to the response
+ * output by blocks. Memory is bounded by the buffers of this class and the one of the response, whatever the size of the content:
+ * the first bytes are sent while the rest is still being serialized.
+ * <p>
+ * The output is never flushed by this class, so that the response stays uncommitted as long as the whole content fits in the
+ * response buffer.
+ */
+class ResponseAppender implements Appendable {
+
+	static final int BUFFER_SIZE = 8 * 1024;
+
+	private final OutputStream m_out;
+	private final char[] m_chars = new char[BUFFER_SIZE];
+	private final ByteBuffer m_bytes = ByteBuffer.allocate(BUFFER_SIZE * 3); // enough for any UTF-8 encoding of the chars
+	private final CharsetEncoder m_encoder = StandardCharsets.UTF_8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private int m_count = 0;
+
+	ResponseAppender(OutputStream out) {
+		m_out = out;
+	}
+
+	@Override
+	public Appendable append(CharSequence sequence) throws IOException {
+		final CharSequence value = sequence == null ? "null" : sequence;
+		return append(value, 0, value.length());
+	}
+
+	@Override
+	public Appendable append(CharSequence sequence, int start, int end) throws IOException {
+		final CharSequence value = sequence == null ? "null" : sequence;
+		int index = start;
+		while(index < end) {
+			if(m_count == m_chars.length) {
+				encode(false);
+			}
+			final int length = Math.min(end - index, m_chars.length - m_count);
+			if(value instanceof String string) {
+				string.getChars(index, index + length, m_chars, m_count);
+			} else {
+				for(int i = 0; i < length; i++) {
+					m_chars[m_count + i] = value.charAt(index + i);
+				}
+			}
+			m_count += length;
+			index += length;
+		}
+		return this;
+	}
+
+	@Override
+	public Appendable append(char c) throws IOException {
+		if(m_count == m_chars.length) {
+			encode(false);
+		}
+		m_chars[m_count++] = c;
+		return this;
+	}
+
+	/**
+	 * Sends the remaining characters to the response output.
+	 */
+	void finish() throws IOException {
+		encode(true);
+	}
+
+	private void encode(boolean endOfInput) throws IOException {
+		final CharBuffer chars = CharBuffer.wrap(m_chars, 0, m_count);
+		CoderResult result;
+		do {
+			result = m_encoder.encode(chars, m_bytes, endOfInput);
+			writeBytes();
+		} while(result.isOverflow());
+
+		// An incomplete surrogate pair is kept for the next encoding
+		final int remaining = chars.remaining();
+		System.arraycopy(m_chars, chars.position(), m_chars, 0, remaining);
+		m_count = remaining;
+
+		if(endOfInput) {
+			m_encoder.flush(m_bytes);
+			writeBytes();
+			m_encoder.reset();
+		}
+	}
+
+	private void writeBytes() throws IOException {
+		if(m_bytes.position() > 0) {
+			m_out.write(m_bytes.array(), 0, m_bytes.position());
+			m_bytes.clear();
+		}
+	}
+}
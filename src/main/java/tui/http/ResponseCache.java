@@ -0,0 +1,195 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the serialized responses of the routes that are declared as cached (see {@link RouteOptions#withCache(int, long)}). Each
+ * route has its own cache, bounded in number of entries with least-recently-used eviction, whose entries expire after a time to live.
+ * <p>
+ * A response is identified by its {@link RequestKey}.
+ * <p>
+ * Each route has a generation, increased by the invalidations: a response computed while its route was invalidated is not stored.
+ * The caller reads the generation with {@link #getGeneration(String)} before computing, and gives it to
+ * {@link #put(String, RouteOptions, RequestKey, SerializedResponse, long)}.
+ */
+class ResponseCache {
+
+	private record Entry(SerializedResponse response, long expiration_ns) {
+
+		boolean isExpired(long now_ns) {
+			return now_ns - expiration_ns >= 0;
+		}
+	}
+
+	private static class RouteCache {
+
+		private final int m_maxEntries;
+		private final long m_ttl_ms;
+		private final LinkedHashMap<RequestKey, Entry> m_entries;
+
+		RouteCache(int maxEntries, long ttl_ms, LongAdder evictions) {
+			m_maxEntries = maxEntries;
+			m_ttl_ms = ttl_ms;
+			m_entries = new LinkedHashMap<>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<RequestKey, Entry> eldest) {
+					final boolean result = size() > m_maxEntries;
+					if(result) {
+						evictions.increment();
+					}
+					return result;
+				}
+			};
+		}
+
+		boolean isConfiguredWith(RouteOptions options) {
+			return m_maxEntries == options.getCacheMaxEntries() && m_ttl_ms == options.getCacheTTL_ms();
+		}
+
+		synchronized Entry get(RequestKey key, long now_ns) {
+			final Entry result = m_entries.get(key);
+			if(result != null && result.isExpired(now_ns)) {
+				m_entries.remove(key);
+				return null;
+			}
+			return result;
+		}
+
+		synchronized void put(RequestKey key, Entry entry, long generation, AtomicLong currentGeneration) {
+			if(currentGeneration.get() == generation) { // checked under the lock, the invalidations clear the entries after the increase
+				m_entries.put(key, entry);
+			}
+		}
+
+		synchronized int invalidate(String path) {
+			final int sizeBefore = m_entries.size();
+			m_entries.keySet().removeIf((key) -> key.path().equals(path));
+			return sizeBefore - m_entries.size();
+		}
+
+		synchronized int size() {
+			return m_entries.size();
+		}
+	}
+
+	private final Map<String, RouteCache> m_routeCaches = new ConcurrentHashMap<>(); // by route template
+	private final Map<String, AtomicLong> m_generations = new ConcurrentHashMap<>(); // by route template
+	private final LongAdder m_hits = new LongAdder();
+	private final LongAdder m_misses = new LongAdder();
+	private final LongAdder m_evictions = new LongAdder();
+
+	/**
+	 * @return The cached response, or null when it is not cached or has expired.
+	 */
+	SerializedResponse get(String template, RouteOptions options, RequestKey key) {
+		final Entry result = getRouteCache(template, options).get(key, System.nanoTime());
+		if(result == null) {
+			m_misses.increment();
+			return null;
+		}
+		m_hits.increment();
+		return result.response();
+	}
+
+	/**
+	 * @return The current generation of the route, increased by each invalidation.
+	 */
+	long getGeneration(String template) {
+		return getGenerationCounter(template).get();
+	}
+
+	/**
+	 * @param generation The generation of the route when the computation of the response started. The response is dropped when the
+	 *                   route has been invalidated since.
+	 */
+	void put(String template, RouteOptions options, RequestKey key, SerializedResponse response, long generation) {
+		final long expiration_ns = System.nanoTime() + options.getCacheTTL_ms() * 1_000_000;
+		getRouteCache(template, options).put(key, new Entry(response, expiration_ns), generation, getGenerationCounter(template));
+	}
+
+	/**
+	 * @param pathOrTemplate Either the template of a cached route, whose entries are all removed, or a requested path whose entries
+	 *                       (for all parameters) are removed.
+	 * @return The number of removed entries.
+	 */
+	int invalidate(String pathOrTemplate) {
+		if(m_routeCaches.containsKey(pathOrTemplate)) {
+			getGenerationCounter(pathOrTemplate).incrementAndGet();
+		} else {
+			m_generations.values().forEach(AtomicLong::incrementAndGet); // the path may belong to any route
+		}
+		final RouteCache routeCache = m_routeCaches.remove(pathOrTemplate);
+		if(routeCache != null) {
+			return routeCache.size();
+		}
+		int result = 0;
+		for(RouteCache cache : m_routeCaches.values()) {
+			result += cache.invalidate(pathOrTemplate);
+		}
+		return result;
+	}
+
+	/**
+	 * Removes all the entries of the route, for example because its service has been replaced.
+	 */
+	void invalidateRoute(String template) {
+		getGenerationCounter(template).incrementAndGet();
+		m_routeCaches.remove(template);
+	}
+
+	void invalidateAll() {
+		m_generations.values().forEach(AtomicLong::incrementAndGet);
+		m_routeCaches.clear();
+	}
+
+	int size() {
+		return m_routeCaches.values().stream().mapToInt(RouteCache::size).sum();
+	}
+
+	long getHits() {
+		return m_hits.sum();
+	}
+
+	long getMisses() {
+		return m_misses.sum();
+	}
+
+	long getEvictions() {
+		return m_evictions.sum();
+	}
+
+	private AtomicLong getGenerationCounter(String template) {
+		return m_generations.computeIfAbsent(template, (key) -> new AtomicLong());
+	}
+
+	/**
+	 * The cache of a route is replaced when its options change.
+	 */
+	private RouteCache getRouteCache(String template, RouteOptions options) {
+		final RouteCache current = m_routeCaches.get(template);
+		if(current != null && current.isConfiguredWith(options)) {
+			return current;
+		}
+		return m_routeCaches.compute(template, (key, existing) -> existing != null && existing.isConfiguredWith(options) ? existing
+				: new RouteCache(options.getCacheMaxEntries(), options.getCacheTTL_ms(), m_evictions));
+	}
+}
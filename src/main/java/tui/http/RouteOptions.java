@@ -0,0 +1,152 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import tui.ui.UIConfigurationException;
+
+/**
+ * Immutable options that tune how the backend serves the paths matching a route template, independently of the service that handles
+ * them. See {@link TUIBackend#configureRoute(String, java.util.function.UnaryOperator)}.
+ */
+public class RouteOptions {
+
+	public static final RouteOptions DEFAULT = new RouteOptions();
+
+	private boolean m_compressed = true;
+	private boolean m_entityTagged = true;
+	private int m_cacheMaxEntries = 0; // 0 when not cached
+	private long m_cacheTTL_ms = 0;
+	private boolean m_coalesced = false;
+	private ConcurrencyLimit m_concurrencyLimit = null;
+
+	private RouteOptions() {
+	}
+
+	/**
+	 * Options are never modified once built: each 'with' method modifies a copy.
+	 */
+	private RouteOptions copy() {
+		final RouteOptions result = new RouteOptions();
+		result.m_compressed = m_compressed;
+		result.m_entityTagged = m_entityTagged;
+		result.m_cacheMaxEntries = m_cacheMaxEntries;
+		result.m_cacheTTL_ms = m_cacheTTL_ms;
+		result.m_coalesced = m_coalesced;
+		result.m_concurrencyLimit = m_concurrencyLimit;
+		return result;
+	}
+
+	public boolean isCompressed() {
+		return m_compressed;
+	}
+
+	/**
+	 * @param enabled When false, responses are never compressed, even when the backend's compression is enabled.
+	 */
+	public RouteOptions withCompression(boolean enabled) {
+		final RouteOptions result = copy();
+		result.m_compressed = enabled;
+		return result;
+	}
+
+	public boolean isEntityTagged() {
+		return m_entityTagged;
+	}
+
+	/**
+	 * @param enabled When true (default), the page and web service responses carry a strong ETag, and the backend answers 304 when
+	 *                the request's 'If-None-Match' matches it. The content is serialized once and kept in memory while its digest is
+	 *                computed, up to 256 KB: larger contents are streamed without ETag. Disable it for services whose responses
+	 *                always differ.
+	 */
+	public RouteOptions withEntityTag(boolean enabled) {
+		final RouteOptions result = copy();
+		result.m_entityTagged = enabled;
+		return result;
+	}
+
+	public boolean isCached() {
+		return m_cacheMaxEntries > 0;
+	}
+
+	public int getCacheMaxEntries() {
+		return m_cacheMaxEntries;
+	}
+
+	public long getCacheTTL_ms() {
+		return m_cacheTTL_ms;
+	}
+
+	/**
+	 * Declares the web service as a pure function of the requested path and its parameters (including session parameters): its
+	 * serialized responses are kept in memory and served again to identical requests. Multipart requests are never cached.
+	 *
+	 * @param maxEntries The least recently used responses are evicted beyond this number.
+	 * @param ttl_ms     Responses are computed again once they are older than this.
+	 * @see TUIBackend#invalidateCache(String)
+	 */
+	public RouteOptions withCache(int maxEntries, long ttl_ms) {
+		if(maxEntries <= 0) {
+			throw new UIConfigurationException("Cache max entries must be positive: %d", maxEntries);
+		}
+		if(ttl_ms <= 0) {
+			throw new UIConfigurationException("Cache TTL must be positive: %d", ttl_ms);
+		}
+		final RouteOptions result = copy();
+		result.m_cacheMaxEntries = maxEntries;
+		result.m_cacheTTL_ms = ttl_ms;
+		return result;
+	}
+
+	public RouteOptions withoutCache() {
+		final RouteOptions result = copy();
+		result.m_cacheMaxEntries = 0;
+		result.m_cacheTTL_ms = 0;
+		return result;
+	}
+
+	public boolean isCoalesced() {
+		return m_coalesced;
+	}
+
+	/**
+	 * @param enabled When true, the concurrent calls of the web service with the same path and parameters share a single
+	 *                computation: the first call runs the service and the others receive its serialized response. Multipart
+	 *                requests are never coalesced.
+	 */
+	public RouteOptions withCoalescing(boolean enabled) {
+		final RouteOptions result = copy();
+		result.m_coalesced = enabled;
+		return result;
+	}
+
+	/**
+	 * @return Null when the route is not limited.
+	 */
+	public ConcurrencyLimit getConcurrencyLimit() {
+		return m_concurrencyLimit;
+	}
+
+	/**
+	 * @param limit Bounds the number of requests of the route that are served at the same time, so that a heavy route cannot take all
+	 *              the threads of the backend. Null removes the limit.
+	 */
+	public RouteOptions withConcurrencyLimit(ConcurrencyLimit limit) {
+		final RouteOptions result = copy();
+		result.m_concurrencyLimit = limit;
+		return result;
+	}
+}
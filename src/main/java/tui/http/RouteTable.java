@@ -0,0 +1,218 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import tui.ui.UIConfigurationException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable set of the routes served by a {@link TUIBackend}. Each modification returns a new table which shares the untouched
+ * branches of its routers with this one. The backend swaps its table atomically, so that requests always read a consistent snapshot
+ * without locking.
+ */
+public class RouteTable {
+
+	record AsyncWebService(TUIAsyncWebService service, long timeout_ms) {
+	}
+
+	/**
+	 * The route that serves a path: at most one of the routes is set.
+	 */
+	record Match(PathRouter.Route<TUIFileService> file, PathRouter.Route<TUIPageService> page, PathRouter.Route<TUIWebService> web,
+			PathRouter.Route<AsyncWebService> asyncWeb) {
+	}
+
+	private static final RouteTable EMPTY = new RouteTable(0L, PathRouter.empty(), PathRouter.empty(), PathRouter.empty(),
+			PathRouter.empty(), PathRouter.empty());
+
+	private final long m_version;
+	private final PathRouter<TUIFileService> m_fileServices;
+	private final PathRouter<TUIPageService> m_pageServices;
+	private final PathRouter<TUIWebService> m_webServices;
+	private final PathRouter<AsyncWebService> m_asyncWebServices;
+	private final PathRouter<RouteOptions> m_options;
+
+	private RouteTable(long version, PathRouter<TUIFileService> fileServices, PathRouter<TUIPageService> pageServices,
+			PathRouter<TUIWebService> webServices, PathRouter<AsyncWebService> asyncWebServices, PathRouter<RouteOptions> options) {
+		m_version = version;
+		m_fileServices = fileServices;
+		m_pageServices = pageServices;
+		m_webServices = webServices;
+		m_asyncWebServices = asyncWebServices;
+		m_options = options;
+	}
+
+	public static RouteTable empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * @return The number of updates that led to this table.
+	 */
+	public long getVersion() {
+		return m_version;
+	}
+
+	public int size() {
+		return m_fileServices.size() + m_pageServices.size() + m_webServices.size() + m_asyncWebServices.size();
+	}
+
+	public List<String> getPaths() {
+		final List<String> result = new ArrayList<>(size());
+		m_fileServices.getRoutes().forEach((route) -> result.add(route.getTemplate()));
+		m_pageServices.getRoutes().forEach((route) -> result.add(route.getTemplate()));
+		m_webServices.getRoutes().forEach((route) -> result.add(route.getTemplate()));
+		m_asyncWebServices.getRoutes().forEach((route) -> result.add(route.getTemplate()));
+		return result;
+	}
+
+	public boolean contains(String path) {
+		return m_fileServices.get(path) != null || m_pageServices.get(path) != null
+				|| m_webServices.get(path) != null || m_asyncWebServices.get(path) != null;
+	}
+
+	public RouteTable withFileService(String path, TUIFileService service) {
+		return new RouteTable(m_version, m_fileServices.with(path, service), m_pageServices, m_webServices, m_asyncWebServices,
+				m_options);
+	}
+
+	public RouteTable withPageService(String path, TUIPageService service) {
+		return new RouteTable(m_version, m_fileServices, m_pageServices.with(path, service), m_webServices, m_asyncWebServices,
+				m_options);
+	}
+
+	public RouteTable withWebService(String path, TUIWebService service) {
+		return new RouteTable(m_version, m_fileServices, m_pageServices, m_webServices.with(path, service), m_asyncWebServices,
+				m_options);
+	}
+
+	public RouteTable withAsyncWebService(String path, TUIAsyncWebService service, long timeout_ms) {
+		if(timeout_ms <= 0) {
+			throw new UIConfigurationException("Timeout of async web service '%s' must be positive: %d", path, timeout_ms);
+		}
+		return new RouteTable(m_version, m_fileServices, m_pageServices, m_webServices,
+				m_asyncWebServices.with(path, new AsyncWebService(service, timeout_ms)), m_options);
+	}
+
+	/**
+	 * @param path The options apply to all the requested paths that match this template.
+	 */
+	public RouteTable withOptions(String path, RouteOptions options) {
+		return new RouteTable(m_version, m_fileServices, m_pageServices, m_webServices, m_asyncWebServices,
+				m_options.with(path, options));
+	}
+
+	/**
+	 * @return The options set with the given template, or the default options.
+	 */
+	public RouteOptions getOptions(String path) {
+		final PathRouter.Route<RouteOptions> route = m_options.get(path);
+		return route == null ? RouteOptions.DEFAULT : route.getService();
+	}
+
+	/**
+	 * @return The options that apply to a requested path.
+	 */
+	public RouteOptions findOptions(String requestedPath) {
+		final PathRouter.Route<RouteOptions> route = m_options.find(requestedPath);
+		return route == null ? RouteOptions.DEFAULT : route.getService();
+	}
+
+	/**
+	 * @return A table where no service nor options are registered with the given path, whatever the type of the service.
+	 */
+	public RouteTable without(String path) {
+		final RouteTable result = new RouteTable(m_version, m_fileServices.without(path), m_pageServices.without(path),
+				m_webServices.without(path), m_asyncWebServices.without(path), m_options.without(path));
+		return result.size() == size() && result.m_options.size() == m_options.size() ? this : result;
+	}
+
+	/**
+	 * Services of all types compete for the path like the routes of a single router: the most specific template wins (see
+	 * {@link PathRouter#compareSpecificity(PathRouter.Route, PathRouter.Route)}). Between equivalent templates, file services win
+	 * over pages, pages over web services and web services over asynchronous ones.
+	 */
+	Match find(String path) {
+		return select(m_fileServices.find(path), m_pageServices.find(path), m_webServices.find(path), m_asyncWebServices.find(path));
+	}
+
+	/**
+	 * @return The match among the web services only, for the calls of components.
+	 */
+	Match findWebService(String path) {
+		return select(null, null, m_webServices.find(path), m_asyncWebServices.find(path));
+	}
+
+	private static Match select(PathRouter.Route<TUIFileService> file, PathRouter.Route<TUIPageService> page,
+			PathRouter.Route<TUIWebService> web, PathRouter.Route<AsyncWebService> asyncWeb) {
+		final PathRouter.Route<?> best = mostSpecific(mostSpecific(mostSpecific(file, page), web), asyncWeb);
+		return new Match(best == file ? file : null, best == page ? page : null, best == web ? web : null,
+				best == asyncWeb ? asyncWeb : null);
+	}
+
+	private static PathRouter.Route<?> mostSpecific(PathRouter.Route<?> first, PathRouter.Route<?> second) {
+		if(first == null || second == null) {
+			return first == null ? second : first;
+		}
+		return PathRouter.compareSpecificity(second, first) < 0 ? second : first;
+	}
+
+	/**
+	 * @return The templates of the services of the previous table that have been replaced or removed in this one.
+	 */
+	List<String> getReplacedTemplates(RouteTable previous) {
+		final List<String> result = new ArrayList<>();
+		collectReplacedTemplates(previous.m_fileServices, m_fileServices, result);
+		collectReplacedTemplates(previous.m_pageServices, m_pageServices, result);
+		collectReplacedTemplates(previous.m_webServices, m_webServices, result);
+		collectReplacedTemplates(previous.m_asyncWebServices, m_asyncWebServices, result);
+		return result;
+	}
+
+	private static <S> void collectReplacedTemplates(PathRouter<S> previous, PathRouter<S> current, List<String> result) {
+		if(previous == current) {
+			return; // untouched by the update
+		}
+		for(PathRouter.Route<S> route : previous.getRoutes()) {
+			final PathRouter.Route<S> currentRoute = current.get(route.getTemplate());
+			if(currentRoute == null || currentRoute.getService() != route.getService()) {
+				result.add(route.getTemplate());
+			}
+		}
+	}
+
+	RouteTable withVersion(long version) {
+		return new RouteTable(version, m_fileServices, m_pageServices, m_webServices, m_asyncWebServices, m_options);
+	}
+
+	PathRouter<TUIFileService> getFileServices() {
+		return m_fileServices;
+	}
+
+	PathRouter<TUIPageService> getPageServices() {
+		return m_pageServices;
+	}
+
+	PathRouter<TUIWebService> getWebServices() {
+		return m_webServices;
+	}
+
+	PathRouter<AsyncWebService> getAsyncWebServices() {
+		return m_asyncWebServices;
+	}
+}
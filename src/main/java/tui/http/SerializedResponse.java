@@ -0,0 +1,40 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import tui.json.JsonObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Response content serialized once in order to be sent several times: from the cache, or to the requests that have been coalesced.
+ * The entity tag is computed once too.
+ */
+record SerializedResponse(byte[] content, String contentType, String etag) {
+
+	static SerializedResponse of(byte[] content, String contentType) {
+		return new SerializedResponse(content, contentType, EntityTags.compute(content));
+	}
+
+	static SerializedResponse ofJson(JsonObject node, String contentType) throws IOException {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream();
+		final ResponseAppender out = new ResponseAppender(result);
+		node.writeJson(out);
+		out.finish();
+		return of(result.toByteArray(), contentType);
+	}
+}
@@ -0,0 +1,265 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import tui.json.JsonMap;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Server-sent events channel: each page that has enabled server events keeps one idle connection open, through which the backend
+ * asks for components to be refreshed (see {@link TUIBackend#notifyRefresh(String, Map)}).
+ * <p>
+ * Connections are held by Servlet asynchronous contexts, not by threads. Events and heartbeats are queued by a single background
+ * thread, so that the callers of {@link #broadcast(String, Map, Predicate)} never wait for the network. Each subscriber has its own
+ * bounded queue, written without blocking as soon as its connection accepts more data: a stalled client never delays the others. A
+ * subscriber that falls {@link #MAX_PENDING_MESSAGES} messages behind is disconnected, its page reconnects later.
+ */
+class ServerEvents {
+
+	private static final Logger LOG = Logger.getLogger(ServerEvents.class.getName());
+
+	static final String CONTENT_TYPE = "text/event-stream";
+	static final String EVENT_REFRESH = "refresh";
+	static final long HEARTBEAT_PERIOD_ms = 15_000;
+	static final long RECONNECTION_DELAY_ms = 3_000;
+	static final int MAX_PENDING_MESSAGES = 64;
+
+	private static class Subscriber {
+
+		private final AsyncContext m_asyncContext;
+		private final ServletOutputStream m_out;
+		private final Map<String, String> m_sessionParameters;
+		private final Deque<byte[]> m_pending = new ArrayDeque<>(); // guarded by this
+		private boolean m_unflushed = false;
+
+		Subscriber(AsyncContext asyncContext, ServletOutputStream out, Map<String, String> sessionParameters) {
+			m_asyncContext = asyncContext;
+			m_out = out;
+			m_sessionParameters = sessionParameters;
+		}
+
+		/**
+		 * @return False when the subscriber has fallen behind, the message is then dropped.
+		 */
+		synchronized boolean offer(String message) {
+			if(m_pending.size() >= MAX_PENDING_MESSAGES) {
+				return false;
+			}
+			m_pending.add(message.getBytes(StandardCharsets.UTF_8));
+			return true;
+		}
+
+		/**
+		 * Writes the pending messages as long as the connection accepts them without blocking. Called again by the container when the
+		 * connection is ready.
+		 */
+		synchronized void write() throws IOException {
+			while(m_out.isReady()) {
+				final byte[] message = m_pending.poll();
+				if(message != null) {
+					m_out.write(message);
+					m_unflushed = true;
+				} else if(m_unflushed) {
+					m_unflushed = false;
+					m_out.flush();
+				} else {
+					return;
+				}
+			}
+		}
+	}
+
+	private final List<Subscriber> m_subscribers = new CopyOnWriteArrayList<>();
+	private final LongAdder m_sentEvents = new LongAdder();
+	private final LongAdder m_droppedSubscribers = new LongAdder();
+	private ScheduledExecutorService m_executor = null;
+
+	synchronized void start() {
+		m_executor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+			final Thread result = new Thread(runnable, "tui-server-events");
+			result.setDaemon(true);
+			return result;
+		});
+		m_executor.scheduleAtFixedRate(() -> sendToAll(": heartbeat\n\n", (parameters) -> true), HEARTBEAT_PERIOD_ms,
+				HEARTBEAT_PERIOD_ms, TimeUnit.MILLISECONDS);
+	}
+
+	synchronized void stop() {
+		if(m_executor != null) {
+			m_executor.shutdownNow();
+			m_executor = null;
+		}
+		for(Subscriber subscriber : m_subscribers) {
+			close(subscriber);
+		}
+	}
+
+	/**
+	 * Keeps the connection open. The request parameters are the session parameters of the page, used to filter the recipients of the
+	 * events.
+	 */
+	void subscribe(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		final Map<String, String> sessionParameters = new HashMap<>();
+		for(Map.Entry<String, String[]> entry : request.getParameterMap().entrySet()) {
+			sessionParameters.put(entry.getKey(), entry.getValue()[0]);
+		}
+
+		response.setStatus(200);
+		response.setContentType(CONTENT_TYPE);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		response.setHeader("Cache-Control", "no-cache");
+		final AsyncContext asyncContext = request.startAsync();
+		asyncContext.setTimeout(0);
+		final Subscriber subscriber = new Subscriber(asyncContext, response.getOutputStream(), Map.copyOf(sessionParameters));
+		asyncContext.addListener(new AsyncListener() {
+			@Override
+			public void onComplete(AsyncEvent event) {
+				m_subscribers.remove(subscriber);
+			}
+
+			@Override
+			public void onTimeout(AsyncEvent event) {
+				close(subscriber);
+			}
+
+			@Override
+			public void onError(AsyncEvent event) {
+				close(subscriber);
+			}
+
+			@Override
+			public void onStartAsync(AsyncEvent event) {
+			}
+		});
+		subscriber.offer(String.format("retry: %d\n\n", RECONNECTION_DELAY_ms));
+		// From now on, the output never blocks: the listener is called when it is ready, starting with the pending message
+		response.getOutputStream().setWriteListener(new WriteListener() {
+			@Override
+			public void onWritePossible() throws IOException {
+				subscriber.write();
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				LOG.log(Level.FINE, String.format("Server events subscriber disconnected: %s", t.getMessage()));
+				close(subscriber);
+			}
+		});
+		m_subscribers.add(subscriber);
+	}
+
+	/**
+	 * @param target            Id (TUID) or custom tag of the components to refresh.
+	 * @param parameters        Added to the parameters the components send to their source.
+	 * @param sessionParameters Selects the pages that receive the event by their session parameters.
+	 */
+	void broadcast(String target, Map<String, String> parameters, Predicate<Map<String, String>> sessionParameters) {
+		final JsonMap event = new JsonMap(EVENT_REFRESH);
+		event.setAttribute("target", target);
+		final JsonMap params = event.createMap("params");
+		parameters.forEach(params::setAttribute);
+		final StringBuilder message = new StringBuilder("event: ").append(EVENT_REFRESH).append('\n');
+		for(String line : event.toJson().split("\n")) { // a line return would end the data field
+			message.append("data: ").append(line).append('\n');
+		}
+		message.append('\n');
+
+		final ScheduledExecutorService executor = m_executor;
+		if(executor == null) {
+			return;
+		}
+		try {
+			executor.execute(() -> sendToAll(message.toString(), sessionParameters));
+		} catch(RejectedExecutionException e) {
+			// the backend is stopping
+		}
+	}
+
+	int getSubscribers() {
+		return m_subscribers.size();
+	}
+
+	/**
+	 * @return The number of events queued for the subscribers, counted once per subscriber.
+	 */
+	long getSentEvents() {
+		return m_sentEvents.sum();
+	}
+
+	/**
+	 * @return The number of subscribers disconnected because they did not read their events fast enough.
+	 */
+	long getDroppedSubscribers() {
+		return m_droppedSubscribers.sum();
+	}
+
+	private void sendToAll(String message, Predicate<Map<String, String>> sessionParameters) {
+		final boolean isEvent = !message.startsWith(":"); // heartbeats are comments
+		for(Subscriber subscriber : m_subscribers) {
+			if(!sessionParameters.test(subscriber.m_sessionParameters)) {
+				continue;
+			}
+			if(!subscriber.offer(message)) {
+				LOG.log(Level.WARNING, String.format("Server events subscriber dropped, %d messages behind", MAX_PENDING_MESSAGES));
+				m_droppedSubscribers.increment();
+				close(subscriber);
+				continue;
+			}
+			if(isEvent) {
+				m_sentEvents.increment();
+			}
+			try {
+				subscriber.write();
+			} catch(IOException | IllegalStateException e) {
+				LOG.log(Level.FINE, String.format("Server events subscriber disconnected: %s", e.getMessage()));
+				close(subscriber);
+			}
+		}
+	}
+
+	private void close(Subscriber subscriber) {
+		if(m_subscribers.remove(subscriber)) {
+			try {
+				subscriber.m_asyncContext.complete();
+			} catch(IllegalStateException e) {
+				// already completed
+			}
+		}
+	}
+}
@@ -0,0 +1,260 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import tui.ui.UIConfigurationException;
+
+import java.util.Properties;
+
+/**
+ * Immutable settings of the Jetty server behind the backend: thread pool, connectors and buffers. See
+ * {@link TUIBackend#setServerSettings(ServerSettings)}. The defaults are Jetty's.
+ */
+public class ServerSettings {
+
+	public static final ServerSettings DEFAULT = new ServerSettings();
+
+	public static final int JETTY_DEFAULT = -1; // acceptors and selectors are then computed from the number of cores
+
+	private int m_minThreads = 8;
+	private int m_maxThreads = 200;
+	private long m_threadIdleTimeout_ms = 60_000;
+	private int m_acceptors = JETTY_DEFAULT;
+	private int m_selectors = JETTY_DEFAULT;
+	private int m_acceptQueueSize = 0; // 0 for the system's default
+	private long m_idleTimeout_ms = 30_000;
+	private int m_requestHeaderSize = 8 * 1024;
+	private int m_outputBufferSize = 32 * 1024;
+
+	private ServerSettings() {
+	}
+
+	/**
+	 * Settings are never modified once built: each 'with' method modifies a copy.
+	 */
+	private ServerSettings copy() {
+		final ServerSettings result = new ServerSettings();
+		result.m_minThreads = m_minThreads;
+		result.m_maxThreads = m_maxThreads;
+		result.m_threadIdleTimeout_ms = m_threadIdleTimeout_ms;
+		result.m_acceptors = m_acceptors;
+		result.m_selectors = m_selectors;
+		result.m_acceptQueueSize = m_acceptQueueSize;
+		result.m_idleTimeout_ms = m_idleTimeout_ms;
+		result.m_requestHeaderSize = m_requestHeaderSize;
+		result.m_outputBufferSize = m_outputBufferSize;
+		return result;
+	}
+
+	/**
+	 * Reads the settings from properties named after the 'with' methods, for example 'tui.server.maxThreads' with the prefix
+	 * 'tui.server.'. Missing properties keep their default value, unknown properties with the prefix are rejected.
+	 */
+	public static ServerSettings fromProperties(Properties properties, String prefix) {
+		ServerSettings result = DEFAULT;
+		int minThreads = DEFAULT.m_minThreads;
+		int maxThreads = DEFAULT.m_maxThreads; // both bounds are checked together, whatever the order of the properties
+		for(String key : properties.stringPropertyNames()) {
+			if(!key.startsWith(prefix)) {
+				continue;
+			}
+			final String value = properties.getProperty(key).trim();
+			final long number;
+			try {
+				number = Long.parseLong(value);
+			} catch(NumberFormatException e) {
+				throw new UIConfigurationException("Server setting '%s' is not a number: %s", key, value);
+			}
+			switch(key.substring(prefix.length())) {
+			case "minThreads" -> minThreads = toInt(key, number);
+			case "maxThreads" -> maxThreads = toInt(key, number);
+			case "threadIdleTimeout_ms" -> result = result.withThreadIdleTimeout_ms(number);
+			case "acceptors" -> result = result.withAcceptors(toInt(key, number));
+			case "selectors" -> result = result.withSelectors(toInt(key, number));
+			case "acceptQueueSize" -> result = result.withAcceptQueueSize(toInt(key, number));
+			case "idleTimeout_ms" -> result = result.withIdleTimeout_ms(number);
+			case "requestHeaderSize" -> result = result.withRequestHeaderSize(toInt(key, number));
+			case "outputBufferSize" -> result = result.withOutputBufferSize(toInt(key, number));
+			default -> throw new UIConfigurationException("Unknown server setting: %s", key);
+			}
+		}
+		return result.withThreads(minThreads, maxThreads);
+	}
+
+	private static int toInt(String key, long value) {
+		if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new UIConfigurationException("Server setting '%s' is out of range: %d", key, value);
+		}
+		return (int) value;
+	}
+
+	public int getMinThreads() {
+		return m_minThreads;
+	}
+
+	public int getMaxThreads() {
+		return m_maxThreads;
+	}
+
+	/**
+	 * @param min Threads kept in the pool even when idle.
+	 * @param max Threads that run the requests, and the acceptors and selectors of the connectors.
+	 */
+	public ServerSettings withThreads(int min, int max) {
+		if(min <= 0) {
+			throw new UIConfigurationException("Min threads must be positive: %d", min);
+		}
+		if(max < min) {
+			throw new UIConfigurationException("Max threads must be at least the min threads (%d): %d", min, max);
+		}
+		final ServerSettings result = copy();
+		result.m_minThreads = min;
+		result.m_maxThreads = max;
+		return result;
+	}
+
+	public long getThreadIdleTimeout_ms() {
+		return m_threadIdleTimeout_ms;
+	}
+
+	/**
+	 * @param timeout_ms Threads beyond the min threads are stopped once idle for this time.
+	 */
+	public ServerSettings withThreadIdleTimeout_ms(long timeout_ms) {
+		if(timeout_ms <= 0) {
+			throw new UIConfigurationException("Thread idle timeout must be positive: %d", timeout_ms);
+		}
+		final ServerSettings result = copy();
+		result.m_threadIdleTimeout_ms = timeout_ms;
+		return result;
+	}
+
+	public int getAcceptors() {
+		return m_acceptors;
+	}
+
+	/**
+	 * @param acceptors Threads that accept the connections, or {@link #JETTY_DEFAULT}.
+	 */
+	public ServerSettings withAcceptors(int acceptors) {
+		if(acceptors < 0 && acceptors != JETTY_DEFAULT) {
+			throw new UIConfigurationException("Invalid number of acceptors: %d", acceptors);
+		}
+		final ServerSettings result = copy();
+		result.m_acceptors = acceptors;
+		return result;
+	}
+
+	public int getSelectors() {
+		return m_selectors;
+	}
+
+	/**
+	 * @param selectors Threads that wait for the connections to be readable or writable, or {@link #JETTY_DEFAULT}.
+	 */
+	public ServerSettings withSelectors(int selectors) {
+		if(selectors <= 0 && selectors != JETTY_DEFAULT) {
+			throw new UIConfigurationException("Invalid number of selectors: %d", selectors);
+		}
+		final ServerSettings result = copy();
+		result.m_selectors = selectors;
+		return result;
+	}
+
+	public int getAcceptQueueSize() {
+		return m_acceptQueueSize;
+	}
+
+	/**
+	 * @param size Connections waiting to be accepted (listen backlog), 0 for the system's default.
+	 */
+	public ServerSettings withAcceptQueueSize(int size) {
+		if(size < 0) {
+			throw new UIConfigurationException("Accept queue size must not be negative: %d", size);
+		}
+		final ServerSettings result = copy();
+		result.m_acceptQueueSize = size;
+		return result;
+	}
+
+	public long getIdleTimeout_ms() {
+		return m_idleTimeout_ms;
+	}
+
+	/**
+	 * @param timeout_ms Connections are closed once idle for this time.
+	 */
+	public ServerSettings withIdleTimeout_ms(long timeout_ms) {
+		if(timeout_ms <= 0) {
+			throw new UIConfigurationException("Idle timeout must be positive: %d", timeout_ms);
+		}
+		final ServerSettings result = copy();
+		result.m_idleTimeout_ms = timeout_ms;
+		return result;
+	}
+
+	public int getRequestHeaderSize() {
+		return m_requestHeaderSize;
+	}
+
+	/**
+	 * @param bytes Requests with larger headers are rejected with 431.
+	 */
+	public ServerSettings withRequestHeaderSize(int bytes) {
+		if(bytes < 1024) {
+			throw new UIConfigurationException("Request header size must be at least 1024 bytes: %d", bytes);
+		}
+		final ServerSettings result = copy();
+		result.m_requestHeaderSize = bytes;
+		return result;
+	}
+
+	public int getOutputBufferSize() {
+		return m_outputBufferSize;
+	}
+
+	/**
+	 * @param bytes Responses are sent with a Content-Length when they fit in this buffer, chunked otherwise.
+	 */
+	public ServerSettings withOutputBufferSize(int bytes) {
+		if(bytes < 1024) {
+			throw new UIConfigurationException("Output buffer size must be at least 1024 bytes: %d", bytes);
+		}
+		final ServerSettings result = copy();
+		result.m_outputBufferSize = bytes;
+		return result;
+	}
+
+	/**
+	 * Checks the settings that depend on each other, once they are all known.
+	 *
+	 * @param reservedThreads The threads that all the connectors take from the pool: their acceptors and selectors.
+	 */
+	void validate(int reservedThreads) {
+		if(reservedThreads >= m_maxThreads) {
+			throw new UIConfigurationException("Max threads (%d) must exceed the acceptors and selectors of the connectors (%d)",
+					m_maxThreads, reservedThreads);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("threads=%d..%d (idle %d ms), acceptors=%s, selectors=%s, acceptQueueSize=%d, idleTimeout=%d ms,"
+						+ " requestHeaderSize=%d, outputBufferSize=%d", m_minThreads, m_maxThreads, m_threadIdleTimeout_ms,
+				m_acceptors == JETTY_DEFAULT ? "default" : m_acceptors, m_selectors == JETTY_DEFAULT ? "default" : m_selectors,
+				m_acceptQueueSize, m_idleTimeout_ms, m_requestHeaderSize, m_outputBufferSize);
+	}
+}
@@ -0,0 +1,292 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import org.json.JSONObject;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Web service call that has no HTTP exchange of its own: received through the {@link WebSocketTransport}, or as one of the calls of a
+ * batch request. The services are given a request and a response that only support what web services use: attributes, parameters
+ * (also through {@link RequestReader}), headers and status.
+ * <p>
+ * What identifies the client comes from the HTTP request the call came with (see {@link Origin}): session, cookies, user, addresses,
+ * locales and the other headers. Other methods, like reading the body, creating a session or {@code isUserInRole}, throw
+ * {@link UnsupportedOperationException}.
+ */
+class ServiceCall {
+
+	/**
+	 * The client of the calls, read from the batch request or from the upgrade request of the WebSocket connection when it is
+	 * received: the calls can be served after that request has been recycled.
+	 */
+	record Origin(HttpSession session, Cookie[] cookies, Principal userPrincipal, String remoteUser, String authType,
+			String remoteAddr, int remotePort, String localAddr, int localPort, String serverName, int serverPort, String scheme,
+			boolean secure, String protocol, List<Locale> locales, Map<String, List<String>> headers) {
+
+		// Headers that describe the HTTP exchange itself, not the client
+		private static final Set<String> EXCHANGE_HEADERS = Set.of("content-type", "content-length", "content-encoding",
+				"transfer-encoding", "connection", "upgrade", "if-none-match", "if-modified-since", "if-match", "range", "if-range");
+
+		static Origin of(HttpServletRequest request) {
+			final Map<String, List<String>> headers = new HashMap<>();
+			for(String name : Collections.list(request.getHeaderNames())) {
+				final String key = name.toLowerCase();
+				if(!EXCHANGE_HEADERS.contains(key) && !key.startsWith("sec-websocket-")) {
+					headers.computeIfAbsent(key, (k) -> new ArrayList<>()).addAll(Collections.list(request.getHeaders(name)));
+				}
+			}
+			return new Origin(request.getSession(false), request.getCookies(), request.getUserPrincipal(), request.getRemoteUser(),
+					request.getAuthType(), request.getRemoteAddr(), request.getRemotePort(), request.getLocalAddr(),
+					request.getLocalPort(), request.getServerName(), request.getServerPort(), request.getScheme(), request.isSecure(),
+					request.getProtocol(), Collections.list(request.getLocales()), headers);
+		}
+	}
+
+	private final String m_path;
+	private final Map<String, String> m_parameters;
+	private final Map<String, String> m_requestHeaders;
+	private final Origin m_origin; // null when the call has no client, see unsupported()
+	private final Map<String, Object> m_attributes = new HashMap<>();
+	private final Map<String, String> m_responseHeaders = new HashMap<>();
+	private int m_status = 200;
+	private String m_contentType = null;
+
+	private final HttpServletRequest m_request;
+	private final HttpServletResponse m_response;
+
+	ServiceCall(String path, Map<String, String> parameters, Map<String, String> requestHeaders, Origin origin) {
+		m_path = path;
+		m_parameters = Map.copyOf(parameters);
+		m_requestHeaders = Map.copyOf(requestHeaders);
+		m_origin = origin;
+		m_request = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> invokeRequest(method, args));
+		m_response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { HttpServletResponse.class }, (proxy, method, args) -> invokeResponse(method, args));
+		new RequestReader(m_request, m_parameters); // parameters are read through the attribute of the request
+	}
+
+	/**
+	 * @param json Gives the optional parameters of the call as "params": {"key": "value"} and the optional entity tag known by the
+	 *             client as "etag".
+	 */
+	static ServiceCall of(String path, JSONObject json, Origin origin) {
+		final Map<String, String> parameters = new HashMap<>();
+		final JSONObject params = json.optJSONObject("params");
+		if(params != null) {
+			for(String key : params.keySet()) {
+				parameters.put(key, String.valueOf(params.get(key)));
+			}
+		}
+		final String etag = json.optString("etag", null);
+		return new ServiceCall(path, parameters, etag == null ? Map.of() : Map.of("if-none-match", etag), origin);
+	}
+
+	static ServiceCall of(String path, JSONObject json) {
+		return of(path, json, null);
+	}
+
+	String getPath() {
+		return m_path;
+	}
+
+	HttpServletRequest getRequest() {
+		return m_request;
+	}
+
+	HttpServletResponse getResponse() {
+		return m_response;
+	}
+
+	int getStatus() {
+		return m_status;
+	}
+
+	String getResponseHeader(String name) {
+		return m_responseHeaders.get(name.toLowerCase());
+	}
+
+	/**
+	 * Appends the fields of the reply, with the same rule as over HTTP: "status" is the status set by the service, "etag" is given when
+	 * the call succeeded, and "body" is the content returned by the service whatever the status. The body is omitted when the client
+	 * already has that content (304), and when there is none, for example when the call has been rejected.
+	 *
+	 * @param serialized Null when the call has not been served, with 404 unless another status has been set.
+	 */
+	void appendReply(StringBuilder out, SerializedResponse serialized) {
+		if(serialized == null && m_status == 200) {
+			m_status = 404;
+		}
+		if(m_status == 200 && EntityTags.isNotModified(m_request, serialized.etag())) {
+			m_status = 304;
+		}
+		out.append("\"status\":").append(m_status);
+		if(m_status == 200 || m_status == 304) {
+			out.append(",\"etag\":").append(JSONObject.quote(serialized.etag()));
+		}
+		if(m_status != 304 && serialized != null && serialized.content().length > 0) {
+			out.append(",\"body\":").append(new String(serialized.content(), StandardCharsets.UTF_8));
+		}
+	}
+
+	private Object invokeRequest(Method method, Object[] args) {
+		return switch(method.getName()) {
+			case "getAttribute" -> m_attributes.get((String) args[0]);
+			case "setAttribute" -> {
+				m_attributes.put((String) args[0], args[1]);
+				yield null;
+			}
+			case "removeAttribute" -> {
+				m_attributes.remove((String) args[0]);
+				yield null;
+			}
+			case "getAttributeNames" -> Collections.enumeration(m_attributes.keySet());
+			case "getParameter" -> m_parameters.get((String) args[0]);
+			case "getParameterNames" -> Collections.enumeration(m_parameters.keySet());
+			case "getParameterValues" -> m_parameters.containsKey((String) args[0]) ?
+					new String[] { m_parameters.get((String) args[0]) } : null;
+			case "getParameterMap" -> m_parameters.entrySet().stream()
+					.collect(Collectors.toMap(Map.Entry::getKey, (entry) -> new String[] { entry.getValue() }));
+			case "getHeader" -> getHeaders((String) args[0]).stream().findFirst().orElse(null);
+			case "getHeaders" -> Collections.enumeration(getHeaders((String) args[0]));
+			case "getHeaderNames" -> {
+				final Set<String> result = new LinkedHashSet<>(m_requestHeaders.keySet());
+				if(m_origin != null) {
+					result.addAll(m_origin.headers().keySet());
+				}
+				yield Collections.enumeration(result);
+			}
+			case "getRequestURI", "getPathInfo", "getServletPath" -> m_path;
+			case "getContextPath" -> ""; // the path of the call is relative to the context of the backend
+			case "getMethod" -> "POST";
+			case "getContentType", "getQueryString" -> null;
+			case "getCharacterEncoding" -> "UTF-8";
+			case "isAsyncStarted", "isAsyncSupported" -> false;
+			case "toString" -> String.format("Call of %s", m_path);
+			case "hashCode" -> System.identityHashCode(this);
+			case "equals" -> args[0] == m_request;
+			default -> invokeOrigin(method, args);
+		};
+	}
+
+	private Object invokeOrigin(Method method, Object[] args) {
+		if(m_origin == null) {
+			throw unsupported(method);
+		}
+		return switch(method.getName()) {
+			case "getSession" -> {
+				final boolean create = args == null || (Boolean) args[0];
+				if(m_origin.session() == null && create) {
+					throw unsupported(method); // the session cookie could not be sent
+				}
+				yield m_origin.session();
+			}
+			case "getRequestedSessionId" -> m_origin.session() == null ? null : m_origin.session().getId();
+			case "isRequestedSessionIdValid" -> m_origin.session() != null;
+			case "getCookies" -> m_origin.cookies() == null ? null : m_origin.cookies().clone();
+			case "getUserPrincipal" -> m_origin.userPrincipal();
+			case "getRemoteUser" -> m_origin.remoteUser();
+			case "getAuthType" -> m_origin.authType();
+			case "getRemoteAddr", "getRemoteHost" -> m_origin.remoteAddr();
+			case "getRemotePort" -> m_origin.remotePort();
+			case "getLocalAddr", "getLocalName" -> m_origin.localAddr();
+			case "getLocalPort" -> m_origin.localPort();
+			case "getServerName" -> m_origin.serverName();
+			case "getServerPort" -> m_origin.serverPort();
+			case "getScheme" -> m_origin.scheme();
+			case "isSecure" -> m_origin.secure();
+			case "getProtocol" -> m_origin.protocol();
+			case "getLocale" -> m_origin.locales().isEmpty() ? Locale.getDefault() : m_origin.locales().get(0);
+			case "getLocales" -> Collections.enumeration(m_origin.locales());
+			default -> throw unsupported(method);
+		};
+	}
+
+	/**
+	 * @return The values of the header given with the call, otherwise of the HTTP request it came with.
+	 */
+	private List<String> getHeaders(String name) {
+		final String key = name.toLowerCase();
+		final String value = m_requestHeaders.get(key);
+		if(value != null) {
+			return List.of(value);
+		}
+		return m_origin == null ? List.of() : m_origin.headers().getOrDefault(key, List.of());
+	}
+
+	private Object invokeResponse(Method method, Object[] args) {
+		switch(method.getName()) {
+		case "setStatus" -> m_status = (Integer) args[0];
+		case "getStatus" -> {
+			return m_status;
+		}
+		case "setHeader", "addHeader", "setIntHeader", "addIntHeader", "setDateHeader", "addDateHeader" ->
+				m_responseHeaders.put(((String) args[0]).toLowerCase(), String.valueOf(args[1]));
+		case "getHeader" -> {
+			return m_responseHeaders.get(((String) args[0]).toLowerCase());
+		}
+		case "containsHeader" -> {
+			return m_responseHeaders.containsKey(((String) args[0]).toLowerCase());
+		}
+		case "setContentType" -> m_contentType = (String) args[0];
+		case "getContentType" -> {
+			return m_contentType;
+		}
+		case "setCharacterEncoding", "setContentLength", "setContentLengthLong", "flushBuffer" -> {
+		}
+		case "getCharacterEncoding" -> {
+			return "UTF-8";
+		}
+		case "isCommitted" -> {
+			return false;
+		}
+		case "toString" -> {
+			return String.format("Response of %s", m_path);
+		}
+		case "hashCode" -> {
+			return System.identityHashCode(m_response);
+		}
+		case "equals" -> {
+			return args[0] == m_response;
+		}
+		default -> throw unsupported(method);
+		}
+		return null;
+	}
+
+	private UnsupportedOperationException unsupported(Method method) {
+		return new UnsupportedOperationException(
+				String.format("%s is not available for web service calls without their own HTTP request (%s)", method.getName(), m_path));
+	}
+}
@@ -0,0 +1,156 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import org.eclipse.jetty.server.Request;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Static resource of the backend (script, stylesheet, favicon) loaded once in a direct buffer, together with its gzip variant.
+ * <p>
+ * The asset is served under its regular path and under a path that contains the hash of its content, like
+ * <code>/js/tui.0123456789abcdef.js</code>. The content under a hashed path never changes, so that browsers are told to cache it
+ * forever. The content under the regular path must be revalidated with its ETag.
+ */
+class StaticAsset {
+
+	static final String CACHE_CONTROL_IMMUTABLE = "public, max-age=31536000, immutable";
+	static final String CACHE_CONTROL_REVALIDATE = "no-cache";
+
+	private final String m_path;
+	private final String m_hashedPath;
+	private final String m_contentType;
+	private final String m_etag;
+	private final ByteBuffer m_content;
+	private final ByteBuffer m_gzippedContent; // null when compression does not reduce the size
+
+	StaticAsset(String path, String contentType, byte[] content) {
+		m_etag = EntityTags.compute(content);
+		m_path = path;
+		m_hashedPath = toHashedPath(path, EntityTags.opaque(m_etag));
+		m_contentType = contentType;
+		m_content = toDirectBuffer(content);
+		final byte[] gzippedContent = gzip(content);
+		m_gzippedContent = gzippedContent.length < content.length ? toDirectBuffer(gzippedContent) : null;
+	}
+
+	static StaticAsset fromResource(String path, String resourcePath, String contentType) throws IOException {
+		try(InputStream input = ClassLoader.getSystemClassLoader().getResourceAsStream(resourcePath)) {
+			if(input == null) {
+				throw new FileNotFoundException("Resource not found: " + resourcePath);
+			}
+			return new StaticAsset(path, contentType, input.readAllBytes());
+		}
+	}
+
+	String getPath() {
+		return m_path;
+	}
+
+	String getHashedPath() {
+		return m_hashedPath;
+	}
+
+	void respond(String uri, Request request, HttpServletResponse response) throws IOException {
+		response.setContentType(m_contentType);
+		response.setHeader("Cache-Control", m_hashedPath.equals(uri) ? CACHE_CONTROL_IMMUTABLE : CACHE_CONTROL_REVALIDATE);
+		response.setHeader("ETag", m_etag);
+		if(m_gzippedContent != null) {
+			response.setHeader("Vary", "Accept-Encoding");
+		}
+		request.setHandled(true);
+
+		if(EntityTags.isNotModified(request, m_etag)) {
+			response.setStatus(304);
+			return;
+		}
+
+		final ByteBuffer content;
+		if(m_gzippedContent != null && acceptsGzip(request)) {
+			response.setHeader("Content-Encoding", "gzip");
+			content = m_gzippedContent.duplicate();
+		} else {
+			content = m_content.duplicate();
+		}
+		response.setContentLength(content.remaining());
+		response.setStatus(200);
+		request.getResponse().getHttpOutput().sendContent(content);
+	}
+
+	/**
+	 * @return True when the header 'Accept-Encoding' accepts 'gzip' with a non-zero quality value.
+	 */
+	static boolean acceptsGzip(HttpServletRequest request) {
+		final String acceptEncoding = request.getHeader("Accept-Encoding");
+		if(acceptEncoding == null) {
+			return false;
+		}
+		for(String candidate : acceptEncoding.split(",")) {
+			final String[] parts = candidate.split(";");
+			final String coding = parts[0].trim();
+			if(coding.equalsIgnoreCase("gzip") || coding.equals("*")) {
+				double quality = 1.0;
+				for(int i = 1; i < parts.length; i++) {
+					final String parameter = parts[i].trim();
+					if(parameter.startsWith("q=")) {
+						try {
+							quality = Double.parseDouble(parameter.substring(2));
+						} catch(NumberFormatException e) {
+							quality = 0.0;
+						}
+					}
+				}
+				return quality > 0.0;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The path with the hash inserted before the extension: <code>/js/tui.js</code> gives <code>/js/tui.{hash}.js</code>.
+	 */
+	static String toHashedPath(String path, String hash) {
+		final int indexOfExtension = path.lastIndexOf('.');
+		if(indexOfExtension <= path.lastIndexOf('/')) {
+			return path + "." + hash;
+		}
+		return path.substring(0, indexOfExtension) + "." + hash + path.substring(indexOfExtension);
+	}
+
+	private static ByteBuffer toDirectBuffer(byte[] content) {
+		final ByteBuffer result = ByteBuffer.allocateDirect(content.length);
+		result.put(content).flip();
+		return result.asReadOnlyBuffer();
+	}
+
+	private static byte[] gzip(byte[] content) {
+		final ByteArrayOutputStream result = new ByteArrayOutputStream(content.length);
+		try(GZIPOutputStream output = new GZIPOutputStream(result)) {
+			output.write(content);
+		} catch(IOException e) {
+			throw new IllegalStateException(e); // no I/O in memory
+		}
+		return result.toByteArray();
+	}
+}
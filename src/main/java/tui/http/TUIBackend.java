@@ -15,29 +15,70 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package tui.http;
 
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.ForwardedRequestCustomizer;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.ContextHandlerCollection;
+import org.eclipse.jetty.unixsocket.UnixSocketConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.jetbrains.annotations.NotNull;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import tui.html.HTMLConstants;
+import tui.html.HTMLNode;
 import tui.json.JsonObject;
 import tui.ui.UIConfigurationException;
 import tui.ui.components.Page;
+import tui.ui.components.ProgressBar;
 import tui.ui.style.Style;
 
-import javax.servlet.ServletOutputStream;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.zip.Deflater;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -47,31 +88,160 @@ public class TUIBackend implements AutoCloseable {
 
 	public static final String PATH_TO_CSS = "/css/tui.css";
 	public static final String PATH_TO_SCRIPT = "/js/tui.js";
+	public static final String PATH_TO_SERVER_EVENTS = "/tui/events"; // see Page.enableServerEvents()
+	public static final String PATH_TO_WEBSOCKET = "/tui/ws"; // see Page.enableWebSocket()
+	public static final String PATH_TO_BATCH = "/tui/batch"; // see Page.enableBatchRefresh()
+	public static final String PATH_TO_CANCEL = "/tui/cancel"; // see RequestContext
+	public static final String PATH_TO_JOBS = "/tui/jobs"; // see getJobService()
+	public static final String PATH_TO_METRICS = "/tui/metrics"; // see enableMetricsEndpoint()
+	static final int MAX_PAGE_ID_LENGTH = 64;
+	public static final int BATCH_MAX_CALLS = 64;
+	static final int BATCH_THREADS = 8;
+	static final int WEBSOCKET_THREADS = 8;
+	static final int WEBSOCKET_MAX_QUEUED_CALLS = 256; // beyond, the calls are answered with 503
+	static final long BATCH_TIMEOUT_ms = 30_000;
+	static final long DRAIN_POLL_PERIOD_ms = 10;
+	public static final String PATH_TO_FAVICON = "/favicon.ico";
+	static final String REQUEST_ATTRIBUTE_BACKEND = "tui.backend"; // backend serving the request, see mount()
+
+	public static final long DEFAULT_ASYNC_TIMEOUT_ms = 30_000;
+	public static final int DEFAULT_COMPRESSION_MIN_SIZE = 1024;
+	public static final int OVERLOAD_RETRY_AFTER_s = 1;
 
 	private Server m_server;
 	private Style m_style = new Style();
 	private int m_httpPort;
+	private boolean m_virtualThreadsEnabled = false;
+	private ExecutorService m_requestExecutor = null;
+	private ExecutorService m_batchExecutor = null; // calls of the batches, when requests are served by pooled threads
+	private ExecutorService m_webSocketExecutor = null; // calls of the WebSocket connections, when requests are served by pooled threads
+	private final AtomicInteger m_inFlightRequests = new AtomicInteger();
+	private final AtomicInteger m_inFlightCalls = new AtomicInteger(); // without HTTP request of their own: WebSocket, batches
+	private ServerSettings m_serverSettings = ServerSettings.DEFAULT;
+	private long m_drainTimeout_ms = 0; // stopped immediately when 0
+	private volatile boolean m_draining = false;
+	private int m_drainedRequests = 0;
+	private int m_abandonedRequests = 0;
+	private boolean m_httpPortEnabled = true;
+	private String m_unixSocket = null;
+	private Http2Settings m_http2Settings = null; // HTTP/1.1 only when null
+	private boolean m_compressionEnabled = true;
+	private int m_compressionMinSize = DEFAULT_COMPRESSION_MIN_SIZE;
+	private int m_compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	private CompressionHandler m_compressionHandler = null;
+	private WebSocketTransport m_webSocketTransport = null;
+	private Set<String> m_webSocketAllowedOrigins = Set.of();
+	private volatile TUIJobService m_jobService = null; // created on first use
+	private AccessLogSettings m_accessLogSettings = null;
+	private volatile AccessLog m_accessLog = null;
+	private final Map<String, TUIBackend> m_mountedBackends = new LinkedHashMap<>(); // by context path
+	private TUIBackend m_host = null; // set when mounted on another backend
+	private String m_contextPath = "";
 
-	private final Map<String, TUIWebService> m_webServices = new HashMap<>();
-	private final Map<String, TUIPageService> m_pageServices = new HashMap<>();
-	private final Map<String, TUIFileService> m_fileServices = new HashMap<>();
+	private final AtomicReference<RouteTable> m_routes = new AtomicReference<>(RouteTable.empty());
+	private final ResponseCache m_responseCache = new ResponseCache();
+	private final RequestCoalescer m_coalescer = new RequestCoalescer();
+	private volatile Bulkhead m_globalBulkhead = null;
+	private final Map<String, Bulkhead> m_routeBulkheads = new ConcurrentHashMap<>(); // by route template
+	private final LongAdder m_rejectedRequests = new LongAdder();
+	private final ServerEvents m_serverEvents = new ServerEvents();
+	private final RequestContexts m_requestContexts = new RequestContexts();
+	private final RefreshAheadScheduler m_refreshAheadScheduler = new RefreshAheadScheduler(this::isRegistered);
+	private StaticAsset m_scriptAsset = null;
+	private StaticAsset m_faviconAsset = null;
+	private volatile StaticAsset m_styleAsset = null;
+	private volatile Map<String, StaticAsset> m_assets = Map.of(); // by regular and hashed path
 
-	private int m_successfulResponses = 0;
-	private int m_erroneousResponses = 0;
+	private final MetricsRegistry m_metrics = new MetricsRegistry();
 
 	public TUIBackend() {
+		m_metrics.registerGauge("tui_requests_queued", "Requests waiting for a slot of the backend's concurrency limit.",
+				this::getQueuedRequests);
+		m_metrics.registerCounter("tui_requests_rejected_total", "Requests rejected by the concurrency limits.", this::getRejectedRequests);
+		m_metrics.registerCounter("tui_requests_cancelled_total", "Requests cancelled while being served.", this::getCancelledRequests);
+		m_metrics.registerCounter("tui_cache_hits_total", "Responses served from the cache.", this::getCacheHits);
+		m_metrics.registerCounter("tui_cache_misses_total", "Cacheable responses that were computed.", this::getCacheMisses);
+		m_metrics.registerCounter("tui_coalesced_calls_total", "Calls that shared the response of a concurrent identical call.",
+				this::getCoalescedCalls);
+		m_metrics.registerCounter("tui_precomputations_total", "Background computations of precomputed web services.",
+				this::getPrecomputations);
+		m_metrics.registerGauge("tui_websocket_sessions", "Pages connected through WebSocket.", this::getWebSocketSessions);
+		m_metrics.registerGauge("tui_server_events_subscribers", "Pages subscribed to server events.", this::getServerEventsSubscribers);
+		m_metrics.registerCounter("tui_server_events_dropped_total", "Pages disconnected because they fell behind the server events.",
+				this::getServerEventsDroppedSubscribers);
+		m_metrics.registerCounter("tui_compressed_responses_total", "Responses compressed with gzip.", this::getCompressedResponses);
+		m_metrics.registerCounter("tui_compression_input_bytes_total", "Size of the compressed responses before compression.",
+				this::getCompressionInputBytes);
+		m_metrics.registerCounter("tui_compression_output_bytes_total", "Size of the compressed responses as sent.",
+				this::getCompressionOutputBytes);
+		m_metrics.registerGauge("tui_drain_completed_requests", "Requests that completed during the last drain.",
+				this::getDrainedRequests);
+		m_metrics.registerGauge("tui_drain_abandoned_requests", "Requests still in flight when the last drain timed out.",
+				this::getAbandonedRequests);
+		m_metrics.registerCounter("tui_access_log_dropped_total", "Access log entries dropped because the buffer was full.",
+				this::getAccessLogDropped);
 	}
 
 	public TUIBackend(int port) {
+		this();
 		m_httpPort = port;
 	}
 
 	public int getPort() {
-		return m_httpPort;
+		return m_host == null ? m_httpPort : m_host.getPort();
 	}
 
 	public String sourceToURI(String source) {
-		return String.format("http://localhost:%d%s", getPort(), source);
+		return String.format("http://localhost:%d%s%s", getPort(), m_contextPath, source);
+	}
+
+	/**
+	 * Serves another backend under a context path of this backend's server: both share the connectors and the thread pool, while each
+	 * keeps its own style, pages, services, assets, metrics and access log. The paths of the mounted backend are relative to its
+	 * context, for example its script is served at '/app/js/tui.js' when mounted at '/app'. Requests under the context path are never
+	 * routed to this backend.
+	 * <p>
+	 * The mounted backend is started and stopped with this one, only its server settings are ignored.
+	 *
+	 * @param contextPath Like '/app', without trailing slash.
+	 */
+	public void mount(String contextPath, TUIBackend backend) {
+		if(contextPath == null || !contextPath.startsWith("/") || contextPath.endsWith("/")) {
+			throw new UIConfigurationException("Context path must start with '/' and must not end with '/': %s", contextPath);
+		}
+		if(backend == this || backend.m_host != null || !backend.m_mountedBackends.isEmpty() || m_host != null) {
+			throw new UIConfigurationException("Backends can only be mounted once, on a backend that is not mounted itself: %s",
+					contextPath);
+		}
+		if(m_server != null && m_server.isStarted()) {
+			throw new UIConfigurationException("Backends must be mounted before start: %s", contextPath);
+		}
+		if(m_mountedBackends.containsKey(contextPath)) {
+			throw new UIConfigurationException("A backend is already mounted at: %s", contextPath);
+		}
+		m_mountedBackends.put(contextPath, backend);
+		backend.m_host = this;
+		backend.m_contextPath = contextPath;
+	}
+
+	/**
+	 * @return The path under which the backend is mounted, empty when it is served at the root of its server.
+	 */
+	public String getContextPath() {
+		return m_contextPath;
+	}
+
+	public Map<String, TUIBackend> getMountedBackends() {
+		return Map.copyOf(m_mountedBackends);
+	}
+
+	/**
+	 * @return The path of the request within the context of the backend that serves it.
+	 */
+	static String getPath(HttpServletRequest request) {
+		final String contextPath = request.getContextPath();
+		final String uri = request.getRequestURI();
+		return contextPath == null || contextPath.isEmpty() || !uri.startsWith(contextPath) ? uri : uri.substring(contextPath.length());
 	}
 
 	public void start(int port) throws Exception {
@@ -80,195 +250,1674 @@ public class TUIBackend implements AutoCloseable {
 	}
 
 	public void start() throws Exception {
-		m_server = new Server(m_httpPort);
-		m_server.setHandler(new AbstractHandler() {
+		if(m_host != null) {
+			throw new UIConfigurationException("The backend mounted at %s is started by its host", m_contextPath);
+		}
+		loadAssets();
+		if(!m_httpPortEnabled && m_unixSocket == null) {
+			throw new UIConfigurationException("The HTTP port is disabled and no Unix socket is set");
+		}
+		final ServerSettings settings = m_serverSettings;
+		final QueuedThreadPool threadPool = new QueuedThreadPool(settings.getMaxThreads(), settings.getMinThreads(),
+				(int) Math.min(settings.getThreadIdleTimeout_ms(), Integer.MAX_VALUE));
+		threadPool.setName("tui-http");
+		m_server = new Server(threadPool);
+		if(m_httpPortEnabled) {
+			m_server.addConnector(newHttpConnector());
+		}
+		if(m_unixSocket != null) {
+			m_server.addConnector(newUnixSocketConnector());
+		}
+		settings.validate(getReservedThreads(m_server.getConnectors())); // Jetty would only fail on start
+		final Handler handler = newHandler();
+		if(m_mountedBackends.isEmpty()) {
+			m_server.setHandler(handler);
+		} else {
+			final ContextHandlerCollection contexts = new ContextHandlerCollection();
+			for(Map.Entry<String, TUIBackend> mount : m_mountedBackends.entrySet()) {
+				final ContextHandler context = new ContextHandler(mount.getKey());
+				context.setHandler(mount.getValue().prepareMounted(m_server));
+				contexts.addHandler(context);
+			}
+			final ContextHandler root = new ContextHandler("/");
+			root.setHandler(handler);
+			contexts.addHandler(root);
+			m_server.setHandler(contexts);
+		}
+		// Called once the response is complete, with the bytes actually sent
+		m_server.setRequestLog((request, response) -> {
+			final TUIBackend backend = request.getAttribute(REQUEST_ATTRIBUTE_BACKEND) instanceof TUIBackend owner ? owner : this;
+			backend.complete(request, response.getStatus(), response.getHttpChannel().getBytesWritten());
+		});
+		LOG.info(String.format("Starting WebServer @%s", getListeningAddresses()));
+		LOG.info(String.format("Server settings: %s", settings));
+		startExecutorAndLog();
+		m_server.start();
+		for(TUIBackend backend : getBackends()) {
+			backend.startServices();
+		}
+		LOG.log(Level.INFO, String.format("Web server listening on %s %s (%s, %d carrier threads)", getListeningAddresses(),
+				m_server.getConnectors()[0].getProtocols(), m_requestExecutor == null ? "pooled threads" : "one virtual thread per request", getCarrierThreads()));
+	}
+
+	/**
+	 * @return The handlers serving the requests of this backend: WebSocket upgrades, compression, then routing.
+	 */
+	private Handler newHandler() {
+		final Handler handler = new AbstractHandler() {
 			@Override
 			public void handle(String s, Request request, HttpServletRequest httpServletRequest, HttpServletResponse response)
 					throws IOException {
-				final String uri = request.getRequestURI();
-				LOG.log(Level.INFO, String.format("URI: %s", uri));
-
-				if(m_fileServices.containsKey(uri)) {
+				request.setAttribute(REQUEST_ATTRIBUTE_BACKEND, TUIBackend.this);
+				if(m_draining) {
+					LOG.log(Level.FINE, String.format("Request rejected, the backend is draining: %s", request.getRequestURI()));
+					response.setStatus(503);
+					response.setIntHeader("Retry-After", OVERLOAD_RETRY_AFTER_s);
+					response.setHeader("Connection", "close");
+					request.setHandled(true);
+					m_metrics.countError();
+					return;
+				}
+				if(PATH_TO_CANCEL.equals(getPath(request))) {
+					// Beacon sent by tui.js when the page is left: its pending requests are no longer needed
+					final byte[] pageId = request.getInputStream().readNBytes(MAX_PAGE_ID_LENGTH);
+					m_requestContexts.cancelPage(new String(pageId, StandardCharsets.UTF_8).trim());
+					response.setStatus(204);
+					request.setHandled(true);
+					return;
+				}
+				if(PATH_TO_SERVER_EVENTS.equals(getPath(request))) {
+					// Idle connections are neither counted as in flight nor limited
+					m_serverEvents.subscribe(request, response);
+					request.setHandled(true);
+					return;
+				}
+				if(m_requestExecutor == null) {
+					m_inFlightRequests.incrementAndGet();
+					boolean completed = true;
 					try {
-						final TUIFileService fileService = m_fileServices.get(uri);
-						fileService.handle(uri, request, response);
-						response.setStatus(200);
-						request.setHandled(true);
-						m_successfulResponses++;
-					} catch(Throwable t) {
-						LOG.log(Level.SEVERE, t.getMessage(), t);
-						response.setStatus(500);
-						request.setHandled(true);
-						m_erroneousResponses++;
+						dispatch(request, httpServletRequest, response);
+						completed = !request.isAsyncStarted(); // asynchronous responses release the count on completion
+					} finally {
+						if(completed) {
+							m_inFlightRequests.decrementAndGet();
+						}
 					}
-				} else if(m_pageServices.containsKey(uri)) {
-					final TUIPageService pageService = m_pageServices.get(uri);
+				} else {
+					// The Jetty thread is released as soon as the request is handed over to its own (virtual) thread
+					final AsyncContext asyncContext = request.startAsync();
+					asyncContext.setTimeout(0);
+					request.setHandled(true);
+					m_inFlightRequests.incrementAndGet();
 					try {
-						final String format = httpServletRequest.getParameter("format");
-						final Page page = pageService.handle(uri, request);
-						if(page == null) {
-							throw new FileNotFoundException("No page found at: " + uri);
+						m_requestExecutor.execute(() -> {
+							try {
+								dispatch(request, httpServletRequest, response);
+							} catch(FileNotFoundException e) {
+								LOG.log(Level.WARNING, e.getMessage());
+								response.setStatus(404);
+								m_metrics.countError();
+							} catch(Throwable t) {
+								LOG.log(Level.SEVERE, t.getMessage(), t);
+								response.setStatus(500);
+								m_metrics.countError();
+							} finally {
+								m_inFlightRequests.decrementAndGet();
+								asyncContext.complete();
+							}
+						});
+					} catch(RejectedExecutionException e) {
+						LOG.log(Level.WARNING, "Request rejected, the backend is stopping: " + request.getRequestURI());
+						m_inFlightRequests.decrementAndGet();
+						response.setStatus(503);
+						m_metrics.countError();
+						asyncContext.complete();
+					}
+				}
+			}
+
+			private void dispatch(Request request, HttpServletRequest httpServletRequest, HttpServletResponse response)
+					throws IOException {
+				final String uri = getPath(request);
+				if(LOG.isLoggable(Level.FINE)) { // requests are traced by the access log, see setAccessLog()
+					LOG.fine(String.format("URI: %s", uri));
+				}
+
+				final RouteTable routes = m_routes.get();
+				final RouteTable.Match match = routes.find(uri);
+				final PathRouter.Route<TUIFileService> fileRoute = match.file();
+				final PathRouter.Route<TUIPageService> pageRoute = match.page();
+				final PathRouter.Route<TUIWebService> webRoute = match.web();
+				final PathRouter.Route<RouteTable.AsyncWebService> asyncWebRoute = match.asyncWeb();
+
+				startMetrics(request, uri, fileRoute, pageRoute, webRoute, asyncWebRoute);
+
+				final Bulkhead globalBulkhead = m_globalBulkhead;
+				final Bulkhead routeBulkhead = getRouteBulkhead(routes, uri, fileRoute, pageRoute, webRoute, asyncWebRoute);
+				if(!acquire(globalBulkhead, request, response)) {
+					return;
+				}
+				if(!acquire(routeBulkhead, request, response)) {
+					if(globalBulkhead != null) {
+						globalBulkhead.release();
+					}
+					return;
+				}
+				final Bulkhead.Admission admission = new Bulkhead.Admission(globalBulkhead, routeBulkhead);
+				request.setAttribute(Bulkhead.Admission.REQUEST_ATTRIBUTE, admission);
+				final RequestContext context = m_requestContexts.open(request);
+
+				try {
+					if(fileRoute != null) {
+						exposeRoute(request, fileRoute, uri);
+						try {
+							final TUIFileService fileService = fileRoute.getService();
+							fileService.handle(uri, request, response); // status is 200 unless the service sets it
+							request.setHandled(true);
+							m_metrics.countSuccess();
+						} catch(Throwable t) {
+							respondWithFailure(request, response, t);
 						}
-						if("json".equals(format)) {
-							final String json = page.toJsonMap().toJson();
-							response.setContentType(HTMLConstants.JSON_CONTENT_TYPE);
-							response.getWriter().write(json);
-						} else {
-							final String html = page.toHTMLNode(new Page.Resource(true, PATH_TO_CSS),
-									new Page.Resource(true, PATH_TO_SCRIPT)).toHTML();
-							response.setContentType(HTMLConstants.HTML_CONTENT_TYPE);
-							response.getWriter().write(html);
+					} else if(pageRoute != null) {
+						exposeRoute(request, pageRoute, uri);
+						final TUIPageService pageService = pageRoute.getService();
+						try {
+							final String format = httpServletRequest.getParameter("format");
+							final Page page = pageService.handle(uri, request);
+							if(page == null) {
+								throw new FileNotFoundException("No page found at: " + uri);
+							}
+							if("json".equals(format)) {
+								respondWithJson(request, response, page.toJsonMap());
+							} else {
+								final HTMLNode html = page.toHTMLNode(new Page.Resource(true, m_contextPath + m_styleAsset.getHashedPath()),
+										new Page.Resource(true, m_contextPath + m_scriptAsset.getHashedPath()), m_contextPath);
+								respondWithContent(request, response, HTMLConstants.HTML_CONTENT_TYPE, html::writeHTML);
+							}
+						} catch(Throwable t) {
+							respondWithFailure(request, response, t);
+						}
+					} else if(webRoute != null) {
+						exposeRoute(request, webRoute, uri);
+						final TUIWebService webService = webRoute.getService();
+						try {
+							final RouteOptions options = routes.findOptions(uri);
+							if(webService instanceof RefreshAheadService refreshAheadService) {
+								respondWithSerialized(request, response, refreshAheadService.getLatestSerialized(), options);
+							} else if((options.isCached() || options.isCoalesced()) && !RequestReader.isMultipart(request)) {
+								final RequestKey key = RequestKey.of(uri, request);
+								final long generation = m_responseCache.getGeneration(webRoute.getTemplate()); // before computing
+								final SerializedResponse cached = options.isCached() ?
+										m_responseCache.get(webRoute.getTemplate(), options, key) : null;
+								if(cached != null) {
+									respondWithSerialized(request, response, cached, options); // the expiration of the entry is kept
+									return;
+								}
+								SerializedResponse serialized = null;
+								if(options.isCoalesced()) {
+									serialized = m_coalescer.execute(key, generation, () -> serialize(uri, request, response, webService));
+								}
+								if(serialized == null && !request.isHandled()) { // not coalesced, or the shared result could not be shared
+									serialized = serialize(uri, request, response, webService);
+								}
+								if(serialized == null) {
+									return; // the service has answered an error
+								}
+								if(options.isCached()) {
+									m_responseCache.put(webRoute.getTemplate(), options, key, serialized, generation);
+								}
+								respondWithSerialized(request, response, serialized, options);
+							} else {
+								final JsonObject node = webService.handle(uri, request, response);
+								respondWithJson(request, response, node);
+							}
+						} catch(Throwable t) {
+							respondWithFailure(request, response, t);
+						}
+					} else if(asyncWebRoute != null) {
+						exposeRoute(request, asyncWebRoute, uri);
+						final RouteTable.AsyncWebService asyncWebService = asyncWebRoute.getService();
+						try {
+							final CompletableFuture<JsonObject> future = asyncWebService.service().handle(uri, request, response);
+							respondWhenComplete(request, response, future, asyncWebService.timeout_ms());
+						} catch(Throwable t) {
+							respondWithFailure(request, response, t);
 						}
+					} else if(PATH_TO_BATCH.equals(uri)) {
+						respondToBatch(request, response);
+					} else if(m_assets.containsKey(uri)) {
+						m_assets.get(uri).respond(uri, request, response);
+						m_metrics.countSuccess();
+					} else {
+						throw new FileNotFoundException("No page found at: " + uri);
+					}
+				} finally {
+					if(m_requestExecutor != null || !request.isAsyncStarted()) {
+						admission.release();
+						m_requestContexts.close(context);
+					} else { // released when the asynchronous response is complete, at the latest
+						request.getAsyncContext().addListener(new AsyncListener() {
+							@Override
+							public void onComplete(AsyncEvent event) {
+								admission.release();
+								m_requestContexts.close(context);
+							}
 
-						response.setStatus(200);
-						request.setHandled(true);
-						m_successfulResponses++;
-					} catch(Throwable t) {
-						LOG.log(Level.SEVERE, t.getMessage(), t);
-						response.setStatus(500);
+							@Override
+							public void onTimeout(AsyncEvent event) {
+							}
+
+							@Override
+							public void onError(AsyncEvent event) {
+							}
+
+							@Override
+							public void onStartAsync(AsyncEvent event) {
+							}
+						});
+					}
+				}
+			}
+
+			/**
+			 * Requests are timed under the template of their route, which keeps the number of series bounded.
+			 */
+			private void startMetrics(Request request, String uri, PathRouter.Route<TUIFileService> fileRoute,
+					PathRouter.Route<TUIPageService> pageRoute, PathRouter.Route<TUIWebService> webRoute,
+					PathRouter.Route<RouteTable.AsyncWebService> asyncWebRoute) {
+				if(fileRoute != null) {
+					m_metrics.start(request, MetricsRegistry.ServiceType.FILE, fileRoute.getTemplate());
+				} else if(pageRoute != null) {
+					m_metrics.start(request, MetricsRegistry.ServiceType.PAGE, pageRoute.getTemplate());
+				} else if(webRoute != null) {
+					m_metrics.start(request, MetricsRegistry.ServiceType.WEB, webRoute.getTemplate());
+				} else if(asyncWebRoute != null) {
+					m_metrics.start(request, MetricsRegistry.ServiceType.WEB, asyncWebRoute.getTemplate());
+				} else if(PATH_TO_BATCH.equals(uri)) {
+					m_metrics.start(request, MetricsRegistry.ServiceType.INTERNAL, uri);
+				} else if(m_assets.containsKey(uri)) {
+					m_metrics.start(request, MetricsRegistry.ServiceType.STATIC, uri);
+				}
+			}
+
+			/**
+			 * @return True when the request is admitted, otherwise it has been answered with 503.
+			 */
+			private boolean acquire(Bulkhead bulkhead, Request request, HttpServletResponse response) {
+				boolean result;
+				try {
+					result = bulkhead == null || bulkhead.acquire();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					result = false;
+				}
+				if(!result) {
+					LOG.log(Level.WARNING, String.format("Request rejected, too many concurrent requests: %s", request.getRequestURI()));
+					response.setStatus(503);
+					response.setIntHeader("Retry-After", OVERLOAD_RETRY_AFTER_s);
+					request.setHandled(true);
+					m_rejectedRequests.increment();
+					m_metrics.countError();
+				}
+				return result;
+			}
+
+			/**
+			 * @return The serialized response of the service, or null when the service has set an error status, in which case the
+			 * response has been sent.
+			 */
+			private SerializedResponse serialize(String uri, Request request, HttpServletResponse response, TUIWebService service)
+					throws IOException {
+				final JsonObject node = service.handle(uri, request, response);
+				if(response.getStatus() != 200) { // errors are neither cached nor shared
+					respondWithJson(request, response, node);
+					return null;
+				}
+				return SerializedResponse.ofJson(node, HTMLConstants.JSON_CONTENT_TYPE);
+			}
+
+			private void respondWithSerialized(Request request, HttpServletResponse response, SerializedResponse serialized,
+					RouteOptions options) throws IOException {
+				if(RequestContext.of(request).isCancelled()) {
+					respondCancelled(request, response);
+					return;
+				}
+				if(options.isEntityTagged()) {
+					response.setHeader("ETag", serialized.etag());
+					if(EntityTags.isNotModified(request, serialized.etag())) {
+						response.setStatus(304);
 						request.setHandled(true);
-						m_erroneousResponses++;
+						m_metrics.countSuccess();
+						return;
 					}
-				} else if(m_webServices.containsKey(uri)) {
-					final TUIWebService webService = m_webServices.get(uri);
-					try {
-						final JsonObject node = webService.handle(uri, request, response);
-						final String json = node.toJson();
-						response.setContentType(HTMLConstants.JSON_CONTENT_TYPE);
-						response.getWriter().write(json);
+				}
+				response.setContentType(serialized.contentType());
+				response.setStatus(200);
+				response.setContentLength(serialized.content().length);
+				response.getOutputStream().write(serialized.content());
+				request.setHandled(true);
+				m_metrics.countSuccess();
+			}
+
+			private void respondWithJson(Request request, HttpServletResponse response, JsonObject node) throws IOException {
+				respondWithContent(request, response, HTMLConstants.JSON_CONTENT_TYPE, node::writeJson);
+			}
+
+			/**
+			 * The content is streamed to the response output instead of being built as a whole string. When the route is entity tagged,
+			 * the content is first streamed into a digest so that the ETag header is set before the body, and 304 is answered with no
+			 * body when the client already has that content.
+			 * <p>
+			 * The status set by the service is kept and sent with the content, like over the other transports (see
+			 * {@link ServiceCall#appendReply(StringBuilder, SerializedResponse)}). Only the successful responses are tagged.
+			 */
+			private void respondWithContent(Request request, HttpServletResponse response, String contentType,
+					EntityTags.ContentWriter writer) throws IOException {
+				if(RequestContext.of(request).isCancelled()) {
+					respondCancelled(request, response);
+					return;
+				}
+				final int status = response.getStatus();
+				if(status == 200 && m_routes.get().findOptions(getPath(request)).isEntityTagged()) {
+					// Serialized once: the content is kept while its digest is computed, unless it is too large to be tagged
+					final EntityTags.TaggingOutputStream tagging = new EntityTags.TaggingOutputStream(EntityTags.MAX_TAGGED_SIZE, () -> {
+						response.setContentType(contentType);
 						response.setStatus(200);
-						request.setHandled(true);
-						m_successfulResponses++;
-					} catch(Throwable t) {
-						LOG.log(Level.SEVERE, t.getMessage(), t);
-						response.setStatus(500);
-						request.setHandled(true);
-						m_erroneousResponses++;
+						return response.getOutputStream();
+					});
+					final ResponseAppender out = new ResponseAppender(tagging);
+					writer.write(out);
+					out.finish();
+					if(!tagging.isStreamed()) {
+						final String etag = tagging.getEntityTag();
+						response.setHeader("ETag", etag);
+						if(EntityTags.isNotModified(request, etag)) {
+							response.setStatus(304);
+						} else {
+							response.setContentType(contentType);
+							response.setStatus(200); // the response is committed on completion, like the untagged ones
+							tagging.writeContentTo(response.getOutputStream());
+						}
 					}
-				} else if(PATH_TO_SCRIPT.equals(uri)) {
-					respondWithTextResource(request, response, "js/tui.js", HTMLConstants.JAVASCRIPT_CONTENT_TYPE);
-				} else if(PATH_TO_CSS.equals(uri)) {
-					response.setContentType(HTMLConstants.CSS_CONTENT_TYPE);
-					response.getWriter().write(m_style.toCSS());
-					response.setStatus(200);
 					request.setHandled(true);
-					m_successfulResponses++;
-				} else if("/favicon.ico".equals(uri)) {
-					respondWithBinaryResource(request, response, "favicon.ico", HTMLConstants.FAVICON_CONTENT_TYPE);
+					m_metrics.countSuccess();
+					return;
+				}
+				response.setContentType(contentType);
+				final ResponseAppender out = new ResponseAppender(response.getOutputStream());
+				writer.write(out);
+				out.finish();
+				request.setHandled(true);
+				if(status < 400) {
+					m_metrics.countSuccess();
 				} else {
-					throw new FileNotFoundException("No page found at: " + uri);
+					m_metrics.countError();
 				}
 			}
 
-			private void respondWithTextResource(Request request, HttpServletResponse response, String resourcePath, String contentType) {
-				response.setContentType(contentType);
-				try {
-					final String content;
-					try(InputStream is = ClassLoader.getSystemClassLoader().getResourceAsStream(resourcePath)) {
-						assert is != null;
-						content = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-					}
-					response.getWriter().write(content);
-					response.setStatus(200);
-					request.setHandled(true);
-					m_successfulResponses++;
-				} catch(IOException e) {
-					e.printStackTrace();
-					response.setStatus(500);
+			private void respondWithFailure(Request request, HttpServletResponse response, Throwable t) {
+				if(RequestContext.of(request).isCancelled()) {
+					respondCancelled(request, response); // the service has stopped early
+					return;
+				}
+				if(t instanceof RejectedExecutionException) {
+					// For example, the queue of the job service is full
+					LOG.log(Level.WARNING, String.format("Request rejected, background executor is full: %s", request.getRequestURI()));
+					response.setStatus(503);
+					response.setIntHeader("Retry-After", OVERLOAD_RETRY_AFTER_s);
 					request.setHandled(true);
-					m_erroneousResponses++;
+					m_metrics.countError();
+					return;
 				}
+				LOG.log(Level.SEVERE, t.getMessage(), t);
+				response.setStatus(500);
+				request.setHandled(true);
+				m_metrics.countError();
 			}
 
-			private void respondWithBinaryResource(Request request, HttpServletResponse response, String resourcePath, String contentType) {
-				response.setContentType(contentType);
-				try {
-					final ServletOutputStream outputStream = response.getOutputStream();
-					try(InputStream is = ClassLoader.getSystemClassLoader().getResourceAsStream(resourcePath)) {
-						assert is != null;
-						outputStream.write(is.readAllBytes());
+			/**
+			 * Nobody reads the response of a superseded request or of a closed page: no content is sent.
+			 */
+			private void respondCancelled(Request request, HttpServletResponse response) {
+				final RequestContext.Reason reason = RequestContext.of(request).getCancellationReason();
+				LOG.log(Level.FINE, String.format("Request cancelled (%s): %s", reason, request.getRequestURI()));
+				response.setStatus(reason == RequestContext.Reason.DEADLINE_EXCEEDED ? 504 : 503);
+				request.setHandled(true);
+			}
+
+			private void respondWhenComplete(Request request, HttpServletResponse response, CompletableFuture<JsonObject> future,
+					long timeout_ms) throws Exception {
+				RequestContext.of(request).onCancel(() -> future.cancel(true));
+				if(request.isAsyncStarted()) {
+					// The request already runs on its own (virtual) thread, which can simply wait for the result
+					try {
+						respondWithJson(request, response, future.get(timeout_ms, TimeUnit.MILLISECONDS));
+					} catch(TimeoutException e) {
+						future.cancel(true);
+						respondWithTimeout(request, response, timeout_ms);
+					} catch(ExecutionException e) {
+						throw e.getCause() instanceof Exception cause ? cause : e;
 					}
-					response.setStatus(200);
-					request.setHandled(true);
-					m_successfulResponses++;
-				} catch(IOException e) {
-					e.printStackTrace();
-					response.setStatus(500);
-					request.setHandled(true);
-					m_erroneousResponses++;
+					return;
 				}
+
+				final AsyncContext asyncContext = request.startAsync();
+				asyncContext.setTimeout(timeout_ms);
+				request.setHandled(true);
+				final AtomicBoolean responded = new AtomicBoolean(false);
+				asyncContext.addListener(new AsyncListener() {
+					@Override
+					public void onComplete(AsyncEvent event) {
+					}
+
+					@Override
+					public void onTimeout(AsyncEvent event) {
+						if(responded.compareAndSet(false, true)) {
+							future.cancel(true);
+							respondWithTimeout(request, response, timeout_ms);
+							m_inFlightRequests.decrementAndGet();
+							Bulkhead.Admission.release(request);
+							asyncContext.complete();
+						}
+					}
+
+					@Override
+					public void onError(AsyncEvent event) {
+					}
+
+					@Override
+					public void onStartAsync(AsyncEvent event) {
+					}
+				});
+
+				future.whenComplete((node, error) -> {
+					if(!responded.compareAndSet(false, true)) {
+						return;
+					}
+					try {
+						if(error != null) {
+							throw error;
+						}
+						respondWithJson(request, response, node);
+					} catch(Throwable t) {
+						respondWithFailure(request, response, t);
+					} finally {
+						m_inFlightRequests.decrementAndGet();
+						Bulkhead.Admission.release(request);
+						asyncContext.complete();
+					}
+				});
 			}
-		});
-		LOG.info("Starting WebServer @port " + m_httpPort);
-		m_server.start();
-		LOG.log(Level.INFO, String.format("Web server listening on :%d", m_httpPort));
+
+			private void respondWithTimeout(Request request, HttpServletResponse response, long timeout_ms) {
+				LOG.log(Level.WARNING, String.format("No response after %d ms: %s", timeout_ms, request.getRequestURI()));
+				response.setStatus(504);
+				request.setHandled(true);
+				m_metrics.countError();
+			}
+		};
+		m_webSocketTransport = new WebSocketTransport(this::callWebService,
+				() -> m_requestExecutor != null ? m_requestExecutor : m_webSocketExecutor, () -> m_draining, m_webSocketAllowedOrigins);
+		if(m_compressionEnabled) {
+			m_compressionHandler = new CompressionHandler(m_routes::get, m_compressionMinSize, m_compressionLevel);
+			m_compressionHandler.setHandler(handler);
+			m_webSocketTransport.setHandler(m_compressionHandler);
+			for(Connector connector : m_server.getConnectors()) {
+				connector.addBean(m_compressionHandler);
+			}
+		} else {
+			m_compressionHandler = null;
+			m_webSocketTransport.setHandler(handler);
+		}
+		return m_webSocketTransport;
 	}
 
 	public void stop() throws Exception {
+		if(m_host != null) {
+			throw new UIConfigurationException("The backend mounted at %s is stopped by its host", m_contextPath);
+		}
 		LOG.info("Stopping web server...");
 		if(m_server != null) {
 			try {
+				if(m_drainTimeout_ms > 0 && m_server.isStarted()) {
+					drain();
+				}
 				m_server.stop();
 			} catch(Exception t) {
 				LOG.log(Level.SEVERE, t.getMessage(), t);
 				throw t;
+			} finally {
+				for(TUIBackend backend : getBackends()) {
+					backend.stopServices();
+				}
 			}
 		}
 		LOG.info("Web server stopped");
 	}
 
+	/**
+	 * Prepares a mounted backend to serve the requests of its context on the server of its host.
+	 */
+	private Handler prepareMounted(Server server) throws IOException {
+		loadAssets();
+		m_server = server;
+		final Handler result = newHandler();
+		startExecutorAndLog();
+		return result;
+	}
+
+	private void startExecutorAndLog() throws IOException {
+		if(m_virtualThreadsEnabled) {
+			m_requestExecutor = VirtualThreads.newRequestExecutor();
+		} else {
+			m_batchExecutor = newCallExecutor("tui-batch-", BATCH_THREADS, BATCH_MAX_CALLS, new ThreadPoolExecutor.CallerRunsPolicy());
+			m_webSocketExecutor = newCallExecutor("tui-websocket-", WEBSOCKET_THREADS, WEBSOCKET_MAX_QUEUED_CALLS,
+					new ThreadPoolExecutor.AbortPolicy());
+		}
+		if(m_accessLogSettings != null) {
+			m_accessLog = new AccessLog(m_accessLogSettings);
+			m_accessLog.start();
+			LOG.info(String.format("Access log%s: %s", m_contextPath.isEmpty() ? "" : " of " + m_contextPath, m_accessLogSettings));
+		}
+	}
+
+	private void startServices() {
+		m_refreshAheadScheduler.start();
+		m_serverEvents.start();
+		m_requestContexts.start();
+	}
+
+	private void stopServices() throws InterruptedException {
+		m_draining = false;
+		m_refreshAheadScheduler.stop();
+		m_serverEvents.stop();
+		m_requestContexts.stop();
+		if(m_jobService != null) {
+			m_jobService.stop();
+		}
+		if(m_accessLog != null) {
+			m_accessLog.stop(); // once the server is stopped, so that all requests are logged
+			m_accessLog = null;
+		}
+		if(m_requestExecutor != null) {
+			m_requestExecutor.shutdownNow();
+			m_requestExecutor = null;
+		}
+		if(m_batchExecutor != null) {
+			m_batchExecutor.shutdownNow();
+			m_batchExecutor = null;
+		}
+		if(m_webSocketExecutor != null) {
+			m_webSocketExecutor.shutdownNow();
+			m_webSocketExecutor = null;
+		}
+	}
+
+	/**
+	 * The calls of the batches and of the WebSocket connections are not executed by the Jetty pool: they could otherwise take the
+	 * threads that the requests and the connectors need. When the threads are all busy and the queue is full, the rejection policy
+	 * applies: the calls of a batch are executed by the request thread itself, the WebSocket calls are answered with 503.
+	 */
+	private static ExecutorService newCallExecutor(String threadPrefix, int threads, int maxQueuedCalls,
+			RejectedExecutionHandler rejection) {
+		final AtomicInteger threadCount = new AtomicInteger();
+		final ThreadPoolExecutor result = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(maxQueuedCalls), (runnable) -> {
+			final Thread thread = new Thread(runnable, threadPrefix + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}, rejection);
+		result.allowCoreThreadTimeOut(true);
+		return result;
+	}
+
+	/**
+	 * @return This backend followed by the ones mounted on it.
+	 */
+	private List<TUIBackend> getBackends() {
+		final List<TUIBackend> result = new ArrayList<>();
+		result.add(this);
+		result.addAll(m_mountedBackends.values());
+		return result;
+	}
+
+	/**
+	 * Stops accepting connections, answers new requests on the open connections with 503, then waits for the in-flight requests and
+	 * background computations to finish, until the drain timeout.
+	 */
+	private void drain() throws InterruptedException {
+		final long deadline_ms = System.currentTimeMillis() + m_drainTimeout_ms;
+		final List<TUIBackend> backends = getBackends();
+		for(TUIBackend backend : backends) {
+			backend.m_draining = true;
+		}
+		for(Connector connector : m_server.getConnectors()) {
+			connector.shutdown(); // closes the TCP server socket
+			if(connector instanceof UnixSocketConnector unixSocketConnector) {
+				unixSocketConnector.close();
+			}
+		}
+		final int inFlight = countInFlightRequests(backends);
+		LOG.info(String.format("Draining %d in-flight requests, for %d ms at most", inFlight, m_drainTimeout_ms));
+		while(countInFlightRequests(backends) > 0 && System.currentTimeMillis() < deadline_ms) {
+			Thread.sleep(DRAIN_POLL_PERIOD_ms);
+		}
+		boolean computationsDone = true;
+		for(TUIBackend backend : backends) {
+			computationsDone &= backend.m_refreshAheadScheduler.drain(Math.max(0, deadline_ms - System.currentTimeMillis()));
+			if(backend.m_jobService != null) {
+				computationsDone &= backend.m_jobService.drain(Math.max(0, deadline_ms - System.currentTimeMillis()));
+			}
+		}
+
+		m_abandonedRequests = countInFlightRequests(backends);
+		m_drainedRequests = Math.max(0, inFlight - m_abandonedRequests);
+		LOG.log(m_abandonedRequests == 0 && computationsDone ? Level.INFO : Level.WARNING,
+				String.format("Drain done: %d requests completed, %d abandoned%s", m_drainedRequests, m_abandonedRequests,
+						computationsDone ? "" : ", background computations interrupted"));
+	}
+
+	private static int countInFlightRequests(List<TUIBackend> backends) {
+		int result = 0;
+		for(TUIBackend backend : backends) {
+			result += backend.m_inFlightRequests.get() + backend.m_inFlightCalls.get();
+		}
+		return result;
+	}
+
+	/**
+	 * Records the complete request in the metrics and the access log.
+	 */
+	private void complete(HttpServletRequest request, int status, long responseBytes) {
+		final MetricsRegistry.Exchange exchange = m_metrics.complete(request, status, responseBytes);
+		final AccessLog accessLog = m_accessLog;
+		if(accessLog == null) {
+			return;
+		}
+		final long duration_us;
+		if(exchange != null) {
+			duration_us = (System.nanoTime() - exchange.start_ns()) / 1_000;
+		} else if(request instanceof Request jettyRequest) { // not routed
+			duration_us = (System.currentTimeMillis() - jettyRequest.getTimeStamp()) * 1_000;
+		} else {
+			duration_us = 0;
+		}
+		accessLog.append(request.getMethod(), request.getRequestURI(), exchange == null ? null : exchange.type().getLabel(),
+				exchange == null ? null : exchange.route(), status, responseBytes, duration_us,
+				request.getHeader(RequestContext.REFRESH_KEY_HEADER));
+	}
+
+	/**
+	 * Requests are logged as JSON lines, by a background thread: time, method, path, route, status, response bytes, duration and the
+	 * id of the page instance. The request threads never wait for the file: when the buffer of the log is full, entries are dropped
+	 * and counted, see {@link #getAccessLogDropped()}. Taken into account at next start.
+	 *
+	 * @param settings Null disables the access log (default).
+	 */
+	public void setAccessLog(AccessLogSettings settings) {
+		m_accessLogSettings = settings;
+	}
+
+	public AccessLogSettings getAccessLog() {
+		return m_accessLogSettings;
+	}
+
+	/**
+	 * @return The number of entries dropped by the running access log because its buffer was full.
+	 */
+	public long getAccessLogDropped() {
+		final AccessLog accessLog = m_accessLog;
+		return accessLog == null ? 0 : accessLog.getDropped();
+	}
+
+	/**
+	 * @param timeout_ms When positive, {@link #stop()} lets the in-flight requests finish for this time at most, while new requests are
+	 *                   answered with 503 and 'Retry-After'. With 0 (default), the server is stopped immediately.
+	 */
+	public void setDrainTimeout_ms(long timeout_ms) {
+		if(timeout_ms < 0) {
+			throw new UIConfigurationException("Drain timeout must not be negative: %d", timeout_ms);
+		}
+		m_drainTimeout_ms = timeout_ms;
+	}
+
+	public long getDrainTimeout_ms() {
+		return m_drainTimeout_ms;
+	}
+
+	public boolean isDraining() {
+		return m_draining;
+	}
+
+	/**
+	 * @return The number of requests that completed during the last drain.
+	 */
+	public int getDrainedRequests() {
+		return m_drainedRequests;
+	}
+
+	/**
+	 * @return The number of requests still in flight when the last drain timed out.
+	 */
+	public int getAbandonedRequests() {
+		return m_abandonedRequests;
+	}
+
+	private String getListeningAddresses() {
+		final List<String> result = new ArrayList<>();
+		if(m_httpPortEnabled) {
+			result.add(":" + m_httpPort);
+		}
+		if(m_unixSocket != null) {
+			result.add("unix:" + m_unixSocket);
+		}
+		return String.join(", ", result);
+	}
+
+	private ServerConnector newHttpConnector() {
+		final ServerSettings settings = m_serverSettings;
+		final ServerConnector result = new ServerConnector(m_server, settings.getAcceptors(), settings.getSelectors(),
+				newConnectionFactories(newHttpConfiguration()));
+		result.setPort(m_httpPort);
+		result.setAcceptQueueSize(settings.getAcceptQueueSize());
+		result.setIdleTimeout(settings.getIdleTimeout_ms());
+		return result;
+	}
+
+	/**
+	 * @return The threads of the pool that the connectors keep for their acceptors and selectors, Jetty's defaults being resolved.
+	 */
+	private static int getReservedThreads(Connector[] connectors) {
+		int result = 0;
+		for(Connector connector : connectors) {
+			if(connector instanceof ServerConnector serverConnector) {
+				result += serverConnector.getAcceptors() + serverConnector.getSelectorManager().getSelectorCount();
+			} else if(connector instanceof UnixSocketConnector unixSocketConnector) {
+				result += unixSocketConnector.getAcceptors() + unixSocketConnector.getSelectorManager().getSelectorCount();
+			}
+		}
+		return result;
+	}
+
+	private UnixSocketConnector newUnixSocketConnector() throws IOException {
+		// Only the local reverse proxy can connect: the client address and scheme it forwards are trusted
+		final ServerSettings settings = m_serverSettings;
+		final HttpConfiguration configuration = newHttpConfiguration();
+		configuration.addCustomizer(new ForwardedRequestCustomizer());
+		final UnixSocketConnector result = new UnixSocketConnector(m_server, settings.getSelectors(),
+				newConnectionFactories(configuration));
+		deleteStaleSocket(Path.of(m_unixSocket));
+		result.setUnixSocket(m_unixSocket);
+		result.setAcceptQueueSize(settings.getAcceptQueueSize());
+		result.setIdleTimeout(settings.getIdleTimeout_ms());
+		return result;
+	}
+
+	/**
+	 * Deletes the socket file left by a previous process that has not been stopped. Any other kind of file is kept, the path is then
+	 * considered as misconfigured.
+	 */
+	static void deleteStaleSocket(Path path) throws IOException {
+		if(!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+			return;
+		}
+		if(!isSocket(path)) {
+			throw new UIConfigurationException("The path of the Unix socket is taken by a file which is not a socket: %s", path);
+		}
+		Files.delete(path);
+	}
+
+	private static boolean isSocket(Path path) throws IOException {
+		try {
+			final int mode = (Integer) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+			return (mode & 0170000) == 0140000; // S_IFSOCK
+		} catch(UnsupportedOperationException | IllegalArgumentException e) {
+			// No 'unix' attribute view on this file system
+			return !Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS) && !Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)
+					&& !Files.isSymbolicLink(path);
+		}
+	}
+
+	private HttpConfiguration newHttpConfiguration() {
+		final HttpConfiguration result = new HttpConfiguration();
+		result.setRequestHeaderSize(m_serverSettings.getRequestHeaderSize());
+		result.setOutputBufferSize(m_serverSettings.getOutputBufferSize());
+		return result;
+	}
+
+	private ConnectionFactory[] newConnectionFactories(HttpConfiguration configuration) {
+		if(m_http2Settings == null) {
+			return new ConnectionFactory[] { new HttpConnectionFactory(configuration) };
+		}
+		// Clients either upgrade from HTTP/1.1 or start with the HTTP/2 preface (prior knowledge)
+		final HTTP2CServerConnectionFactory http2 = new HTTP2CServerConnectionFactory(configuration);
+		http2.setMaxConcurrentStreams(m_http2Settings.maxConcurrentStreams());
+		http2.setInitialStreamRecvWindow(m_http2Settings.initialStreamWindow());
+		http2.setInitialSessionRecvWindow(m_http2Settings.initialSessionWindow());
+		return new ConnectionFactory[] { new HttpConnectionFactory(configuration), http2 };
+	}
+
+	/**
+	 * Makes the backend listen on a Unix domain socket, for a reverse proxy running on the same host: no TCP loopback hop and no
+	 * ephemeral port per proxied connection. The 'Forwarded' and 'X-Forwarded-*' headers set by the proxy are applied to the requests
+	 * received on the socket. Null removes the socket. Must be called before {@link #start()}.
+	 *
+	 * @param path The socket file, replaced when it exists.
+	 */
+	public void setUnixSocket(String path) {
+		if(path != null && path.length() > UnixSocketConnector.MAX_UNIX_SOCKET_PATH_LENGTH) {
+			throw new UIConfigurationException("Unix socket path is longer than %d characters: %s",
+					UnixSocketConnector.MAX_UNIX_SOCKET_PATH_LENGTH, path);
+		}
+		m_unixSocket = path;
+	}
+
+	public String getUnixSocket() {
+		return m_unixSocket;
+	}
+
+	/**
+	 * @param enabled False when the backend is only reached through its Unix socket, see {@link #setUnixSocket(String)}. Must be
+	 *                called before {@link #start()}.
+	 */
+	public void setHttpPortEnabled(boolean enabled) {
+		m_httpPortEnabled = enabled;
+	}
+
+	public boolean isHttpPortEnabled() {
+		return m_httpPortEnabled;
+	}
+
+	/**
+	 * @param settings Thread pool, connectors and buffers of the server, checked and logged on start. See
+	 *                 {@link ServerSettings#fromProperties(java.util.Properties, String)} to read them from a configuration file.
+	 *                 Must be called before {@link #start()}.
+	 */
+	public void setServerSettings(ServerSettings settings) {
+		m_serverSettings = settings == null ? ServerSettings.DEFAULT : settings;
+	}
+
+	public ServerSettings getServerSettings() {
+		return m_serverSettings;
+	}
+
+	/**
+	 * Enables cleartext HTTP/2 (h2c) alongside HTTP/1.1 on the same port, so that the parallel refreshes of a page are multiplexed over
+	 * one connection. Browsers only use HTTP/2 over TLS: h2c is used by reverse proxies that terminate TLS and by clients with prior
+	 * knowledge. Null disables HTTP/2. Must be called before {@link #start()}.
+	 */
+	public void setHttp2(Http2Settings settings) {
+		m_http2Settings = settings;
+	}
+
+	public Http2Settings getHttp2() {
+		return m_http2Settings;
+	}
+
+	/**
+	 * When enabled, each request is handled on its own virtual thread instead of a thread of Jetty's bounded pool, so that services
+	 * blocking on JDBC or downstream calls do not saturate the pool. Must be called before {@link #start()}.
+	 *
+	 * @throws UIConfigurationException When enabled while the JVM does not support virtual threads (Java 21+ is required): requests
+	 *                                  then stay on Jetty's bounded pool.
+	 */
+	public void setVirtualThreadsEnabled(boolean enabled) {
+		if(enabled && !VirtualThreads.isSupported()) {
+			throw new UIConfigurationException("Virtual threads are not supported by this JVM (Java 21+ is required)");
+		}
+		m_virtualThreadsEnabled = enabled;
+	}
+
+	public boolean isVirtualThreadsEnabled() {
+		return m_virtualThreadsEnabled;
+	}
+
+	/**
+	 * @return The number of requests currently being handled.
+	 */
+	public int getInFlightRequests() {
+		return m_inFlightRequests.get();
+	}
+
+	/**
+	 * @return The number of platform threads that actually run the requests: the carrier threads of the virtual threads when enabled,
+	 * the threads of Jetty's pool otherwise.
+	 */
+	public int getCarrierThreads() {
+		if(m_requestExecutor != null) {
+			return VirtualThreads.getCarrierThreads();
+		} else if(m_server != null) {
+			return m_server.getThreadPool().getThreads();
+		} else {
+			return 0;
+		}
+	}
+
+	/**
+	 * HTML, JSON, CSS and Javascript responses are compressed with gzip when the client accepts it. Compression is enabled by default,
+	 * it can be disabled for the whole backend with this method, or for some routes only with {@link RouteOptions#withCompression(boolean)}.
+	 * Must be called before {@link #start()}.
+	 */
+	public void setCompressionEnabled(boolean enabled) {
+		m_compressionEnabled = enabled;
+	}
+
+	/**
+	 * @param bytes Smaller responses are not compressed. Must be called before {@link #start()}.
+	 */
+	public void setCompressionMinSize(int bytes) {
+		if(bytes < 0) {
+			throw new UIConfigurationException("Compression min size must not be negative: %d", bytes);
+		}
+		m_compressionMinSize = bytes;
+	}
+
+	/**
+	 * @param level From {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}.
+	 *              Must be called before {@link #start()}.
+	 */
+	public void setCompressionLevel(int level) {
+		if(level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)) {
+			throw new UIConfigurationException("Invalid compression level: %d", level);
+		}
+		m_compressionLevel = level;
+	}
+
+	public long getCompressedResponses() {
+		return m_compressionHandler == null ? 0 : m_compressionHandler.getCompressedResponses();
+	}
+
+	/**
+	 * @return The size of the compressed responses before their compression.
+	 */
+	public long getCompressionInputBytes() {
+		return m_compressionHandler == null ? 0 : m_compressionHandler.getUncompressedBytes();
+	}
+
+	/**
+	 * @return The size of the compressed responses as they were sent.
+	 */
+	public long getCompressionOutputBytes() {
+		return m_compressionHandler == null ? 0 : m_compressionHandler.getCompressedBytes();
+	}
+
+	public int getSuccessfulResponses() {
+		return (int) m_metrics.getSuccessfulResponses();
+	}
+
 	public int getErroneousResponses() {
-		return m_erroneousResponses;
+		return (int) m_metrics.getErroneousResponses();
+	}
+
+	/**
+	 * @return The latencies, response sizes and counters of the backend. Components may export their own counters in it.
+	 */
+	public MetricsRegistry getMetrics() {
+		return m_metrics;
+	}
+
+	public void enableMetricsEndpoint() {
+		enableMetricsEndpoint(PATH_TO_METRICS);
+	}
+
+	/**
+	 * Serves the metrics at the given path, in the Prometheus text format. The endpoint is not protected: expose it only to the
+	 * network of the scrapers, or protect it with a reverse proxy.
+	 */
+	public void enableMetricsEndpoint(String path) {
+		registerFileService(path, (uri, request, response) -> {
+			final StringBuilder content = new StringBuilder();
+			m_metrics.write(content);
+			final byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+			response.setContentType(MetricsRegistry.CONTENT_TYPE);
+			response.setStatus(200);
+			response.setContentLength(bytes.length);
+			response.getOutputStream().write(bytes);
+		});
 	}
 
+	/**
+	 * @param path Exact path, or template with variables like <code>/orders/{id:long}/lines</code> (see {@link PathRouter}). The service
+	 *             reads the values of the variables with {@link PathVariables#of(HttpServletRequest)}.
+	 */
 	public void registerWebService(String path, TUIWebService service) {
-		m_webServices.put(path, service);
+		updateRoutes((routes) -> routes.withWebService(path, service));
+	}
+
+	public void registerAsyncWebService(String path, TUIAsyncWebService service) {
+		registerAsyncWebService(path, service, DEFAULT_ASYNC_TIMEOUT_ms);
+	}
+
+	/**
+	 * @param timeout_ms When the service's future is not completed after this delay, it is cancelled and the backend responds with
+	 *                   HTTP 504.
+	 */
+	public void registerAsyncWebService(String path, TUIAsyncWebService service, long timeout_ms) {
+		updateRoutes((routes) -> routes.withAsyncWebService(path, service, timeout_ms));
+	}
+
+	/**
+	 * Registers a web service whose response is computed in the background following the schedule, so that requests are answered
+	 * immediately with the latest computed response.
+	 *
+	 * @param path Exact path: the computation does not depend on the request.
+	 */
+	public void registerPrecomputedWebService(@NotNull String path, TUIPrecomputedWebService service, RefreshSchedule schedule) {
+		final RefreshAheadService refreshAheadService = new RefreshAheadService(path, service, schedule);
+		updateRoutes((routes) -> routes.withWebService(path, refreshAheadService));
+		m_refreshAheadScheduler.schedule(refreshAheadService);
+		LOG.log(Level.INFO, String.format("Precomputed web service '%s' scheduled %s", path, schedule));
+	}
+
+	public long getPrecomputations() {
+		return m_refreshAheadScheduler.getComputations();
+	}
+
+	public long getPrecomputationFailures() {
+		return m_refreshAheadScheduler.getFailures();
+	}
+
+	/**
+	 * Asks the pages that have enabled server events (see {@link Page#enableServerEvents()}) to refresh components.
+	 *
+	 * @param target Id (see {@link tui.html.HTMLConstants#toId(long)}) or custom tag of the components to refresh.
+	 */
+	public void notifyRefresh(String target) {
+		notifyRefresh(target, Map.of());
+	}
+
+	/**
+	 * @param parameters Added to the parameters the components send to their source when they refresh.
+	 */
+	public void notifyRefresh(String target, Map<String, String> parameters) {
+		notifyRefresh(target, parameters, (sessionParameters) -> true);
+	}
+
+	/**
+	 * @param sessionParameters Selects the pages that are notified, by the session parameters they have been built with.
+	 */
+	public void notifyRefresh(String target, Map<String, String> parameters, Predicate<Map<String, String>> sessionParameters) {
+		m_serverEvents.broadcast(target, parameters, sessionParameters);
+	}
+
+	public int getServerEventsSubscribers() {
+		return m_serverEvents.getSubscribers();
+	}
+
+	/**
+	 * @return The number of refresh events sent, counted once per subscriber.
+	 */
+	public long getServerEventsSent() {
+		return m_serverEvents.getSentEvents();
+	}
+
+	/**
+	 * @return The number of pages disconnected from the server events because they did not read them fast enough.
+	 */
+	public long getServerEventsDroppedSubscribers() {
+		return m_serverEvents.getDroppedSubscribers();
+	}
+
+	/**
+	 * @return The number of pages connected through WebSocket, see {@link Page#enableWebSocket()}.
+	 */
+	public int getWebSocketSessions() {
+		return m_webSocketTransport == null ? 0 : m_webSocketTransport.getSessions();
 	}
 
+	/**
+	 * @return The number of web service calls received through WebSocket.
+	 */
+	public long getWebSocketCalls() {
+		return m_webSocketTransport == null ? 0 : m_webSocketTransport.getCalls();
+	}
+
+	/**
+	 * @return The number of WebSocket connections refused, because of their origin or because the backend was draining.
+	 */
+	public long getWebSocketRefusedUpgrades() {
+		return m_webSocketTransport == null ? 0 : m_webSocketTransport.getRefusedUpgrades();
+	}
+
+	/**
+	 * WebSocket connections are only accepted from the pages of the backend itself: browsers send the origin of the page, which must
+	 * match the server. Taken into account at next start.
+	 *
+	 * @param origins Other sites whose pages may connect, like 'https://portal.example.com'.
+	 */
+	public void setWebSocketAllowedOrigins(String... origins) {
+		m_webSocketAllowedOrigins = Set.of(origins);
+	}
+
+	/**
+	 * Gives the service that runs long actions in background. On first call, the backend registers the routes of the jobs:
+	 * <ul>
+	 *     <li>'/tui/jobs/{id}' serves the status of the job as a {@link ProgressBar}, which polls it until the job
+	 *     is done. Unknown and evicted jobs are shown as failed,</li>
+	 *     <li>'/tui/jobs/{id}/result' serves the artifact of the finished job, from memory, until the job is evicted.</li>
+	 * </ul>
+	 * A web service typically submits a job, then answers with {@link TUIJobService#newProgressBar(String)}.
+	 */
+	public synchronized TUIJobService getJobService() {
+		if(m_jobService == null) {
+			final TUIJobService jobService = new TUIJobService(PATH_TO_JOBS);
+			updateRoutes((routes) -> routes
+					.withWebService(PATH_TO_JOBS + "/{id}", (uri, request, response) -> {
+						ProgressBar result = jobService.newProgressBar(PathVariables.of(request).getString("id"));
+						if(result == null) { // the bar shows the failure and stops polling
+							result = new ProgressBar().setFailed("Job not found, its result may have expired");
+							result.setSource(uri);
+						}
+						return result.toJsonMap();
+					})
+					.withFileService(PATH_TO_JOBS + "/{id}" + TUIJobService.RESULT_SUFFIX, (uri, request, response) -> {
+						final String id = PathVariables.of(request).getString("id");
+						final FileResource resource = jobService.getResource(id);
+						if(resource == null) {
+							response.setStatus(404);
+							return;
+						}
+						final String fileName = jobService.getResultFileName(id);
+						if(fileName != null) {
+							response.setHeader("Content-Disposition",
+									String.format("attachment; filename=\"%s\"", fileName.replaceAll("[\"\\\\\\r\\n]", "_")));
+						}
+						resource.handle(uri, request, response);
+					}));
+			m_jobService = jobService;
+		}
+		return m_jobService;
+	}
+
+	/**
+	 * @return The number of requests cancelled while being served, see {@link RequestContext}.
+	 */
+	public long getCancelledRequests() {
+		return m_requestContexts.getCancelled();
+	}
+
+	/**
+	 * @param limit Bounds the number of requests served at the same time by the whole backend. Null removes the limit. Routes can be
+	 *              limited too, see {@link RouteOptions#withConcurrencyLimit(ConcurrencyLimit)}.
+	 */
+	public void setConcurrencyLimit(ConcurrencyLimit limit) {
+		m_globalBulkhead = limit == null ? null : new Bulkhead(limit);
+	}
+
+	/**
+	 * @return The number of requests that have been answered with 503 because of a concurrency limit.
+	 */
+	public long getRejectedRequests() {
+		return m_rejectedRequests.sum();
+	}
+
+	/**
+	 * @return The number of requests currently waiting for a slot, globally or for a route.
+	 */
+	public int getQueuedRequests() {
+		final Bulkhead globalBulkhead = m_globalBulkhead;
+		return (globalBulkhead == null ? 0 : globalBulkhead.getQueued())
+				+ m_routeBulkheads.values().stream().mapToInt(Bulkhead::getQueued).sum();
+	}
+
+	/**
+	 * @param template Template of a route, as registered.
+	 * @return The number of requests of the route currently waiting for a slot.
+	 */
+	public int getQueuedRequests(String template) {
+		final Bulkhead bulkhead = m_routeBulkheads.get(template);
+		return bulkhead == null ? 0 : bulkhead.getQueued();
+	}
+
+	/**
+	 * @param template Template of a route, as registered.
+	 * @return The number of requests of the route that have been rejected by its concurrency limit, since the limit was set.
+	 */
+	public long getRejectedRequests(String template) {
+		final Bulkhead bulkhead = m_routeBulkheads.get(template);
+		return bulkhead == null ? 0 : bulkhead.getRejections();
+	}
+
+	/**
+	 * @return The bulkhead of the route matching the requested path, or null when the route is not limited. The bulkhead is replaced
+	 * when the route's limit changes.
+	 */
+	private Bulkhead getRouteBulkhead(RouteTable routes, String uri, PathRouter.Route<?>... matchingRoutes) {
+		final ConcurrencyLimit limit = routes.findOptions(uri).getConcurrencyLimit();
+		if(limit == null) {
+			return null;
+		}
+		for(PathRouter.Route<?> route : matchingRoutes) {
+			if(route != null) {
+				final Bulkhead current = m_routeBulkheads.get(route.getTemplate());
+				if(current != null && current.getLimit().equals(limit)) {
+					return current;
+				}
+				return m_routeBulkheads.compute(route.getTemplate(),
+						(template, bulkhead) -> bulkhead != null && bulkhead.getLimit().equals(limit) ? bulkhead : new Bulkhead(limit));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Makes the route available to the service through {@link PathVariables#of(HttpServletRequest)}.
+	 */
+	private static void exposeRoute(HttpServletRequest request, PathRouter.Route<?> route, String path) {
+		if(route.hasVariables()) {
+			request.setAttribute(PathVariables.REQUEST_ATTRIBUTE_ROUTE, route);
+			request.setAttribute(PathVariables.REQUEST_ATTRIBUTE_PATH, path);
+		}
+	}
+
+	/**
+	 * Calls the web service registered at the path of a call that has no HTTP request of its own. The same route options as for HTTP
+	 * apply: precomputation, cache, coalescing and concurrency limits.
+	 *
+	 * @return The serialized response, or null when no web service is registered at the path. The status is the one of the call.
+	 */
+	SerializedResponse callWebService(ServiceCall call) throws Exception {
+		return callAndRecord(call, m_globalBulkhead);
+	}
+
+	/**
+	 * Calls that have no HTTP request of their own are recorded in the metrics like HTTP requests, under their route.
+	 */
+	private SerializedResponse callAndRecord(ServiceCall call, Bulkhead globalBulkhead) throws Exception {
+		boolean failed = true;
+		SerializedResponse result = null;
+		m_inFlightCalls.incrementAndGet(); // awaited by the drain, like the HTTP requests
+		try {
+			result = callWebService(call, globalBulkhead);
+			failed = false;
+			return result;
+		} finally {
+			m_inFlightCalls.decrementAndGet();
+			complete(call.getRequest(), failed ? 500 : call.getStatus(), result == null ? 0 : result.content().length);
+		}
+	}
+
+	/**
+	 * @param globalBulkhead Null when the call is part of a batch request, which already holds a slot of the backend.
+	 */
+	private SerializedResponse callWebService(ServiceCall call, Bulkhead globalBulkhead) throws Exception {
+		final String uri = call.getPath();
+		final HttpServletRequest request = call.getRequest();
+		final HttpServletResponse response = call.getResponse();
+		final RouteTable routes = m_routes.get();
+		final RouteTable.Match match = routes.findWebService(uri);
+		final PathRouter.Route<TUIWebService> webRoute = match.web();
+		final PathRouter.Route<RouteTable.AsyncWebService> asyncWebRoute = match.asyncWeb();
+		if(webRoute == null && asyncWebRoute == null) {
+			return null;
+		}
+		m_metrics.start(request, MetricsRegistry.ServiceType.WEB, (webRoute != null ? webRoute : asyncWebRoute).getTemplate());
+		if(m_draining) {
+			response.setStatus(503);
+			return SerializedResponse.of(new byte[0], HTMLConstants.JSON_CONTENT_TYPE);
+		}
+
+		final Bulkhead routeBulkhead = getRouteBulkhead(routes, uri, webRoute, asyncWebRoute);
+		if(globalBulkhead != null && !globalBulkhead.acquire()) {
+			return rejectCall(call);
+		}
+		if(routeBulkhead != null && !routeBulkhead.acquire()) {
+			if(globalBulkhead != null) {
+				globalBulkhead.release();
+			}
+			return rejectCall(call);
+		}
+		final Bulkhead.Admission admission = new Bulkhead.Admission(globalBulkhead, routeBulkhead);
+		try {
+			final RouteOptions options = routes.findOptions(uri);
+			if(webRoute != null) {
+				exposeRoute(request, webRoute, uri);
+				final TUIWebService webService = webRoute.getService();
+				if(webService instanceof RefreshAheadService refreshAheadService) {
+					return refreshAheadService.getLatestSerialized();
+				} else if(options.isCached() || options.isCoalesced()) {
+					final RequestKey key = RequestKey.of(uri, request);
+					final long generation = m_responseCache.getGeneration(webRoute.getTemplate()); // before computing
+					final SerializedResponse cached = options.isCached() ? m_responseCache.get(webRoute.getTemplate(), options, key) : null;
+					if(cached != null) {
+						return cached; // the expiration of the entry is kept
+					}
+					final AtomicReference<SerializedResponse> error = new AtomicReference<>(); // errors are neither cached nor shared
+					SerializedResponse serialized = null;
+					if(options.isCoalesced()) {
+						serialized = m_coalescer.execute(key, generation, () -> {
+							final SerializedResponse result = SerializedResponse.ofJson(webService.handle(uri, request, response),
+									HTMLConstants.JSON_CONTENT_TYPE);
+							if(call.getStatus() != 200) {
+								error.set(result);
+								return null;
+							}
+							return result;
+						});
+					}
+					if(error.get() != null) {
+						return error.get();
+					}
+					if(serialized == null) { // not coalesced, or the shared result could not be shared
+						serialized = SerializedResponse.ofJson(webService.handle(uri, request, response), HTMLConstants.JSON_CONTENT_TYPE);
+						if(call.getStatus() != 200) {
+							return serialized;
+						}
+					}
+					if(options.isCached()) {
+						m_responseCache.put(webRoute.getTemplate(), options, key, serialized, generation);
+					}
+					return serialized;
+				} else {
+					return SerializedResponse.ofJson(webService.handle(uri, request, response), HTMLConstants.JSON_CONTENT_TYPE);
+				}
+			} else {
+				exposeRoute(request, asyncWebRoute, uri);
+				final RouteTable.AsyncWebService asyncWebService = asyncWebRoute.getService();
+				final CompletableFuture<JsonObject> future = asyncWebService.service().handle(uri, request, response);
+				try {
+					return SerializedResponse.ofJson(future.get(asyncWebService.timeout_ms(), TimeUnit.MILLISECONDS),
+							HTMLConstants.JSON_CONTENT_TYPE);
+				} catch(TimeoutException e) {
+					future.cancel(true);
+					LOG.log(Level.WARNING, String.format("No response after %d ms: %s", asyncWebService.timeout_ms(), uri));
+					response.setStatus(504);
+					return SerializedResponse.of(new byte[0], HTMLConstants.JSON_CONTENT_TYPE);
+				} catch(ExecutionException e) {
+					throw e.getCause() instanceof Exception cause ? cause : e;
+				}
+			}
+		} finally {
+			admission.release();
+		}
+	}
+
+	/**
+	 * Executes the calls of a batch request concurrently: [{"source":"/table","params":{"key":"value"},"etag":"\"...\""}, ...]. The
+	 * results are written as one JSON array once all of them are known, in the order of the calls:
+	 * [{"source":"/table","status":200,"etag":"\"...\"","body":{...}}, ...].
+	 */
+	private void respondToBatch(Request request, HttpServletResponse response) throws IOException {
+		final JSONArray json;
+		try {
+			json = new JSONArray(RequestReader.getPostContent(request));
+		} catch(JSONException e) {
+			LOG.log(Level.WARNING, String.format("Malformed batch request: %s", e.getMessage()));
+			response.setStatus(400);
+			request.setHandled(true);
+			m_metrics.countError();
+			return;
+		}
+		if(json.length() > BATCH_MAX_CALLS) {
+			LOG.log(Level.WARNING, String.format("Batch request rejected, %d calls for %d at most", json.length(), BATCH_MAX_CALLS));
+			response.setStatus(413);
+			request.setHandled(true);
+			m_metrics.countError();
+			return;
+		}
+
+		final List<String> sources = new ArrayList<>();
+		final List<ServiceCall> calls = new ArrayList<>();
+		final ServiceCall.Origin origin = ServiceCall.Origin.of(request);
+		for(int i = 0; i < json.length(); i++) {
+			if(!(json.opt(i) instanceof JSONObject item) || !(item.opt("source") instanceof String source) || !source.startsWith("/")) {
+				LOG.log(Level.WARNING, String.format("Malformed batch request, no source path for call %d", i));
+				response.setStatus(400);
+				request.setHandled(true);
+				m_metrics.countError();
+				return;
+			}
+			sources.add(source);
+			calls.add(ServiceCall.of(source, item, origin));
+		}
+
+		// The first call is executed by the current thread while the others are executed in parallel
+		final long deadline_ms = System.currentTimeMillis() + BATCH_TIMEOUT_ms;
+		final Executor executor = m_requestExecutor != null ? m_requestExecutor : m_batchExecutor;
+		final List<CompletableFuture<SerializedResponse>> others = calls.stream().skip(1)
+				.map((call) -> CompletableFuture.supplyAsync(() -> callInBatch(call), executor))
+				.toList();
+		final List<SerializedResponse> results = new ArrayList<>();
+		final boolean[] timedOut = new boolean[calls.size()];
+		if(!calls.isEmpty()) {
+			results.add(callInBatch(calls.get(0)));
+		}
+		for(int i = 0; i < others.size(); i++) {
+			try {
+				results.add(others.get(i).get(Math.max(0, deadline_ms - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+			} catch(TimeoutException | InterruptedException | ExecutionException e) {
+				if(e instanceof InterruptedException) {
+					Thread.currentThread().interrupt();
+				}
+				LOG.log(Level.WARNING, String.format("Batch call abandoned after %d ms: %s", BATCH_TIMEOUT_ms, sources.get(i + 1)));
+				others.get(i).cancel(false);
+				timedOut[i + 1] = true;
+				results.add(null);
+			}
+		}
+
+		final StringBuilder content = new StringBuilder("[");
+		for(int i = 0; i < calls.size(); i++) {
+			if(i > 0) {
+				content.append(',');
+			}
+			content.append("{\"source\":").append(JSONObject.quote(sources.get(i))).append(',');
+			if(timedOut[i]) {
+				content.append("\"status\":504"); // the late reply of the call is ignored
+			} else {
+				calls.get(i).appendReply(content, results.get(i));
+			}
+			content.append('}');
+		}
+		content.append(']');
+
+		final byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+		response.setContentType(HTMLConstants.JSON_CONTENT_TYPE);
+		response.setStatus(200);
+		response.setContentLength(bytes.length);
+		response.getOutputStream().write(bytes);
+		request.setHandled(true);
+		m_metrics.countSuccess();
+	}
+
+	/**
+	 * @return Null when the call failed, the status of the call is set accordingly.
+	 */
+	private SerializedResponse callInBatch(ServiceCall call) {
+		try {
+			return callAndRecord(call, null);
+		} catch(Throwable t) {
+			LOG.log(Level.SEVERE, t.getMessage(), t);
+			call.getResponse().setStatus(500);
+			return null;
+		}
+	}
+
+	private SerializedResponse rejectCall(ServiceCall call) {
+		LOG.log(Level.WARNING, String.format("Request rejected, too many concurrent requests: %s", call.getPath()));
+		call.getResponse().setStatus(503);
+		m_rejectedRequests.increment();
+		return SerializedResponse.of(new byte[0], HTMLConstants.JSON_CONTENT_TYPE);
+	}
+
+	private boolean isRegistered(RefreshAheadService service) {
+		final PathRouter.Route<TUIWebService> route = m_routes.get().getWebServices().get(service.getPath());
+		return route != null && route.getService() == service;
+	}
+
+	/**
+	 * @param path Exact path or template, see {@link #registerWebService(String, TUIWebService)}.
+	 */
 	public void registerPageService(@NotNull String path, TUIPageService service) {
-		m_pageServices.put(path, service);
+		updateRoutes((routes) -> routes.withPageService(path, service));
 	}
 
+	/**
+	 * The stylesheet is generated once, when the backend starts or when this method is called. Further changes made to the style
+	 * object are not reflected until it is set again.
+	 */
 	public void setStyle(Style style) {
 		m_style = style;
+		if(m_styleAsset != null) {
+			loadStyleAsset();
+		}
+	}
+
+	/**
+	 * @param path Path of a static asset of the backend, like {@link #PATH_TO_SCRIPT}.
+	 * @return The path under which the current content of the asset is served with an immutable cache policy, prefixed with the
+	 * context path of the backend, null when the backend is not started or the path is not the one of an asset.
+	 */
+	public String getHashedPath(String path) {
+		final StaticAsset asset = m_assets.get(path);
+		return asset == null ? null : m_contextPath + asset.getHashedPath();
+	}
+
+	private void loadAssets() throws IOException {
+		m_scriptAsset = StaticAsset.fromResource(PATH_TO_SCRIPT, "js/tui.js", HTMLConstants.JAVASCRIPT_CONTENT_TYPE);
+		m_faviconAsset = StaticAsset.fromResource(PATH_TO_FAVICON, "favicon.ico", HTMLConstants.FAVICON_CONTENT_TYPE);
+		loadStyleAsset();
+	}
+
+	private synchronized void loadStyleAsset() {
+		m_styleAsset = new StaticAsset(PATH_TO_CSS, HTMLConstants.CSS_CONTENT_TYPE, m_style.toCSS().getBytes(StandardCharsets.UTF_8));
+		final Map<String, StaticAsset> assets = new HashMap<>();
+		for(StaticAsset asset : List.of(m_scriptAsset, m_faviconAsset, m_styleAsset)) {
+			assets.put(asset.getPath(), asset);
+			assets.put(asset.getHashedPath(), asset);
+		}
+		m_assets = Map.copyOf(assets);
 	}
 
 	public void registerFileService(String path, TUIFileService service) {
-		m_fileServices.put(path, service);
+		updateRoutes((routes) -> routes.withFileService(path, service));
 	}
 
+	/**
+	 * The content is kept in a direct buffer. It is served with 'Content-Length', validators for conditional requests and byte
+	 * ranges support.
+	 */
 	public void registerResourceService(String path, byte[] content, String contentType) {
-		m_fileServices.put(path, (uri, request, response) -> {
-			try(InputStream input = new ByteArrayInputStream(content)) {
-				try(OutputStream out = response.getOutputStream()) {
-					input.transferTo(out);
-				}
-			}
-			response.setContentType(contentType);
-		});
+		registerFileService(path, FileResource.of(content, contentType));
 	}
 
+
+	/**
+	 * The file is read on each request, so that changes are served. Responses carry 'Content-Length', 'Last-Modified' and 'ETag',
+	 * conditional requests are answered with 304 and byte ranges with 206.
+	 */
 	public void registerFileService(String path, File file, String contentType) {
-		m_fileServices.put(path, (uri, request, response) -> {
-			try(InputStream input = new FileInputStream(file)) {
-				try(OutputStream out = response.getOutputStream()) {
-					input.transferTo(out);
-				}
-			}
-			response.setContentType(contentType);
-		});
+		registerFileService(path, FileResource.of(file, contentType));
 	}
 
+	/**
+	 * The resource is read once, at registration, and served like {@link #registerResourceService(String, byte[], String)}. When it
+	 * cannot be found, the path is answered with 404.
+	 */
 	public void registerResourceFileService(String path, String resourcePath, String contentType) {
-		m_fileServices.put(path, (uri, request, response) -> {
-			try(InputStream input = ClassLoader.getSystemClassLoader().getResourceAsStream(resourcePath)) {
-				try(OutputStream out = response.getOutputStream()) {
-					assert input != null;
-					input.transferTo(out);
-				}
+		try(InputStream input = ClassLoader.getSystemClassLoader().getResourceAsStream(resourcePath)) {
+			if(input == null) {
+				LOG.log(Level.WARNING, String.format("Resource not found: %s", resourcePath));
+				registerFileService(path, (uri, request, response) -> response.setStatus(404));
+			} else {
+				registerResourceService(path, input.readAllBytes(), contentType);
 			}
-			response.setContentType(contentType);
-		});
+		} catch(IOException e) {
+			throw new UIConfigurationException("Could not read resource %s: %s", resourcePath, e.getMessage());
+		}
+	}
+
+
+	/**
+	 * Applies several registrations and unregistrations at once, for example:
+	 * <pre>backend.updateRoutes((routes) -> routes.withPageService("/a", serviceA).without("/b"));</pre>
+	 * The new table replaces the current one atomically: requests are served by either the whole previous table or the whole new one.
+	 *
+	 * @param update Must not have side effects, because it may be called again when another update is concurrently applied.
+	 * @return The new table.
+	 */
+	public RouteTable updateRoutes(UnaryOperator<RouteTable> update) {
+		RouteTable previous;
+		RouteTable result;
+		do {
+			previous = m_routes.get();
+			final RouteTable updated = update.apply(previous);
+			result = updated == previous ? previous : updated.withVersion(previous.getVersion() + 1);
+		} while(!m_routes.compareAndSet(previous, result));
+		if(result != previous) {
+			// Cached responses of the replaced or removed services are no longer valid, the others are kept
+			for(String template : result.getReplacedTemplates(previous)) {
+				m_responseCache.invalidateRoute(template);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Changes the options of the route, for example:
+	 * <pre>backend.configureRoute("/export/{id}", (options) -> options.withCompression(false));</pre>
+	 *
+	 * @param path The options apply to all requested paths that match this template, whatever the service that handles them.
+	 */
+	public void configureRoute(String path, UnaryOperator<RouteOptions> update) {
+		updateRoutes((routes) -> routes.withOptions(path, update.apply(routes.getOptions(path))));
+	}
+
+	/**
+	 * Removes cached responses (see {@link RouteOptions#withCache(int, long)}), typically after a form submission has changed the data
+	 * they were computed from.
+	 *
+	 * @param pathOrTemplate The template of a cached route, to remove all its responses, or a requested path, to remove its responses
+	 *                       for all parameters.
+	 * @return The number of removed responses.
+	 */
+	public int invalidateCache(String pathOrTemplate) {
+		return m_responseCache.invalidate(pathOrTemplate);
+	}
+
+	public long getCacheHits() {
+		return m_responseCache.getHits();
+	}
+
+	public long getCacheMisses() {
+		return m_responseCache.getMisses();
+	}
+
+	public long getCacheEvictions() {
+		return m_responseCache.getEvictions();
+	}
+
+	public int getCacheSize() {
+		return m_responseCache.size();
+	}
+
+	/**
+	 * @return The number of web service calls that have received the response computed for an identical concurrent call, see
+	 * {@link RouteOptions#withCoalescing(boolean)}.
+	 */
+	public long getCoalescedCalls() {
+		return m_coalescer.getCoalescedCalls();
+	}
+
+	/**
+	 * Removes the service registered with the given path, whatever its type.
+	 */
+	public void unregister(String path) {
+		updateRoutes((routes) -> routes.without(path));
+	}
+
+	/**
+	 * Removes all the cached responses.
+	 */
+	public void invalidateCache() {
+		m_responseCache.invalidateAll();
+	}
+
+	/**
+	 * @return The current snapshot of the routes.
+	 */
+	public RouteTable getRoutes() {
+		return m_routes.get();
 	}
 
 	public void registerPage(Page page) {
@@ -0,0 +1,52 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+/**
+ * A long-running action submitted to the {@link TUIJobService}. It runs on a background thread, reports its progress, and gives the
+ * artifact that the user downloads once it is done.
+ */
+public interface TUIJob {
+
+	/**
+	 * Given to the running job, which updates it while working.
+	 */
+	interface Progress {
+
+		/**
+		 * @param percent Between 0 and 100, values out of this range are bounded.
+		 */
+		void update(int percent, String message);
+
+		/**
+		 * Jobs that take long should check this regularly and stop when true: their result would not be served anyway.
+		 */
+		boolean isCancelled();
+	}
+
+	/**
+	 * The artifact served at the job's result path.
+	 *
+	 * @param fileName Optional name proposed to the browser when downloading.
+	 */
+	record Result(byte[] content, String contentType, String fileName) {
+	}
+
+	/**
+	 * @return The artifact to be served, or null when the job produces no artifact.
+	 */
+	Result run(Progress progress) throws Exception;
+}
@@ -0,0 +1,399 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import tui.ui.UIConfigurationException;
+import tui.ui.components.ProgressBar;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs {@link TUIJob}s on a bounded pool of background threads, so that long actions do not hold a request. Each submitted job gets
+ * an id, with which its status is read as a {@link ProgressBar} and its result is downloaded. Finished jobs, and their result, are
+ * kept for a time-to-live, then evicted.
+ * <p>
+ * The service of a backend is given by {@link TUIBackend#getJobService()}, which serves the status and the result of the jobs.
+ */
+public class TUIJobService {
+
+	private static final Logger LOG = Logger.getLogger(TUIJobService.class.getSimpleName());
+
+	public static final int DEFAULT_THREADS = 2;
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+	public static final long DEFAULT_RESULT_TTL_ms = 10 * 60_000;
+	static final String RESULT_SUFFIX = "/result";
+
+	public enum State {
+		QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+		public boolean isDone() {
+			return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+		}
+	}
+
+	public record Status(String id, State state, int percent, String message) {
+	}
+
+	private static class Job implements TUIJob.Progress {
+
+		private final String m_id;
+		private State m_state = State.QUEUED;
+		private int m_percent = 0;
+		private String m_message = "";
+		private TUIJob.Result m_result = null;
+		private FileResource m_resource = null; // served result
+		private long m_doneAt_ms = 0;
+		private volatile Future<?> m_future = null;
+
+		Job(String id) {
+			m_id = id;
+		}
+
+		@Override
+		public synchronized void update(int percent, String message) {
+			m_percent = Math.max(0, Math.min(ProgressBar.MAX_VALUE, percent));
+			m_message = message == null ? "" : message;
+		}
+
+		@Override
+		public synchronized boolean isCancelled() {
+			return m_state == State.CANCELLED || Thread.currentThread().isInterrupted();
+		}
+
+		/**
+		 * @return False when the job has been cancelled while queued.
+		 */
+		synchronized boolean start() {
+			if(m_state != State.QUEUED) {
+				return false;
+			}
+			m_state = State.RUNNING;
+			return true;
+		}
+
+		synchronized void finish(State state, String message, TUIJob.Result result) {
+			if(m_state.isDone()) {
+				return;
+			}
+			m_state = state;
+			if(message != null) {
+				m_message = message;
+			}
+			if(state == State.SUCCEEDED) {
+				m_percent = ProgressBar.MAX_VALUE;
+				if(result != null) {
+					m_result = result;
+					m_resource = FileResource.of(result.content(), result.contentType());
+				}
+			}
+			m_doneAt_ms = System.currentTimeMillis();
+		}
+
+		synchronized Status getStatus() {
+			return new Status(m_id, m_state, m_percent, m_message);
+		}
+
+		synchronized boolean isExpired(long now_ms, long ttl_ms) {
+			return m_state.isDone() && now_ms - m_doneAt_ms > ttl_ms;
+		}
+	}
+
+	private final String m_pathPrefix;
+	private final Map<String, Job> m_jobs = new ConcurrentHashMap<>();
+	private int m_threads = DEFAULT_THREADS;
+	private int m_queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	private volatile long m_resultTTL_ms = DEFAULT_RESULT_TTL_ms;
+	private ThreadPoolExecutor m_executor = null;
+	private final LongAdder m_submittedJobs = new LongAdder();
+	private final LongAdder m_rejectedJobs = new LongAdder();
+	private final LongAdder m_evictedJobs = new LongAdder();
+
+	/**
+	 * @param pathPrefix The status of a job is served at '{pathPrefix}/{id}', its result at '{pathPrefix}/{id}/result'.
+	 */
+	TUIJobService(String pathPrefix) {
+		m_pathPrefix = pathPrefix;
+	}
+
+	/**
+	 * @param threads       Number of jobs that run at the same time.
+	 * @param queueCapacity Number of jobs that wait for a thread. Further submissions are rejected.
+	 */
+	public synchronized void setLimits(int threads, int queueCapacity) {
+		if(threads < 1) {
+			throw new UIConfigurationException("Job threads must be at least 1: %d", threads);
+		}
+		if(queueCapacity < 0) {
+			throw new UIConfigurationException("Job queue capacity must not be negative: %d", queueCapacity);
+		}
+		if(m_executor != null) {
+			throw new UIConfigurationException("Job limits must be set before the first job is submitted");
+		}
+		m_threads = threads;
+		m_queueCapacity = queueCapacity;
+	}
+
+	public synchronized int getThreads() {
+		return m_threads;
+	}
+
+	public synchronized int getQueueCapacity() {
+		return m_queueCapacity;
+	}
+
+	/**
+	 * @param ttl_ms Time during which a finished job can still be read, and its result downloaded.
+	 */
+	public void setResultTTL_ms(long ttl_ms) {
+		if(ttl_ms < 0) {
+			throw new UIConfigurationException("Job result TTL must not be negative: %d", ttl_ms);
+		}
+		m_resultTTL_ms = ttl_ms;
+	}
+
+	public long getResultTTL_ms() {
+		return m_resultTTL_ms;
+	}
+
+	/**
+	 * @return The id of the job, which gives its status and result.
+	 * @throws RejectedExecutionException When all threads are busy and the queue is full. A web service that lets this exception go
+	 *                                    is answered with 503.
+	 */
+	public String submit(TUIJob job) {
+		evictExpired();
+		final Job entry = new Job(UUID.randomUUID().toString());
+		m_jobs.put(entry.m_id, entry);
+		try {
+			entry.m_future = getExecutor().submit(() -> run(entry, job));
+		} catch(RejectedExecutionException e) {
+			m_jobs.remove(entry.m_id);
+			m_rejectedJobs.increment();
+			LOG.log(Level.WARNING, String.format("Job rejected, %d jobs are running and the queue is full", m_threads));
+			throw e;
+		}
+		m_submittedJobs.increment();
+		return entry.m_id;
+	}
+
+	private void run(Job entry, TUIJob job) {
+		if(!entry.start()) {
+			return;
+		}
+		try {
+			final TUIJob.Result result = job.run(entry);
+			entry.finish(State.SUCCEEDED, null, result);
+		} catch(Throwable t) {
+			if(entry.isCancelled()) {
+				entry.finish(State.CANCELLED, "Cancelled", null);
+			} else {
+				LOG.log(Level.SEVERE, String.format("Job %s failed: %s", entry.m_id, t.getMessage()), t);
+				entry.finish(State.FAILED, t.getMessage(), null);
+			}
+		}
+	}
+
+	/**
+	 * @return The status of the job, or null when it is unknown or has been evicted.
+	 */
+	public Status getStatus(String id) {
+		final Job job = getJob(id);
+		return job == null ? null : job.getStatus();
+	}
+
+	/**
+	 * A queued job will not run. A running job is interrupted, and should stop when {@link TUIJob.Progress#isCancelled()}.
+	 *
+	 * @return False when the job is unknown or already done.
+	 */
+	public boolean cancel(String id) {
+		final Job job = getJob(id);
+		if(job == null) {
+			return false;
+		}
+		synchronized(job) {
+			if(job.m_state.isDone()) {
+				return false;
+			}
+			job.finish(State.CANCELLED, "Cancelled", null);
+		}
+		final Future<?> future = job.m_future;
+		if(future != null) {
+			future.cancel(true);
+		}
+		return true;
+	}
+
+	public String getStatusPath(String id) {
+		return m_pathPrefix + "/" + id;
+	}
+
+	public String getResultPath(String id) {
+		return getStatusPath(id) + RESULT_SUFFIX;
+	}
+
+	/**
+	 * @return A component that shows the current status of the job, and that polls it until the job is done. Null when the job is
+	 * unknown or has been evicted.
+	 */
+	public ProgressBar newProgressBar(String id) {
+		final Job job = getJob(id);
+		if(job == null) {
+			return null;
+		}
+		final ProgressBar result = new ProgressBar();
+		result.setSource(getStatusPath(id));
+		synchronized(job) {
+			switch(job.m_state) {
+				case QUEUED, RUNNING -> result.setProgress(job.m_percent, job.m_message)
+						.setPollPeriod_ms(ProgressBar.DEFAULT_POLL_PERIOD_ms);
+				case SUCCEEDED -> {
+					result.setProgress(job.m_percent, job.m_message);
+					if(job.m_result != null) {
+						result.setResultLink(getResultPath(id), job.m_result.fileName());
+					}
+				}
+				case FAILED, CANCELLED -> result.setProgress(job.m_percent, null).setFailed(job.m_message);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return The artifact of the job, or null when the job is unknown, not successfully done, has no result or has been evicted.
+	 */
+	FileResource getResource(String id) {
+		final Job job = getJob(id);
+		if(job == null) {
+			return null;
+		}
+		synchronized(job) {
+			return job.m_resource;
+		}
+	}
+
+	String getResultFileName(String id) {
+		final Job job = getJob(id);
+		if(job == null) {
+			return null;
+		}
+		synchronized(job) {
+			return job.m_result == null ? null : job.m_result.fileName();
+		}
+	}
+
+	private Job getJob(String id) {
+		final Job result = m_jobs.get(id);
+		if(result != null && result.isExpired(System.currentTimeMillis(), m_resultTTL_ms)) {
+			if(m_jobs.remove(id, result)) {
+				m_evictedJobs.increment();
+			}
+			return null;
+		}
+		return result;
+	}
+
+	/**
+	 * Finished jobs are evicted lazily: when they are read after their TTL, and at each submission.
+	 */
+	int evictExpired() {
+		final long now_ms = System.currentTimeMillis();
+		final long ttl_ms = m_resultTTL_ms;
+		int result = 0;
+		for(Iterator<Job> iterator = m_jobs.values().iterator(); iterator.hasNext(); ) {
+			if(iterator.next().isExpired(now_ms, ttl_ms)) {
+				iterator.remove();
+				result++;
+			}
+		}
+		m_evictedJobs.add(result);
+		return result;
+	}
+
+	public int getJobs() {
+		return m_jobs.size();
+	}
+
+	public long getSubmittedJobs() {
+		return m_submittedJobs.sum();
+	}
+
+	public long getRejectedJobs() {
+		return m_rejectedJobs.sum();
+	}
+
+	public long getEvictedJobs() {
+		return m_evictedJobs.sum();
+	}
+
+	private synchronized ThreadPoolExecutor getExecutor() {
+		if(m_executor == null) {
+			final AtomicInteger threadCount = new AtomicInteger();
+			final BlockingQueue<Runnable> queue = m_queueCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(m_queueCapacity);
+			final ThreadPoolExecutor executor = new ThreadPoolExecutor(m_threads, m_threads, 60, TimeUnit.SECONDS, queue, (runnable) -> {
+				final Thread result = new Thread(runnable, "tui-jobs-" + threadCount.incrementAndGet());
+				result.setDaemon(true);
+				return result;
+			});
+			executor.allowCoreThreadTimeOut(true);
+			m_executor = executor;
+		}
+		return m_executor;
+	}
+
+	/**
+	 * Lets the queued and running jobs finish. Jobs submitted meanwhile get a new executor.
+	 *
+	 * @return False when jobs are still running after the timeout, they are then interrupted.
+	 */
+	boolean drain(long timeout_ms) throws InterruptedException {
+		final ThreadPoolExecutor executor;
+		synchronized(this) {
+			executor = m_executor;
+			m_executor = null;
+		}
+		if(executor == null) {
+			return true;
+		}
+		executor.shutdown();
+		if(executor.awaitTermination(timeout_ms, TimeUnit.MILLISECONDS)) {
+			return true;
+		}
+		executor.shutdownNow();
+		return false;
+	}
+
+	synchronized void stop() {
+		if(m_executor != null) {
+			m_executor.shutdownNow();
+			m_executor = null;
+		}
+	}
+}
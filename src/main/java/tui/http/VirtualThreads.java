@@ -0,0 +1,64 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import tui.ui.UIConfigurationException;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Gives access to virtual threads through reflection, because the library is still compiled for Java 17.
+ */
+class VirtualThreads {
+
+	static final String PROPERTY_SCHEDULER_PARALLELISM = "jdk.virtualThreadScheduler.parallelism";
+
+	static boolean isSupported() {
+		return getFactoryMethod() != null;
+	}
+
+	/**
+	 * @return An executor that starts a new virtual thread for each task.
+	 */
+	static ExecutorService newRequestExecutor() {
+		final Method factory = getFactoryMethod();
+		if(factory == null) {
+			throw new UIConfigurationException("Virtual threads are not supported by this JVM (Java 21+ is required)");
+		}
+		try {
+			return (ExecutorService) factory.invoke(null);
+		} catch(ReflectiveOperationException e) {
+			throw new UIConfigurationException("Unable to create the virtual threads executor: %s", e.getMessage());
+		}
+	}
+
+	/**
+	 * @return The number of platform threads that run the virtual threads, see {@link #PROPERTY_SCHEDULER_PARALLELISM}.
+	 */
+	static int getCarrierThreads() {
+		return Integer.getInteger(PROPERTY_SCHEDULER_PARALLELISM, Runtime.getRuntime().availableProcessors());
+	}
+
+	private static Method getFactoryMethod() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch(NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
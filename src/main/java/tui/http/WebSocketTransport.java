@@ -0,0 +1,259 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WebSocketListener;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.server.WebSocketHandler;
+import org.eclipse.jetty.websocket.servlet.ServletUpgradeRequest;
+import org.eclipse.jetty.websocket.servlet.ServletUpgradeResponse;
+import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
+import org.json.JSONObject;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Multiplexes the calls to web services of a page over a single WebSocket connection, instead of one HTTP request per component
+ * refresh.
+ * <p>
+ * Each text frame from the client is a call: {"id":1,"path":"/table","params":{"key":"value"},"etag":"\"...\""}. Each call is answered,
+ * in any order, with the same correlation id: {"id":1,"status":200,"etag":"\"...\"","body":{...}}. The body is omitted when the status
+ * is not 200, 304 is answered when the etag of the call matches.
+ * <p>
+ * Only the upgrade requests at {@link TUIBackend#PATH_TO_WEBSOCKET} are handled, other requests are passed to the wrapped handler.
+ * Upgrades are refused when the page comes from another site (its 'Origin' is neither the server nor an allowed origin), and while
+ * the backend is draining, when the calls of the open connections are answered with 503. A connection has
+ * {@link #MAX_CALLS_PER_SESSION} calls in progress at most, the others are answered with 429.
+ */
+class WebSocketTransport extends WebSocketHandler {
+
+	private static final Logger LOG = Logger.getLogger(WebSocketTransport.class.getSimpleName());
+
+	static final long IDLE_TIMEOUT_ms = 5 * 60_000L;
+	static final int MAX_CALLS_PER_SESSION = 32;
+
+	interface Caller {
+		SerializedResponse call(ServiceCall call) throws Exception;
+	}
+
+	private final Caller m_caller;
+	private final Supplier<Executor> m_executorSupplier;
+	private final BooleanSupplier m_draining;
+	private final Set<String> m_allowedOrigins;
+	private final AtomicInteger m_sessions = new AtomicInteger(0);
+	private final LongAdder m_calls = new LongAdder();
+	private final LongAdder m_refusedUpgrades = new LongAdder();
+
+	/**
+	 * @param executorSupplier Gives the executor on which calls are run, so that frames of a connection are answered concurrently.
+	 * @param allowedOrigins   Origins of the pages served by other sites, like 'https://example.com', that may connect.
+	 */
+	WebSocketTransport(Caller caller, Supplier<Executor> executorSupplier, BooleanSupplier draining, Set<String> allowedOrigins) {
+		m_caller = caller;
+		m_executorSupplier = executorSupplier;
+		m_draining = draining;
+		m_allowedOrigins = allowedOrigins;
+	}
+
+	@Override
+	public void configure(WebSocketServletFactory factory) {
+		factory.getPolicy().setIdleTimeout(IDLE_TIMEOUT_ms);
+		factory.setCreator(this::createConnection);
+	}
+
+	/**
+	 * @return Null when the upgrade is refused, the response is then committed.
+	 */
+	private Connection createConnection(ServletUpgradeRequest request, ServletUpgradeResponse response) {
+		try {
+			if(!isAllowedOrigin(request.getOrigin(), request.getHttpServletRequest())) {
+				LOG.log(Level.WARNING, String.format("WebSocket upgrade refused, foreign origin: %s", request.getOrigin()));
+				m_refusedUpgrades.increment();
+				response.sendForbidden("Origin not allowed");
+				return null;
+			}
+			if(m_draining.getAsBoolean()) {
+				m_refusedUpgrades.increment();
+				response.sendError(503, "The backend is draining");
+				return null;
+			}
+		} catch(IOException e) {
+			LOG.log(Level.FINE, String.format("WebSocket upgrade not answered: %s", e.getMessage()));
+			return null;
+		}
+		return new Connection(ServiceCall.Origin.of(request.getHttpServletRequest()));
+	}
+
+	/**
+	 * Browsers always send the origin of the page that opens the connection: a page of another site must not call the web services
+	 * with the cookies of the user. Clients that are not browsers send no origin.
+	 */
+	boolean isAllowedOrigin(String origin, HttpServletRequest request) {
+		if(origin == null || m_allowedOrigins.contains(origin)) {
+			return true;
+		}
+		try {
+			final URI uri = URI.create(origin);
+			if(uri.getHost() == null) {
+				return false;
+			}
+			final int port = uri.getPort() != -1 ? uri.getPort() : "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+			return uri.getHost().equalsIgnoreCase(request.getServerName()) && port == request.getServerPort();
+		} catch(IllegalArgumentException e) {
+			return false; // 'null' origin of sandboxed pages, for example
+		}
+	}
+
+	@Override
+	public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+			throws IOException, javax.servlet.ServletException {
+		if(TUIBackend.PATH_TO_WEBSOCKET.equals(TUIBackend.getPath(baseRequest))) {
+			super.handle(target, baseRequest, request, response);
+		} else if(getHandler() != null) {
+			getHandler().handle(target, baseRequest, request, response);
+		}
+	}
+
+	int getSessions() {
+		return m_sessions.get();
+	}
+
+	long getCalls() {
+		return m_calls.sum();
+	}
+
+	long getRefusedUpgrades() {
+		return m_refusedUpgrades.sum();
+	}
+
+	private class Connection implements WebSocketListener {
+
+		private final ServiceCall.Origin m_origin;
+		private volatile Session m_session;
+		private final AtomicInteger m_pendingCalls = new AtomicInteger(0);
+
+		Connection(ServiceCall.Origin origin) {
+			m_origin = origin;
+		}
+
+		@Override
+		public void onWebSocketConnect(Session session) {
+			m_session = session;
+			m_sessions.incrementAndGet();
+		}
+
+		@Override
+		public void onWebSocketClose(int statusCode, String reason) {
+			m_sessions.decrementAndGet();
+			m_session = null;
+		}
+
+		@Override
+		public void onWebSocketError(Throwable cause) {
+			LOG.log(Level.FINE, String.format("WebSocket error: %s", cause.getMessage()));
+		}
+
+		@Override
+		public void onWebSocketBinary(byte[] payload, int offset, int len) {
+			LOG.log(Level.WARNING, "Binary WebSocket frames are not supported");
+		}
+
+		@Override
+		public void onWebSocketText(String message) {
+			final long id;
+			final ServiceCall call;
+			try {
+				final JSONObject json = new JSONObject(message);
+				id = json.getLong("id");
+				call = ServiceCall.of(json.getString("path"), json, m_origin);
+			} catch(Exception e) {
+				LOG.log(Level.WARNING, String.format("Malformed WebSocket call: %s", message));
+				return;
+			}
+			m_calls.increment();
+			if(m_draining.getAsBoolean()) {
+				call.getResponse().setStatus(503);
+				reply(id, call, null);
+				return;
+			}
+			if(m_pendingCalls.incrementAndGet() > MAX_CALLS_PER_SESSION) {
+				m_pendingCalls.decrementAndGet();
+				call.getResponse().setStatus(429);
+				reply(id, call, null);
+				return;
+			}
+			final Executor executor = m_executorSupplier.get(); // null once the backend is stopped
+			try {
+				if(executor == null) {
+					throw new RejectedExecutionException("The backend is stopped");
+				}
+				executor.execute(() -> send(id, call));
+			} catch(RejectedExecutionException e) {
+				m_pendingCalls.decrementAndGet();
+				call.getResponse().setStatus(503);
+				reply(id, call, null);
+			}
+		}
+
+		private void send(long id, ServiceCall call) {
+			SerializedResponse serialized = null;
+			try {
+				serialized = m_caller.call(call);
+			} catch(Throwable t) {
+				LOG.log(Level.SEVERE, t.getMessage(), t);
+				call.getResponse().setStatus(500);
+			} finally {
+				m_pendingCalls.decrementAndGet();
+			}
+			reply(id, call, serialized);
+		}
+
+		private void reply(long id, ServiceCall call, SerializedResponse serialized) {
+			final Session session = m_session;
+			if(session == null || !session.isOpen()) {
+				return; // the page has been closed meanwhile
+			}
+			final StringBuilder frame = new StringBuilder();
+			frame.append("{\"id\":").append(id).append(',');
+			call.appendReply(frame, serialized);
+			frame.append('}');
+			session.getRemote().sendString(frame.toString(), new WriteCallback() {
+				@Override
+				public void writeFailed(Throwable x) {
+					LOG.log(Level.FINE, String.format("WebSocket reply %d not sent: %s", id, x.getMessage()));
+				}
+
+				@Override
+				public void writeSuccess() {
+				}
+			});
+		}
+	}
+}
@@ -15,6 +15,7 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package tui.json;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -91,25 +92,28 @@ public class JsonArray extends JsonObject {
 
 	@Override
 	public String toJson() {
-		final StringBuilder result = new StringBuilder();
-		result.append("[");
-		endOfTag(result);
+		return writeJsonToString();
+	}
+
+	@Override
+	public void writeJson(Appendable out) throws IOException {
+		out.append("[");
+		endOfTag(out);
 		final Iterator<JsonObject> iterator = m_items.iterator();
 		while(iterator.hasNext()) {
-			prettyPrintTab(result, 1);
+			prettyPrintTab(out, 1);
 			final JsonObject value = iterator.next();
 			if(value == null) {
-				result.append("\"\"");
+				out.append("\"\"");
 			} else {
-				result.append(String.format("%s", value.toJson()));
+				value.writeJson(out);
 			}
 			if(iterator.hasNext()) {
-				result.append(",");
+				out.append(",");
 			}
-			endOfTag(result);
+			endOfTag(out);
 		}
-		prettyPrintTab(result, 0).append("]");
-		return result.toString();
+		prettyPrintTab(out, 0).append("]");
 	}
 
 }
@@ -15,6 +15,7 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package tui.json;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -190,29 +191,32 @@ public class JsonMap extends JsonObject {
 
 	@Override
 	public String toJson() {
-		StringBuilder result = new StringBuilder();
-		result.append("{");
-		endOfTag(result);
+		return writeJsonToString();
+	}
+
+	@Override
+	public void writeJson(Appendable out) throws IOException {
+		out.append("{");
+		endOfTag(out);
 		if(m_type != null) {
-			prettyPrintTab(result, 1)
-					.append(String.format("\"type\": \"%s\",", m_type));
-			endOfTag(result);
+			prettyPrintTab(out, 1)
+					.append("\"type\": \"").append(m_type).append("\",");
+			endOfTag(out);
 		}
 
 		final Iterator<Map.Entry<String, JsonObject>> iterator = m_children.entrySet().iterator();
 		while(iterator.hasNext()) {
 			final Map.Entry<String, JsonObject> child = iterator.next();
-			prettyPrintTab(result, 1)
-					.append(String.format("\"%s\": ", child.getKey()));
-			result.append(child.getValue().toJson());
+			prettyPrintTab(out, 1)
+					.append("\"").append(child.getKey()).append("\": ");
+			child.getValue().writeJson(out);
 			if(iterator.hasNext()) {
-				result.append(",");
+				out.append(",");
 			}
-			endOfTag(result);
+			endOfTag(out);
 		}
 
-		result.append("}");
-		return result.toString();
+		out.append("}");
 	}
 
 }
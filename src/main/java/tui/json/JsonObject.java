@@ -15,6 +15,9 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package tui.json;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 public abstract class JsonObject {
 
 	public static boolean PRETTY_PRINT = false;
@@ -40,17 +43,37 @@ public abstract class JsonObject {
 		return m_type;
 	}
 
-	protected StringBuilder prettyPrintTab(StringBuilder builder, int relativeDepth) {
+	/**
+	 * Writes the same content as {@link #toJson()}, without building the whole string first.
+	 */
+	public void writeJson(Appendable out) throws IOException {
+		out.append(toJson());
+	}
+
+	protected Appendable prettyPrintTab(Appendable out, int relativeDepth) throws IOException {
 		if(PRETTY_PRINT) {
-			builder.append("  ".repeat(Math.max(0, m_prettyPrintDepth + relativeDepth)));
+			out.append("  ".repeat(Math.max(0, m_prettyPrintDepth + relativeDepth)));
 		}
-		return builder;
+		return out;
 	}
 
-	protected void endOfTag(StringBuilder result) {
+	protected void endOfTag(Appendable out) throws IOException {
 		if(PRETTY_PRINT) {
-			result.append("\n");
+			out.append("\n");
+		}
+	}
+
+	/**
+	 * Used by containers whose {@link #toJson()} is built upon {@link #writeJson(Appendable)}.
+	 */
+	protected String writeJsonToString() {
+		final StringBuilder result = new StringBuilder();
+		try {
+			writeJson(result);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e); // never happens with a StringBuilder
 		}
+		return result.toString();
 	}
 
 }
@@ -18,6 +18,7 @@ package tui.ui.components;
 import org.jetbrains.annotations.Nullable;
 import tui.html.HTMLConstants;
 import tui.html.HTMLNode;
+import tui.http.TUIBackend;
 import tui.json.JsonMap;
 import tui.ui.components.layout.Grid;
 import tui.ui.components.layout.Layouts;
@@ -57,6 +58,10 @@ public class Page {
 	protected final String m_title;
 	private String m_source;
 	private String m_favicon = "data:,"; // Avoids favicon to be requested
+	private String m_serverEventsSource = null; // No connection when null
+	private String m_webSocketSource = null; // Components are refreshed with HTTP requests when null
+	private String m_batchSource = null; // Refresh listeners are refreshed with one request each when null
+	private String m_cancelSource = null; // Pending requests are not cancelled when the page is left when null
 
 	public Page(String title) {
 		m_title = title;
@@ -99,6 +104,57 @@ public class Page {
 		m_favicon = source;
 	}
 
+	/**
+	 * The page subscribes to the backend's server-sent events, so that the backend can ask for components to be refreshed.
+	 */
+	public void enableServerEvents() {
+		enableServerEvents(TUIBackend.PATH_TO_SERVER_EVENTS);
+	}
+
+	public void enableServerEvents(String source) {
+		m_serverEventsSource = source;
+	}
+
+	/**
+	 * Makes the page refresh its components through a single WebSocket connection to the backend instead of one HTTP request per
+	 * refresh. Forms are still submitted with HTTP requests.
+	 * <p>
+	 * The web services see the session, cookies, user and headers of the request that opened the connection. They cannot read a
+	 * request body, create a session or call {@code isUserInRole}: the components whose services need it must be refreshed over HTTP.
+	 */
+	public void enableWebSocket() {
+		enableWebSocket(TUIBackend.PATH_TO_WEBSOCKET);
+	}
+
+	public void enableWebSocket(String source) {
+		m_webSocketSource = source;
+	}
+
+	/**
+	 * When a component has several refresh listeners, they are refreshed with a single request to the backend, and updated at once.
+	 * <p>
+	 * The web services see the session, cookies, user and headers of the batch request, with the same restrictions as
+	 * {@link #enableWebSocket()}.
+	 */
+	public void enableBatchRefresh() {
+		enableBatchRefresh(TUIBackend.PATH_TO_BATCH);
+	}
+
+	public void enableBatchRefresh(String source) {
+		m_batchSource = source;
+	}
+
+	/**
+	 * When the page is left, it notifies the backend so that its pending requests are cancelled.
+	 */
+	public void enableCancellation() {
+		enableCancellation(TUIBackend.PATH_TO_CANCEL);
+	}
+
+	public void enableCancellation(String source) {
+		m_cancelSource = source;
+	}
+
 	public <C extends UIComponent> C setHeader(C header) {
 		m_header = header;
 		return header;
@@ -131,6 +187,14 @@ public class Page {
 	}
 
 	public HTMLNode toHTMLNode(Resource cssResource, Resource scriptResource) {
+		return toHTMLNode(cssResource, scriptResource, "");
+	}
+
+	/**
+	 * @param contextPath The path under which the backend is mounted, empty when it is served at the root. Absolute paths of the page
+	 *                    are resolved against it by the script.
+	 */
+	public HTMLNode toHTMLNode(Resource cssResource, Resource scriptResource, String contextPath) {
 		final HTMLNode result = new HTMLNode("html");
 		result.setRoot(true);
 
@@ -139,7 +203,7 @@ public class Page {
 		head.createChild("meta").setAttribute("name", "viewport")
 				.setAttribute("content", "width=device-width, initial-scale=1");
 		head.createChild("title").setText(getTitle());
-		head.createChild("link").setAttribute("rel", "shortcut icon").setAttribute("href", m_favicon);
+		head.createChild("link").setAttribute("rel", "shortcut icon").setAttribute("href", m_favicon.startsWith("/") ? contextPath + m_favicon : m_favicon);
 		if(cssResource != null) {
 			if(cssResource.isExternal()) {
 				head.createChild("link")
@@ -155,6 +219,21 @@ public class Page {
 		script.setDecorateNewLineWithBR(false);
 		script.appendText(generateSessionParametersInitialization(SESSION_PARAMS_MAP_NAME, m_sessionParameters));
 		script.appendText("const FETCH_TYPE='%s';", m_fetchType.name());
+		if(!contextPath.isEmpty()) {
+			script.appendText("const CONTEXT_PATH='%s';", contextPath);
+		}
+		if(m_serverEventsSource != null) {
+			script.appendText("const SERVER_EVENTS_SOURCE='%s';", m_serverEventsSource);
+		}
+		if(m_webSocketSource != null) {
+			script.appendText("const WEBSOCKET_SOURCE='%s';", m_webSocketSource);
+		}
+		if(m_batchSource != null) {
+			script.appendText("const BATCH_SOURCE='%s';", m_batchSource);
+		}
+		if(m_cancelSource != null) {
+			script.appendText("const CANCEL_SOURCE='%s';", m_cancelSource);
+		}
 
 		if(scriptResource != null) {
 			if(scriptResource.isExternal()) {
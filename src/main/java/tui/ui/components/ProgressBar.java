@@ -0,0 +1,164 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.ui.components;
+
+import tui.html.HTMLNode;
+import tui.json.JsonMap;
+
+/**
+ * Shows the progress of a long-running action: a bar, a message and, once done, a link to download the result. When the component
+ * has a source and a poll period, the page refreshes it periodically until the poll period is removed.
+ */
+public class ProgressBar extends UIRefreshableComponent {
+
+	public static final String JSON_TYPE = "progress";
+
+	public static final String HTML_CLASS = "tui-progress";
+	public static final String HTML_CLASS_CONTAINER = "tui-container-progress";
+	public static final String HTML_CLASS_MESSAGE = "tui-progress-message";
+	public static final String HTML_CLASS_RESULT = "tui-progress-result";
+	public static final String HTML_CLASS_FAILED = "tui-progress-failed";
+	public static final String HTML_ATTRIBUTE_POLL_PERIOD = "tui-poll-period";
+	public static final String ATTRIBUTE_VALUE = "value";
+	public static final String ATTRIBUTE_MESSAGE = "message";
+	public static final String ATTRIBUTE_FAILED = "failed";
+	public static final String ATTRIBUTE_RESULT_LINK = "resultLink";
+	public static final String ATTRIBUTE_RESULT_LABEL = "resultLabel";
+	public static final String ATTRIBUTE_POLL_PERIOD = "pollPeriod";
+
+	public static final int MAX_VALUE = 100;
+	public static final long DEFAULT_POLL_PERIOD_ms = 1_000;
+
+	private int m_percent = 0;
+	private String m_message = "";
+	private boolean m_failed = false;
+	private String m_resultLink = null;
+	private String m_resultLabel = null;
+	private long m_pollPeriod_ms = 0; // not polled when 0
+
+	public ProgressBar() {
+	}
+
+	/**
+	 * @param percent Between 0 and 100, values out of this range are bounded.
+	 */
+	public ProgressBar setProgress(int percent, String message) {
+		m_percent = Math.max(0, Math.min(MAX_VALUE, percent));
+		m_message = message == null ? "" : message;
+		return this;
+	}
+
+	public int getPercent() {
+		return m_percent;
+	}
+
+	public String getMessage() {
+		return m_message;
+	}
+
+	public ProgressBar setFailed(String message) {
+		m_failed = true;
+		m_message = message == null ? "" : message;
+		return this;
+	}
+
+	public boolean isFailed() {
+		return m_failed;
+	}
+
+	/**
+	 * @param label Text of the link, also proposed as file name when downloading.
+	 */
+	public ProgressBar setResultLink(String link, String label) {
+		m_resultLink = link;
+		m_resultLabel = label;
+		return this;
+	}
+
+	public String getResultLink() {
+		return m_resultLink;
+	}
+
+	/**
+	 * @param period_ms The page refreshes the component with this period, until a refreshed version has no poll period. With 0, the
+	 *                  component is not polled.
+	 */
+	public ProgressBar setPollPeriod_ms(long period_ms) {
+		if(period_ms < 0) {
+			throw new IllegalArgumentException(String.format("Poll period must not be negative: %d", period_ms));
+		}
+		m_pollPeriod_ms = period_ms;
+		return this;
+	}
+
+	public long getPollPeriod_ms() {
+		return m_pollPeriod_ms;
+	}
+
+	@Override
+	public HTMLNode toHTMLNode() {
+		final ContainedElement containedElement = createContainedNode("div", HTML_CLASS_CONTAINER);
+
+		final HTMLNode element = containedElement.element();
+		element.addClass(HTML_CLASS);
+		if(m_failed) {
+			element.addClass(HTML_CLASS_FAILED);
+		}
+		if(hasSource() && m_pollPeriod_ms > 0) {
+			element.setAttribute(HTML_ATTRIBUTE_POLL_PERIOD, m_pollPeriod_ms);
+		}
+		element.createChild("progress")
+				.setAttribute("max", MAX_VALUE)
+				.setAttribute("value", m_percent);
+		element.createChild("span")
+				.setClass(HTML_CLASS_MESSAGE)
+				.setText(m_message);
+		if(m_resultLink != null) {
+			final String label = m_resultLabel == null ? m_resultLink : m_resultLabel;
+			element.createChild("a")
+					.setClass(HTML_CLASS_RESULT)
+					.setAttribute("href", m_resultLink)
+					.setAttribute("download", label)
+					.setText(label);
+		}
+
+		return containedElement.getHigherNode();
+	}
+
+	@Override
+	public JsonMap toJsonMap() {
+		final JsonMap result = new JsonMap(JSON_TYPE, getTUID());
+		if(hasSource()) {
+			result.setAttribute(ATTRIBUTE_SOURCE, getSource());
+			if(m_pollPeriod_ms > 0) {
+				result.setAttribute(ATTRIBUTE_POLL_PERIOD, m_pollPeriod_ms);
+			}
+		}
+		result.setAttribute(ATTRIBUTE_VALUE, m_percent);
+		result.setAttribute(ATTRIBUTE_MESSAGE, m_message);
+		result.setAttribute(ATTRIBUTE_FAILED, m_failed);
+		if(m_resultLink != null) {
+			result.setAttribute(ATTRIBUTE_RESULT_LINK, m_resultLink);
+			result.setAttribute(ATTRIBUTE_RESULT_LABEL, m_resultLabel == null ? m_resultLink : m_resultLabel);
+		}
+		appendParameters(result);
+
+		applyCustomStyle(result);
+		applyCustomTag(result);
+
+		return result;
+	}
+}
@@ -622,6 +622,22 @@ public class Style {
 					stroke: none;
 				}
 				
+				/*
+					PROGRESS
+				*/
+				
+				.tui-progress {
+					display: flex;
+					align-items: center;
+					gap: 10px;
+				}
+				.tui-progress.loading::before, .tui-progress.loading::after { /* polled: the overlay would blink */
+					display: none;
+				}
+				.tui-progress-failed .tui-progress-message {
+					color: #c00000;
+				}
+				
 				@media print {
 					thead {
 						display: table-header-group;
@@ -22,7 +22,13 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 "use strict";
 
+/*
+    Identifies this instance of the page, so that the backend cancels its pending requests when it is left.
+*/
+const PAGE_INSTANCE_ID = Date.now().toString(36) + Math.random().toString(36).substring(2);
+
 function onload() {
+	instrumentContextPath();
 	instrumentForms();
 	instrumentModalForms();
 	instrumentModalPanels();
@@ -31,6 +37,175 @@ function onload() {
 	instrumentRefreshButtons();
 	instrumentSearchForms();
 	instrumentSVGs();
+	instrumentProgressBars();
+	instrumentServerEvents();
+	instrumentWebSocket();
+	instrumentCancellation();
+}
+
+/*
+    Returns the URL of a backend path, prefixed with the context path when the backend is mounted on another one. Paths that are not
+    absolute are returned unchanged.
+*/
+function toContextURL(path) {
+	if(typeof CONTEXT_PATH === 'undefined' || path == null || !path.startsWith('/') || path.startsWith('//')) {
+		return path;
+	}
+	return CONTEXT_PATH + path;
+}
+
+/*
+    Prefixes the links, images and form actions of the page with the context path of the backend.
+*/
+function instrumentContextPath() {
+	if(typeof CONTEXT_PATH === 'undefined') {
+		return;
+	}
+	document.body.querySelectorAll('a[href]').forEach(function (element) {
+		element.setAttribute('href', toContextURL(element.getAttribute('href')));
+	});
+	document.body.querySelectorAll('img[src]').forEach(function (element) {
+		element.setAttribute('src', toContextURL(element.getAttribute('src')));
+	});
+	document.body.querySelectorAll('form[action]').forEach(function (element) {
+		element.setAttribute('action', toContextURL(element.getAttribute('action')));
+	});
+}
+
+/*
+    Tells the backend that the page is left, so that it stops computing the responses that will never be read.
+*/
+function instrumentCancellation() {
+	if(typeof CANCEL_SOURCE === 'undefined' || typeof navigator.sendBeacon === 'undefined') {
+		return;
+	}
+	window.addEventListener('pagehide', function () {
+		navigator.sendBeacon(toContextURL(CANCEL_SOURCE), PAGE_INSTANCE_ID);
+	});
+}
+
+/*
+    Subscribes to the backend's server-sent events when the page has enabled them. Each 'refresh' event designates the components to
+    refresh, by id or by custom tag, and optional parameters to send to their source.
+*/
+function instrumentServerEvents() {
+	if(typeof SERVER_EVENTS_SOURCE === 'undefined' || typeof EventSource === 'undefined') {
+		return;
+	}
+	const url = new URL(toContextURL(SERVER_EVENTS_SOURCE), window.location.href);
+	for(let key in SESSION_PARAMS) {
+		url.searchParams.set(key, SESSION_PARAMS[key]);
+	}
+	const source = new EventSource(url);
+	source.addEventListener('refresh', function (event) {
+		const json = JSON.parse(event.data);
+		const target = json['target'];
+		const params = json['params'] === undefined ? {} : json['params'];
+		if(document.getElementById(target) !== null) {
+			refreshComponent(target, params);
+		} else {
+			document.querySelectorAll('[data-custom-tag="' + CSS.escape(target) + '"]').forEach(function (element) {
+				if(element.id) {
+					refreshComponent(element.id, params);
+				}
+			});
+		}
+	});
+}
+
+/*
+    Opens the WebSocket connection over which the components are refreshed when the page has enabled it. Each call carries a
+    correlation id so that the replies of concurrent calls can be received in any order. When the connection is not open, the calls
+    are sent as HTTP requests, and so are the calls still waiting for their reply when it closes.
+    The connection is opened again with an increasing delay. After several attempts that never opened (the backend refuses the
+    upgrades of pages from other sites, and while draining), the page keeps on using HTTP requests.
+*/
+const WEBSOCKET_MIN_RETRY_DELAY_ms = 1000;
+const WEBSOCKET_MAX_RETRY_DELAY_ms = 60000;
+const WEBSOCKET_MAX_FAILED_CONNECTIONS = 8;
+let webSocket = null;
+let webSocketCallId = 0;
+let webSocketFailedConnections = 0; // consecutive connections that did not open
+const webSocketPendingCalls = new Map();
+
+function instrumentWebSocket() {
+	if(typeof WEBSOCKET_SOURCE === 'undefined' || typeof WebSocket === 'undefined') {
+		return;
+	}
+	const url = new URL(toContextURL(WEBSOCKET_SOURCE), window.location.href);
+	url.protocol = url.protocol === 'https:' ? 'wss:' : 'ws:';
+	const socket = new WebSocket(url);
+	socket.addEventListener('open', function () {
+		webSocket = socket;
+		webSocketFailedConnections = 0;
+	});
+	socket.addEventListener('message', function (event) {
+		const reply = JSON.parse(event.data);
+		const pending = webSocketPendingCalls.get(reply['id']);
+		if(pending === undefined) {
+			return;
+		}
+		webSocketPendingCalls.delete(reply['id']);
+		const headers = reply['etag'] === undefined ? {} : {'ETag': reply['etag']};
+		const body = reply['body'] === undefined ? null : JSON.stringify(reply['body']);
+		pending.resolve(new Response(body, {status: reply['status'], headers: headers}));
+	});
+	socket.addEventListener('close', function () {
+		const wasOpen = webSocket === socket;
+		webSocket = null;
+		const pendingCalls = Array.from(webSocketPendingCalls.values());
+		webSocketPendingCalls.clear();
+		pendingCalls.forEach(pending => pending.resend().then(pending.resolve, pending.reject));
+		if(!wasOpen && ++webSocketFailedConnections >= WEBSOCKET_MAX_FAILED_CONNECTIONS) {
+			console.warn('WebSocket connection refused, components are refreshed with HTTP requests');
+			return;
+		}
+		setTimeout(instrumentWebSocket,
+			Math.min(WEBSOCKET_MAX_RETRY_DELAY_ms, WEBSOCKET_MIN_RETRY_DELAY_ms * 2 ** webSocketFailedConnections));
+	});
+}
+
+/*
+    Posts the data to the source and returns a promise of the response, through the WebSocket connection when open.
+*/
+function fetchSource(sourcePath, data, headers, body, signal) {
+	if(webSocket === null || webSocket.readyState !== WebSocket.OPEN) {
+		return fetch(toContextURL(sourcePath), {
+			method: 'POST',
+			headers: headers,
+			body: body,
+			signal: signal,
+		});
+	}
+	const params = {};
+	const entries = data instanceof Map ? Array.from(data.entries()) : Object.entries(data);
+	entries.forEach(([key, value]) => {
+		params[key] = String(value);
+	});
+	const call = {id: ++webSocketCallId, path: sourcePath, params: params};
+	if(headers['If-None-Match'] !== undefined) {
+		call['etag'] = headers['If-None-Match'];
+	}
+	return new Promise((resolve, reject) => {
+		if(signal != null && signal.aborted) {
+			reject(new DOMException('The call has been aborted', 'AbortError'));
+			return;
+		}
+		webSocketPendingCalls.set(call.id, {
+			resolve: resolve,
+			reject: reject,
+			resend: () => fetchSource(sourcePath, data, headers, body, signal), // over HTTP, once the connection has closed
+		});
+		if(signal != null) {
+			// Like fetch: the late reply of an aborted call is ignored
+			signal.addEventListener('abort', function () {
+				if(webSocketPendingCalls.delete(call.id)) {
+					reject(new DOMException('The call has been aborted', 'AbortError'));
+				}
+			}, {once: true});
+		}
+		webSocket.send(JSON.stringify(call));
+	});
 }
 
 /*
@@ -43,22 +218,10 @@ async function refreshComponent(id, data) {
 		console.error('refreshComponent: element with id=' + id + ' not found.');
 		return;
 	}
-	addFetchData(element, data); // new data are added to existing
-	data = getFetchData(element); // we must get all data
+	data = getRefreshData(element, data);
 	const component = document.getElementById(id);
 	const sourcePath = component.getAttribute('tui-source');
 
-	if(data === undefined) {
-		data = new Map();
-		Object.entries(SESSION_PARAMS).forEach(([key, value]) => {
-			data.set(key, value);
-		});
-	} else {
-		for(let key in SESSION_PARAMS) {
-			data[key] = SESSION_PARAMS[key];
-		}
-	}
-
 	let body;
 	let headers;
 
@@ -77,44 +240,169 @@ async function refreshComponent(id, data) {
 		headers = {};
 	}
 
+	if(typeof element.fetch_etag !== 'undefined') {
+		headers['If-None-Match'] = element.fetch_etag; // the backend answers 304 when the content did not change
+	}
+
+	// A newer refresh supersedes the pending one: the backend cancels it, see RequestContext
+	if(typeof element.fetch_controller !== 'undefined') {
+		element.fetch_controller.abort();
+	}
+	const controller = new AbortController();
+	element.fetch_controller = controller;
+	headers['X-TUI-Refresh-Key'] = PAGE_INSTANCE_ID + '/' + id;
+
 	element.classList.add('loading');
 
-	fetch(sourcePath, {
-		method: 'POST',
-		headers: headers,
-		body: body,
-	})
+	fetchSource(sourcePath, data, headers, body, controller.signal)
 		.then(response => {
+			if(response.status === 304) {
+				hideFetchError(component);
+				return null;
+			}
 			if(!response.ok) {
 				throw new Error(`HTTP error, status = ${response.status}`);
 			}
 			hideFetchError(component);
+			const etag = response.headers.get('ETag');
+			if(etag === null) {
+				delete element.fetch_etag;
+			} else {
+				element.fetch_etag = etag;
+			}
 			return response.json();
 		})
 		.then((json) => {
-			const type = json['type'];
-			if(type === 'paragraph') {
-				updateParagraph(component, json);
-			} else if(type === 'table' || type === 'tablepicker' || type === 'table-data') {
-				updateTable(component, json);
-			} else if(type === 'svg') {
-				updateSVG(component, json);
-			} else if(type === 'grid') {
-				updateGrid(component, json);
-			} else if(type === 'panel') {
-				updatePanel(component, json);
-			} else if(type === 'modalpanel') {
-				updateModalPanel(component, json);
-			} else {
-				console.error('element with id=' + id + ' could not be refreshed. Type of received json is not supported: ' + type);
+			if(json === null) {
+				scheduleProgressPoll(component); // not modified, the DOM is left as is
+				return;
+			}
+			updateComponent(component, json);
+		})
+		.catch(error => {
+			if(error.name !== 'AbortError') {
+				showFetchError(component, error);
+			}
+		})
+		.finally(() => {
+			if(element.fetch_controller === controller) { // not superseded
+				delete element.fetch_controller;
+				element.classList.remove('loading');
+			}
+		});
+}
+
+/*
+    Refreshes several components with a single request to the backend's batch endpoint when the page has enabled it, then updates all
+    of them at once. Otherwise, or when the components are refreshed through the WebSocket connection, each one is refreshed on its own.
+*/
+function refreshComponents(ids, data) {
+	const useBatch = typeof BATCH_SOURCE !== 'undefined' && ids.length > 1
+		&& (webSocket === null || webSocket.readyState !== WebSocket.OPEN);
+	if(!useBatch) {
+		ids.forEach(id => refreshComponent(id, data));
+		return;
+	}
+
+	const components = [];
+	const calls = [];
+	for(const id of ids) {
+		const element = document.getElementById(id);
+		if(element == null) {
+			console.error('refreshComponents: element with id=' + id + ' not found.');
+			continue;
+		}
+		const elementData = getRefreshData(element, data);
+		const params = {};
+		const entries = elementData instanceof Map ? Array.from(elementData.entries()) : Object.entries(elementData);
+		entries.forEach(([key, value]) => {
+			params[key] = String(value);
+		});
+		const call = {source: element.getAttribute('tui-source'), params: params};
+		if(typeof element.fetch_etag !== 'undefined') {
+			call['etag'] = element.fetch_etag;
+		}
+		components.push(element);
+		calls.push(call);
+		element.classList.add('loading');
+	}
+
+	fetch(toContextURL(BATCH_SOURCE), {
+		method: 'POST',
+		headers: {'Content-Type': 'application/json'},
+		body: JSON.stringify(calls),
+	})
+		.then(response => {
+			if(!response.ok) {
+				throw new Error(`HTTP error, status = ${response.status}`);
 			}
+			return response.json();
+		})
+		.then(results => {
+			// All the results are received before any component is updated, so that the page never shows a partial update
+			results.forEach((result, i) => {
+				const component = components[i];
+				if(result['status'] === 304) {
+					hideFetchError(component);
+				} else if(result['status'] !== 200) {
+					showFetchError(component, new Error(`HTTP error, status = ${result['status']}`));
+				} else {
+					hideFetchError(component);
+					if(result['etag'] === undefined) {
+						delete component.fetch_etag;
+					} else {
+						component.fetch_etag = result['etag'];
+					}
+					updateComponent(component, result['body']);
+				}
+			});
 		})
 		.catch(error => {
-			showFetchError(component, error);
+			components.forEach(component => showFetchError(component, error));
 		})
 		.finally(() => {
-			element.classList.remove('loading');
+			components.forEach(component => component.classList.remove('loading'));
+		});
+}
+
+/*
+    Adds the new data to the ones of the element, then the session parameters.
+*/
+function getRefreshData(element, data) {
+	addFetchData(element, data); // new data are added to existing
+	data = getFetchData(element); // we must get all data
+	if(data === undefined) {
+		data = new Map();
+		Object.entries(SESSION_PARAMS).forEach(([key, value]) => {
+			data.set(key, value);
 		});
+	} else {
+		for(let key in SESSION_PARAMS) {
+			data[key] = SESSION_PARAMS[key];
+		}
+	}
+	return data;
+}
+
+function updateComponent(component, json) {
+	const type = json['type'];
+	if(type === 'paragraph') {
+		updateParagraph(component, json);
+	} else if(type === 'table' || type === 'tablepicker' || type === 'table-data') {
+		updateTable(component, json);
+	} else if(type === 'svg') {
+		updateSVG(component, json);
+	} else if(type === 'grid') {
+		updateGrid(component, json);
+	} else if(type === 'panel') {
+		updatePanel(component, json);
+	} else if(type === 'modalpanel') {
+		updateModalPanel(component, json);
+	} else if(type === 'progress') {
+		updateProgress(component, json);
+	} else {
+		console.error('element with id=' + component.id + ' could not be refreshed. Type of received json is not supported: ' + type);
+	}
 }
 
 /*
@@ -215,6 +503,21 @@ function createComponent(json, idMap) {
 			result = document.createElement('p');
 			updateParagraph(result, json, idMap);
 		}
+	} else if(type === 'progress') {
+		let progressElement;
+		if(json['tui-source'] != null) {
+			const containedElement = createElementWithContainer('div', 'tui-container-progress');
+			result = containedElement.container;
+			progressElement = containedElement.element;
+			// Set so that the component can poll its source
+			progressElement.setAttribute('id', json['tuid']);
+			progressElement.setAttribute('tui-source', json['tui-source']);
+		} else {
+			result = document.createElement('div');
+			progressElement = result;
+		}
+		progressElement.classList.add('tui-progress');
+		updateProgress(progressElement, json);
 	} else if(type === 'grid') {
 		if(json['tui-source'] != null) {
 			const containedElement = createElementWithContainer('div', 'tui-container-grid');
@@ -287,7 +590,7 @@ function createComponent(json, idMap) {
 		result = document.createElement('form');
 		result.classList.add('tui-navbutton');
 		result.setAttribute('method', 'POST');
-		result.setAttribute('action', json['target']);
+		result.setAttribute('action', toContextURL(json['target']));
 		Object.entries(json['parameters']).forEach(([key, value]) => {
 			const input = document.createElement('input');
 			input.setAttribute('type', 'hidden');
@@ -330,11 +633,11 @@ function createComponent(json, idMap) {
 	} else if(type === 'navlink') {
 		result = document.createElement('a');
 		result.classList.add('tui-navlink');
-		result.setAttribute('href', json['target']);
+		result.setAttribute('href', toContextURL(json['target']));
 		result.textContent = json['label'];
 	} else if(type === 'image') {
 		result = document.createElement('img');
-		result.setAttribute('src', json['source']);
+		result.setAttribute('src', toContextURL(json['source']));
 		result.setAttribute('alt', json['text']);
 	} else if(type === 'form') {
 		result = createForm(json, idMap);
@@ -718,6 +1021,61 @@ function updateParagraph(element, json, idMap) {
 	}
 }
 
+// PROGRESS BARS
+
+function instrumentProgressBars() {
+	document.querySelectorAll('.tui-progress[tui-poll-period]').forEach(function (progressElement) {
+		scheduleProgressPoll(progressElement);
+	});
+}
+
+function updateProgress(element, json) {
+	element.innerHTML = '';
+	element.classList.toggle('tui-progress-failed', json['failed'] === 'true');
+
+	const bar = document.createElement('progress');
+	bar.setAttribute('max', '100');
+	bar.setAttribute('value', json['value']);
+	element.appendChild(bar);
+
+	const message = document.createElement('span');
+	message.classList.add('tui-progress-message');
+	message.textContent = json['message'];
+	element.appendChild(message);
+
+	if(json['resultLink'] != null) {
+		const link = document.createElement('a');
+		link.classList.add('tui-progress-result');
+		link.setAttribute('href', toContextURL(json['resultLink']));
+		link.setAttribute('download', json['resultLabel']);
+		link.textContent = json['resultLabel'];
+		element.appendChild(link);
+	}
+
+	if(json['pollPeriod'] != null) {
+		element.setAttribute('tui-poll-period', json['pollPeriod']);
+	} else {
+		element.removeAttribute('tui-poll-period');
+	}
+	scheduleProgressPoll(element);
+}
+
+/*
+    Refreshes the progress bar after its poll period, as long as the backend gives one (the job is not done) and the bar is in the page.
+*/
+function scheduleProgressPoll(element) {
+	clearTimeout(element.poll_timer);
+	const period = element.getAttribute('tui-poll-period');
+	if(period === null || !element.hasAttribute('tui-source')) {
+		return;
+	}
+	element.poll_timer = setTimeout(() => {
+		if(element.isConnected) {
+			refreshComponent(element.id);
+		}
+	}, Number(period));
+}
+
 // REFRESH BUTTONS
 
 function instrumentRefreshButtons() {
@@ -734,10 +1092,7 @@ function instrumentRefreshButton(buttonElement) {
 		buttonElement.parentElement.querySelectorAll('input').forEach(function (input) {
 			data[input.getAttribute('name')] = input.getAttribute('value');
 		});
-		buttonElement.getAttribute('tui-refresh-listeners').split(",")
-			.forEach(function (id, i) {
-				refreshComponent(id, data);
-			});
+		refreshComponents(buttonElement.getAttribute('tui-refresh-listeners').split(","), data);
 	});
 }
 
@@ -848,10 +1203,7 @@ function instrumentSearchForm(searchElement) {
 				}
 			}
 		});
-		searchElement.getAttribute('tui-refresh-listeners').split(",")
-			.forEach(function (id, i) {
-				refreshComponent(id, data);
-			});
+		refreshComponents(searchElement.getAttribute('tui-refresh-listeners').split(","), data);
 	});
 
 	searchElement.querySelectorAll("input[type='search']").forEach(function (searchInput, i) {
@@ -904,7 +1256,7 @@ function createFormBase(json, idMap) {
 	let result = document.createElement('form');
 	result.setAttribute('id', json['tuid']);
 	instrumentWithErrorMessage(result);
-	result.setAttribute('action', json['target']);
+	result.setAttribute('action', toContextURL(json['target']));
 	result.setAttribute('method', 'post');
 	result.setAttribute('enctype', 'multipart/form-data');
 	if(json['opensPageSource'] != null) {
@@ -1171,10 +1523,7 @@ function onFormResponse(formElement, json) {
 			for(let key in json['parameters']) {
 				data[key] = json['parameters'][key];
 			}
-			formElement.getAttribute('tui-refresh-listeners').split(",")
-				.forEach(function (id, i) {
-					refreshComponent(id, data);
-				})
+			refreshComponents(formElement.getAttribute('tui-refresh-listeners').split(","), data);
 		}
 
 		if(json['formUpdate'] != null) {
@@ -1182,7 +1531,7 @@ function onFormResponse(formElement, json) {
 			if(formUpdate['type'] !== 'form') {
 				console.error('Unexpected type: ' + formUpdate['type']);
 			} else {
-				formElement.setAttribute('action', formUpdate['target']); // Updating target
+				formElement.setAttribute('action', toContextURL(formUpdate['target'])); // Updating target
 				formElement.querySelector("button[type='submit']").textContent = formUpdate['submitLabel']; // Updating submit label
 
 				const fieldset = formElement.querySelector('fieldset');
@@ -1203,7 +1552,7 @@ function onFormResponse(formElement, json) {
 		} else if(formElement.getAttribute('tui-opens-page') != null) {
 			const openForm = document.createElement('form');
 			openForm.setAttribute('method', 'POST');
-			openForm.setAttribute('action', formElement.getAttribute('tui-opens-page'));
+			openForm.setAttribute('action', toContextURL(formElement.getAttribute('tui-opens-page')));
 			openForm.setAttribute('target', '_self');
 			for(let key in SESSION_PARAMS) {
 				const parameterInput = document.createElement('input');
@@ -1353,7 +1702,7 @@ function instrumentNavButton(element) {
  This method is called from a callback script inside the download button tag
  */
 function downloadFromButton(buttonElement) {
-	const url = buttonElement.getAttribute('target');
+	const url = toContextURL(buttonElement.getAttribute('target'));
 	const downloadName = buttonElement.getAttribute('downloadName');
 
 	const data = {};
@@ -1501,10 +1850,7 @@ function instrumentTablePicker(tablePickerElement) {
 			}
 
 			row.addEventListener("click", function () {
-				refreshListenersAttribute.split(",")
-					.forEach(function (id, i) {
-						refreshComponent(id, data);
-					})
+				refreshComponents(refreshListenersAttribute.split(","), data);
 			});
 		}
 	}
@@ -1705,10 +2051,7 @@ function onClickSVGZone(event) {
 		data[parameter.name] = parameter.value;
 	});
 
-	ancestorSGVElement.getAttribute('tui-refresh-listeners').split(",")
-		.forEach(function (id, i) {
-			refreshComponent(id, data);
-		});
+	refreshComponents(ancestorSGVElement.getAttribute('tui-refresh-listeners').split(","), data);
 }
 
 function getAncestorSVG(svgComponentElement) {
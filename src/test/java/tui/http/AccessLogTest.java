@@ -0,0 +1,87 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AccessLogTest {
+
+	@Test
+	public void dropsWhenFull() throws Exception {
+		final File file = new File(Files.createTempDirectory("tui-access-log").toFile(), "access.log");
+		final AccessLog accessLog = new AccessLog(AccessLogSettings.of(file).withBufferSize(2));
+
+		// The writer is not started: the buffer is never emptied
+		assertTrue(accessLog.append("GET", "/a", "web", "/a", 200, 10, 5, null));
+		assertTrue(accessLog.append("GET", "/b", "web", "/b", 200, 10, 5, null));
+		assertFalse(accessLog.append("GET", "/c", "web", "/c", 200, 10, 5, null));
+		assertEquals(1, accessLog.getDropped());
+
+		accessLog.start();
+		accessLog.stop();
+		final List<String> lines = Files.readAllLines(file.toPath());
+		assertEquals(2, lines.size());
+		final JSONObject entry = new JSONObject(lines.get(1));
+		assertEquals("/b", entry.getString("path"));
+		assertEquals(200, entry.getInt("status"));
+		assertEquals(10, entry.getLong("bytes"));
+		assertEquals(5, entry.getLong("duration_us"));
+	}
+
+	@Test
+	public void sampling() throws Exception {
+		final File file = new File(Files.createTempDirectory("tui-access-log").toFile(), "access.log");
+		final AccessLog accessLog = new AccessLog(AccessLogSettings.of(file).withSamplingRate(0));
+
+		assertFalse(accessLog.append("GET", "/a", "web", "/a", 200, 10, 5, null));
+		assertTrue(accessLog.append("GET", "/a", "web", "/a", 500, 0, 5, "page1/table")); // errors are always logged
+		assertEquals(0, accessLog.getDropped());
+
+		accessLog.start();
+		accessLog.stop();
+		final List<String> lines = Files.readAllLines(file.toPath());
+		assertEquals(1, lines.size());
+		assertEquals("page1", new JSONObject(lines.get(0)).getString("session"));
+	}
+
+	@Test
+	public void rolling() throws Exception {
+		final File file = new File(Files.createTempDirectory("tui-access-log").toFile(), "access.log");
+		final AccessLog accessLog = new AccessLog(AccessLogSettings.of(file).withRolling(1024, 3));
+		accessLog.start();
+		for(int i = 0; i < 100; i++) {
+			assertTrue(accessLog.append("POST", "/orders/" + i, "web", "/orders/{id}", 200, 100, 1_000, null));
+		}
+		accessLog.stop();
+
+		assertEquals(100, accessLog.getWritten());
+		assertTrue(file.length() <= 1024);
+		assertTrue(accessLog.getRolledFile(1).exists());
+		assertTrue(accessLog.getRolledFile(2).exists());
+		assertFalse(accessLog.getRolledFile(3).exists());
+		final List<String> lines = Files.readAllLines(file.toPath());
+		assertEquals("/orders/99", new JSONObject(lines.get(lines.size() - 1)).getString("path"));
+	}
+}
@@ -0,0 +1,43 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class FileResourceTest {
+
+	@Test
+	public void parseRange() {
+		assertEquals(new FileResource.Range(0, 99), FileResource.parseRange("bytes=0-99", 1000));
+		assertEquals(new FileResource.Range(100, 999), FileResource.parseRange("bytes=100-", 1000));
+		assertEquals(new FileResource.Range(900, 999), FileResource.parseRange("bytes=-100", 1000));
+		assertEquals(new FileResource.Range(0, 999), FileResource.parseRange("bytes=-5000", 1000));
+		assertEquals(new FileResource.Range(500, 999), FileResource.parseRange("bytes=500-5000", 1000));
+
+		assertSame(FileResource.Range.UNSATISFIABLE, FileResource.parseRange("bytes=1000-", 1000));
+		assertSame(FileResource.Range.UNSATISFIABLE, FileResource.parseRange("bytes=-0", 1000));
+
+		// Ignored: the whole content is sent
+		assertNull(FileResource.parseRange("bytes=0-9,20-29", 1000));
+		assertNull(FileResource.parseRange("bytes=9-0", 1000));
+		assertNull(FileResource.parseRange("bytes=a-b", 1000));
+		assertNull(FileResource.parseRange("items=0-9", 1000));
+	}
+}
@@ -0,0 +1,52 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void buckets() {
+		for(long value_us : new long[] { 0, 1, 3, 4, 7, 8, 9, 100, 1_000, 123_456, 1L << 30 }) {
+			final int index = LatencyHistogram.indexOf(value_us);
+			assertTrue(value_us + " is below its bucket's upper bound", value_us < LatencyHistogram.getUpperBound_us(index));
+			if(index > 0) {
+				assertTrue(value_us + " is above the previous bucket", value_us >= LatencyHistogram.getUpperBound_us(index - 1));
+			}
+		}
+		assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void percentiles() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile_us(99));
+		for(int i = 1; i <= 100; i++) {
+			histogram.record(i * 1_000_000L); // 1 ms to 100 ms
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(5_050_000, histogram.getSum_us());
+
+		final long p50 = histogram.getPercentile_us(50);
+		assertTrue("p50=" + p50, p50 > 50_000 && p50 <= 50_000 * 1.25);
+		final long p99 = histogram.getPercentile_us(99);
+		assertTrue("p99=" + p99, p99 > 99_000 && p99 <= 99_000 * 1.25);
+	}
+}
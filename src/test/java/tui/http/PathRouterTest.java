@@ -0,0 +1,163 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import org.junit.Test;
+import tui.ui.UIConfigurationException;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PathRouterTest {
+
+	@Test
+	public void exactPaths() {
+		final PathRouter<String> router = PathRouter.<String>empty()
+				.with("/", "root")
+				.with("/index", "index")
+				.with("/table/get", "get")
+				.with("/table/", "table with trailing slash");
+
+		assertEquals(4, router.size());
+		assertEquals("root", router.find("/").getService());
+		assertEquals("index", router.find("/index").getService());
+		assertEquals("get", router.find("/table/get").getService());
+		assertEquals("table with trailing slash", router.find("/table/").getService());
+		assertNull(router.find("/table"));
+		assertNull(router.find("/table/get/more"));
+		assertNull(router.find("/unknown"));
+		assertNull(router.find("index"));
+		assertNull(router.find(""));
+	}
+
+	@Test
+	public void pathVariables() {
+		final PathRouter<String> router = PathRouter.<String>empty()
+				.with("/orders/{id:long}/lines", "lines")
+				.with("/users/{name}", "user");
+
+		final PathRouter.Route<String> route = router.find("/orders/123/lines");
+		assertEquals("lines", route.getService());
+		assertEquals("/orders/{id:long}/lines", route.getTemplate());
+		assertEquals(123L, new PathVariables(route, "/orders/123/lines").getLong("id"));
+		assertEquals(Map.of("name", "john"), new PathVariables(router.find("/users/john"), "/users/john").asMap());
+
+		assertNull(router.find("/orders/abc/lines"));
+		assertNull(router.find("/orders//lines"));
+		assertNull(router.find("/orders/99999999999999999999/lines")); // exceeds Long.MAX_VALUE
+	}
+
+	@Test
+	public void literalsAndRestrictiveTypesHavePriority() {
+		final PathRouter<String> router = PathRouter.<String>empty()
+				.with("/items/{name}", "string")
+				.with("/items/{id:long}", "long")
+				.with("/items/{id:int}", "int")
+				.with("/items/new", "literal");
+
+		assertEquals("literal", router.find("/items/new").getService());
+		assertEquals("int", router.find("/items/12").getService());
+		assertEquals("long", router.find("/items/" + Long.MAX_VALUE).getService());
+		assertEquals("string", router.find("/items/other").getService());
+	}
+
+	@Test
+	public void backtracksWhenLiteralBranchFails() {
+		final PathRouter<String> router = PathRouter.<String>empty()
+				.with("/a/literal/c", "literal")
+				.with("/a/{x}/b", "variable");
+
+		assertEquals("variable", router.find("/a/literal/b").getService());
+		assertEquals("literal", router.find("/a/literal/c").getService());
+	}
+
+	@Test
+	public void registeringKeepsPreviousRouterUnchanged() {
+		final PathRouter<String> before = PathRouter.<String>empty().with("/a", "a");
+		final PathRouter<String> after = before.with("/b", "b").with("/a", "a2");
+
+		assertEquals(1, before.size());
+		assertEquals("a", before.find("/a").getService());
+		assertNull(before.find("/b"));
+		assertEquals(2, after.size());
+		assertEquals("a2", after.find("/a").getService());
+	}
+
+	@Test
+	public void unregister() {
+		final PathRouter<String> before = PathRouter.<String>empty()
+				.with("/a/{id:int}/b", "b")
+				.with("/a/{id:int}/c", "c")
+				.with("/a/x", "x");
+
+		final PathRouter<String> after = before.without("/a/{other:int}/b").without("/a/x");
+
+		assertEquals(3, before.size());
+		assertEquals(1, after.size());
+		assertNull(after.find("/a/1/b"));
+		assertNull(after.find("/a/x"));
+		assertEquals("c", after.find("/a/1/c").getService());
+		assertEquals("b", before.find("/a/1/b").getService());
+		assertSame(after, after.without("/unknown"));
+		assertTrue(after.without("/a/{id:int}/c").isEmpty());
+	}
+
+	@Test
+	public void manyRoutes() {
+		PathRouter<Integer> router = PathRouter.empty();
+		for(int i = 0; i < 20_000; i++) {
+			router = router.with("/page" + i + "/{id:int}", i);
+		}
+
+		assertEquals(20_000, router.size());
+		for(int i = 0; i < 20_000; i += 997) {
+			final PathRouter.Route<Integer> route = router.find("/page" + i + "/7");
+			assertEquals(Integer.valueOf(i), route.getService());
+		}
+	}
+
+	@Test
+	public void specificity() {
+		final PathRouter.Route<String> literal = PathRouter.<String>empty().with("/orders/summary", "summary").find("/orders/summary");
+		final PathRouter.Route<String> longVariable = PathRouter.<String>empty().with("/orders/{id:long}", "long").find("/orders/42");
+		final PathRouter.Route<String> variable = PathRouter.<String>empty().with("/orders/{id}", "order").find("/orders/42");
+
+		assertTrue(PathRouter.compareSpecificity(literal, variable) < 0);
+		assertTrue(PathRouter.compareSpecificity(longVariable, variable) < 0);
+		assertTrue(PathRouter.compareSpecificity(variable, longVariable) > 0);
+		assertEquals(0, PathRouter.compareSpecificity(variable, variable));
+	}
+
+	@Test(expected = UIConfigurationException.class)
+	public void unknownVariableType() {
+		PathRouter.empty().with("/a/{id:uuid}", "a");
+	}
+
+	@Test
+	public void templateMustStartWithSlash() {
+		try {
+			PathRouter.empty().with("a", "a");
+			fail("exception expected");
+		} catch(UIConfigurationException e) {
+			assertTrue(e.getMessage().contains("must start with '/'"));
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import org.junit.Test;
+import tui.ui.UIConfigurationException;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class RefreshScheduleTest {
+
+	private static final ZonedDateTime MONDAY_NOON = ZonedDateTime.of(2024, 6, 3, 12, 0, 30, 0, ZoneId.of("UTC"));
+
+	@Test
+	public void every() {
+		assertEquals(5_000, RefreshSchedule.every(5_000).getNextDelay_ms(MONDAY_NOON));
+	}
+
+	@Test
+	public void cron() {
+		assertEquals(MONDAY_NOON.withMinute(15).withSecond(0), RefreshSchedule.cron("*/15 * * * *").next(MONDAY_NOON));
+		assertEquals(MONDAY_NOON.withMinute(1).withSecond(0), RefreshSchedule.cron("* * * * *").next(MONDAY_NOON));
+		assertEquals(MONDAY_NOON.plusDays(1).withHour(8).withMinute(0).withSecond(0),
+				RefreshSchedule.cron("0 8-18/2 * * 1-5").next(MONDAY_NOON.withHour(19)));
+		// Saturday 8:00 after Friday
+		assertEquals(MONDAY_NOON.plusDays(5).withHour(8).withMinute(0).withSecond(0),
+				RefreshSchedule.cron("0 8 * * 6,7").next(MONDAY_NOON));
+		// Day of month or day of week, when both are restricted
+		assertEquals(MONDAY_NOON.plusDays(1).withHour(0).withMinute(0).withSecond(0),
+				RefreshSchedule.cron("0 0 4 * 0").next(MONDAY_NOON));
+		assertEquals(ZonedDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneId.of("UTC")), RefreshSchedule.cron("0 0 1 1 *").next(MONDAY_NOON));
+		assertEquals(29 * 60_000 + 30_000, RefreshSchedule.cron("*/30 * * * *").getNextDelay_ms(MONDAY_NOON));
+	}
+
+	@Test
+	public void errors() {
+		for(String expression : new String[] { "* * * *", "60 * * * *", "*/0 * * * *", "a * * * *", "5-1 * * * *", "0 0 31 2 *" }) {
+			try {
+				RefreshSchedule.cron(expression);
+				fail(expression);
+			} catch(UIConfigurationException e) {
+				// expected
+			}
+		}
+	}
+}
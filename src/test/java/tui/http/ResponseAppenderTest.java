@@ -0,0 +1,62 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ResponseAppenderTest {
+
+	/**
+	 * Multi-bytes characters and surrogate pairs must be encoded correctly, even when they lay across the limit of the buffer.
+	 */
+	@Test
+	public void encodesInUTF8AcrossBufferLimits() throws IOException {
+		final StringBuilder expected = new StringBuilder();
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final ResponseAppender appender = new ResponseAppender(output);
+		for(int i = 0; i < 10_000; i++) {
+			final String piece = i % 3 == 0 ? "é" : i % 3 == 1 ? "😀" /* emoji */ : "abc";
+			appender.append(piece);
+			appender.append('-');
+			expected.append(piece).append('-');
+		}
+		final String large = "x".repeat(ResponseAppender.BUFFER_SIZE * 2 + 1);
+		appender.append(large);
+		expected.append(large);
+		appender.finish();
+
+		assertArrayEquals(expected.toString().getBytes(StandardCharsets.UTF_8), output.toByteArray());
+	}
+
+	@Test
+	public void nothingIsWrittenBeforeBufferIsFull() throws IOException {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final ResponseAppender appender = new ResponseAppender(output);
+
+		appender.append("{}");
+		assertEquals(0, output.size());
+
+		appender.finish();
+		assertEquals("{}", output.toString(StandardCharsets.UTF_8));
+	}
+}
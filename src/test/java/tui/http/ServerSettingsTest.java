@@ -0,0 +1,69 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import org.junit.Test;
+import tui.ui.UIConfigurationException;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ServerSettingsTest {
+
+	@Test
+	public void fromProperties() {
+		final Properties properties = new Properties();
+		properties.setProperty("tui.server.maxThreads", "4");
+		properties.setProperty("tui.server.minThreads", "2");
+		properties.setProperty("tui.server.acceptors", "1");
+		properties.setProperty("tui.server.idleTimeout_ms", " 5000 ");
+		properties.setProperty("other.maxThreads", "1000");
+
+		final ServerSettings settings = ServerSettings.fromProperties(properties, "tui.server.");
+		assertEquals(2, settings.getMinThreads());
+		assertEquals(4, settings.getMaxThreads());
+		assertEquals(1, settings.getAcceptors());
+		assertEquals(ServerSettings.JETTY_DEFAULT, settings.getSelectors());
+		assertEquals(5_000, settings.getIdleTimeout_ms());
+		assertEquals(ServerSettings.DEFAULT.getOutputBufferSize(), settings.getOutputBufferSize());
+	}
+
+	@Test
+	public void errors() {
+		assertError(() -> ServerSettings.fromProperties(properties("tui.server.maxThread", "4"), "tui.server."));
+		assertError(() -> ServerSettings.fromProperties(properties("tui.server.maxThreads", "many"), "tui.server."));
+		assertError(() -> ServerSettings.fromProperties(properties("tui.server.maxThreads", "4"), "tui.server.")); // below min
+		assertError(() -> ServerSettings.DEFAULT.withRequestHeaderSize(100));
+		assertError(() -> ServerSettings.DEFAULT.withThreads(1, 2).withAcceptors(1).withSelectors(1).validate(2));
+	}
+
+	private static Properties properties(String key, String value) {
+		final Properties result = new Properties();
+		result.setProperty(key, value);
+		return result;
+	}
+
+	private static void assertError(Runnable runnable) {
+		try {
+			runnable.run();
+			fail();
+		} catch(UIConfigurationException e) {
+			// expected
+		}
+	}
+}
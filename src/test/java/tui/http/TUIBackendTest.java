@@ -0,0 +1,1294 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.http;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import tui.json.JsonObject;
+import tui.test.TestExecutionException;
+import tui.test.TestHTTPClient;
+import tui.test.TestWithBackend;
+import tui.ui.UIConfigurationException;
+import tui.ui.components.Page;
+import tui.ui.components.Paragraph;
+import tui.ui.components.ProgressBar;
+import tui.ui.components.Table;
+import tui.ui.style.Style;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.StandardProtocolFamily;
+import java.net.URI;
+import java.net.UnixDomainSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+public class TUIBackendTest extends TestWithBackend {
+
+	/**
+	 * Arrange: a web service that blocks until 3 requests are handled at the same time.
+	 * Act: calls the web service concurrently with virtual threads enabled.
+	 * Assert: all calls succeed and the backend has counted the requests in flight.
+	 */
+	@Test
+	public void virtualThreads() throws Exception {
+		assumeTrue(VirtualThreads.isSupported());
+		final int concurrentCalls = 3;
+		final CountDownLatch allInFlight = new CountDownLatch(concurrentCalls);
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		registerWebService("/blocking", (uri, request, response) -> {
+			allInFlight.countDown();
+			try {
+				allInFlight.await(10, TimeUnit.SECONDS);
+			} catch(InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			maxInFlight.accumulateAndGet(m_backend.getInFlightRequests(), Math::max);
+			return new Paragraph("done").toJsonMap();
+		});
+		m_backend.setVirtualThreadsEnabled(true);
+		startBackend(new Page("Index", "/index"));
+
+		final ExecutorService clients = Executors.newFixedThreadPool(concurrentCalls);
+		try {
+			final List<Future<String>> results = new ArrayList<>();
+			for(int i = 0; i < concurrentCalls; i++) {
+				results.add(clients.submit(() -> new TestHTTPClient("localhost", m_backend.getPort())
+						.callBackend("/blocking", Map.of(), false)));
+			}
+			for(Future<String> result : results) {
+				assertTrue(result.get(20, TimeUnit.SECONDS).contains("done"));
+			}
+		} finally {
+			clients.shutdownNow();
+		}
+
+		assertEquals(concurrentCalls, maxInFlight.get());
+		assertEquals(0, m_backend.getInFlightRequests());
+		assertTrue(m_backend.getCarrierThreads() > 0);
+	}
+
+	@Test
+	public void virtualThreadsNotSupported() {
+		assumeFalse(VirtualThreads.isSupported());
+		final TUIBackend backend = new TUIBackend();
+		try {
+			backend.setVirtualThreadsEnabled(true);
+			fail();
+		} catch(UIConfigurationException e) {
+			// expected: no silent fallback on unbounded platform threads
+		}
+		assertFalse(backend.isVirtualThreadsEnabled());
+	}
+
+	@Test
+	public void asyncWebService() throws Exception {
+		final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		try {
+			startBackend(new Page("Index", "/index"));
+			m_backend.registerAsyncWebService("/async", (uri, request, response) -> {
+				final CompletableFuture<JsonObject> result = new CompletableFuture<>();
+				scheduler.schedule(() -> result.complete(new Paragraph("computed later").toJsonMap()), 200, TimeUnit.MILLISECONDS);
+				return result;
+			});
+
+			final String json = new TestHTTPClient("localhost", m_backend.getPort()).callBackend("/async", Map.of(), false);
+
+			assertTrue(json.contains("computed later"));
+			assertEquals(0, m_backend.getInFlightRequests());
+		} finally {
+			scheduler.shutdownNow();
+		}
+	}
+
+	@Test
+	public void asyncWebServiceTimeout() {
+		final CompletableFuture<JsonObject> neverCompleted = new CompletableFuture<>();
+		startBackend(new Page("Index", "/index"));
+		m_backend.registerAsyncWebService("/async", (uri, request, response) -> neverCompleted, 200);
+
+		try {
+			new TestHTTPClient("localhost", m_backend.getPort()).callBackend("/async", Map.of(), false);
+			fail("timeout expected");
+		} catch(TestExecutionException e) {
+			assertEquals("HTTP error 504", e.getMessage());
+		}
+		assertTrue(neverCompleted.isCancelled());
+		assertEquals(1, m_backend.getErroneousResponses());
+	}
+
+	@Test
+	public void pathVariables() {
+		registerWebService("/orders/{id:long}/lines/{line}", (uri, request, response) -> {
+			final PathVariables variables = PathVariables.of(request);
+			return new Paragraph("order %d line %s", variables.getLong("id"), variables.getString("line")).toJsonMap();
+		});
+		startBackend(new Page("Index", "/index"));
+		final TestHTTPClient client = new TestHTTPClient("localhost", m_backend.getPort());
+
+		assertTrue(client.callBackend("/orders/42/lines/first", Map.of(), false).contains("order 42 line first"));
+		try {
+			client.callBackend("/orders/abc/lines/first", Map.of(), false);
+			fail("no route expected");
+		} catch(TestExecutionException e) {
+			assertTrue(e.getMessage().startsWith("HTTP error"));
+		}
+	}
+
+	@Test
+	public void literalWinsAcrossServiceTypes() {
+		registerWebService("/orders/summary", (uri, request, response) -> new Paragraph("summary").toJsonMap());
+		m_backend.registerPageService("/orders/{id}", (uri, request) ->
+				new Page("Order " + PathVariables.of(request).getString("id"), uri));
+		startBackend(new Page("Index", "/index"));
+		final TestHTTPClient client = new TestHTTPClient("localhost", m_backend.getPort());
+
+		final String summary = client.callBackend("/orders/summary", Map.of(), false);
+		assertTrue(summary.contains("summary"));
+		assertFalse(summary.contains("Order")); // not the page of the template
+		assertTrue(client.callBackend("/orders/42?format=json", Map.of(), false).contains("Order 42"));
+	}
+
+	@Test
+	public void hotRegistration() {
+		startBackend(new Page("Index", "/index"));
+		final TestHTTPClient client = new TestHTTPClient("localhost", m_backend.getPort());
+		final long initialVersion = m_backend.getRoutes().getVersion();
+
+		// Bulk registration is applied as one single version
+		final RouteTable routes = m_backend.updateRoutes((table) -> {
+			RouteTable result = table;
+			for(int i = 0; i < 1_000; i++) {
+				final String text = "tenant " + i;
+				result = result.withWebService("/tenant" + i, (uri, request, response) -> new Paragraph(text).toJsonMap());
+			}
+			return result;
+		});
+		assertEquals(initialVersion + 1, routes.getVersion());
+		assertEquals(1_001, routes.size());
+		assertTrue(client.callBackend("/tenant999", Map.of(), false).contains("tenant 999"));
+
+		m_backend.unregister("/tenant999");
+
+		assertEquals(initialVersion + 2, m_backend.getRoutes().getVersion());
+		assertFalse(m_backend.getRoutes().contains("/tenant999"));
+		assertTrue(routes.contains("/tenant999")); // previous snapshot is left unchanged
+		try {
+			client.callBackend("/tenant999", Map.of(), false);
+			fail("no route expected");
+		} catch(TestExecutionException e) {
+			assertTrue(e.getMessage().startsWith("HTTP error"));
+		}
+	}
+
+	@Test
+	public void largeJsonIsStreamed() {
+		final Table table = new Table("Large", List.of("Name", "Description"));
+		for(int i = 0; i < 20_000; i++) {
+			table.append(Map.of("Name", new Paragraph.Text("row " + i), "Description", new Paragraph.Text("ligne n°" + i)));
+		}
+		registerWebService("/large", (uri, request, response) -> table.toJsonMap());
+		startBackend(new Page("Index", "/index"));
+
+		final String json = new TestHTTPClient("localhost", m_backend.getPort()).callBackend("/large", Map.of(), false);
+
+		assertEquals(table.toJsonMap().toJson(), json);
+	}
+
+	@Test
+	public void compression() throws Exception {
+		final Paragraph large = new Paragraph("large text ".repeat(1_000));
+		registerWebService("/large", (uri, request, response) -> large.toJsonMap());
+		registerWebService("/large/uncompressed", (uri, request, response) -> large.toJsonMap());
+		registerWebService("/small", (uri, request, response) -> new Paragraph("small").toJsonMap());
+		startBackend(new Page("Index", "/index"));
+		m_backend.configureRoute("/large/uncompressed", (options) -> options.withCompression(false));
+
+		final HttpResponse<byte[]> compressed = post("/large", "gzip");
+		assertEquals("gzip", compressed.headers().firstValue("Content-Encoding").orElse(null));
+		try(InputStream input = new GZIPInputStream(new ByteArrayInputStream(compressed.body()))) {
+			assertEquals(large.toJsonMap().toJson(), new String(input.readAllBytes(), StandardCharsets.UTF_8));
+		}
+
+		assertTrue(post("/large", "identity").headers().firstValue("Content-Encoding").isEmpty());
+		assertTrue(post("/large/uncompressed", "gzip").headers().firstValue("Content-Encoding").isEmpty());
+		assertTrue(post("/small", "gzip").headers().firstValue("Content-Encoding").isEmpty());
+
+		assertEquals(1, m_backend.getCompressedResponses());
+		assertTrue(m_backend.getCompressionOutputBytes() * 10 < m_backend.getCompressionInputBytes());
+	}
+
+	@Test
+	public void staticAssets() throws Exception {
+		startBackend(new Page("Index", "/index"));
+
+		final String hashedScriptPath = m_backend.getHashedPath(TUIBackend.PATH_TO_SCRIPT);
+		assertTrue(hashedScriptPath.matches("/js/tui\\.[0-9a-f]{16}\\.js"));
+		final String html = new String(get("/index").body(), StandardCharsets.UTF_8);
+		assertTrue(html.contains(hashedScriptPath));
+		assertTrue(html.contains(m_backend.getHashedPath(TUIBackend.PATH_TO_CSS)));
+
+		final HttpResponse<byte[]> script = get(hashedScriptPath, "Accept-Encoding", "gzip");
+		assertEquals(200, script.statusCode());
+		assertEquals(StaticAsset.CACHE_CONTROL_IMMUTABLE, script.headers().firstValue("Cache-Control").orElse(null));
+		assertEquals("gzip", script.headers().firstValue("Content-Encoding").orElse(null));
+		final String scriptContent;
+		try(InputStream input = new GZIPInputStream(new ByteArrayInputStream(script.body()))) {
+			scriptContent = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+		}
+
+		final HttpResponse<byte[]> legacyScript = get(TUIBackend.PATH_TO_SCRIPT, "Accept-Encoding", "identity");
+		assertEquals(StaticAsset.CACHE_CONTROL_REVALIDATE, legacyScript.headers().firstValue("Cache-Control").orElse(null));
+		assertEquals(scriptContent, new String(legacyScript.body(), StandardCharsets.UTF_8));
+
+		final String etag = script.headers().firstValue("ETag").orElseThrow();
+		final HttpResponse<byte[]> notModified = get(TUIBackend.PATH_TO_SCRIPT, "If-None-Match", etag);
+		assertEquals(304, notModified.statusCode());
+		assertEquals(0, notModified.body().length);
+
+		assertEquals(200, get(TUIBackend.PATH_TO_FAVICON).statusCode());
+
+		final String hashedStylePath = m_backend.getHashedPath(TUIBackend.PATH_TO_CSS);
+		m_backend.setStyle(new Style());
+		assertEquals(hashedStylePath, m_backend.getHashedPath(TUIBackend.PATH_TO_CSS)); // same content, same path
+	}
+
+	@Test
+	public void entityTags() throws Exception {
+		final AtomicInteger counter = new AtomicInteger();
+		final Paragraph constant = new Paragraph("constant ".repeat(500));
+		registerWebService("/constant", (uri, request, response) -> constant.toJsonMap());
+		registerWebService("/counter", (uri, request, response) -> new Paragraph("count " + counter.incrementAndGet()).toJsonMap());
+		registerWebService("/untagged", (uri, request, response) -> new Paragraph("untagged").toJsonMap());
+		final Paragraph large = new Paragraph("large ".repeat(EntityTags.MAX_TAGGED_SIZE / 5));
+		registerWebService("/large", (uri, request, response) -> large.toJsonMap());
+		startBackend(new Page("Index", "/index"));
+		m_backend.configureRoute("/untagged", (options) -> options.withEntityTag(false));
+
+		for(String acceptedEncoding : List.of("identity", "gzip")) {
+			final HttpResponse<byte[]> first = post("/constant", acceptedEncoding);
+			final String etag = first.headers().firstValue("ETag").orElseThrow();
+			final HttpResponse<byte[]> second = send("/constant", "POST", "Accept-Encoding", acceptedEncoding, "If-None-Match", etag);
+			assertEquals(304, second.statusCode());
+			assertEquals(0, second.body().length);
+		}
+
+		final String counterETag = post("/counter", "identity").headers().firstValue("ETag").orElseThrow();
+		final HttpResponse<byte[]> modified = send("/counter", "POST", "If-None-Match", counterETag);
+		assertEquals(200, modified.statusCode());
+		assertFalse(counterETag.equals(modified.headers().firstValue("ETag").orElseThrow()));
+
+		assertTrue(post("/untagged", "identity").headers().firstValue("ETag").isEmpty());
+
+		// Too large to be kept in memory: streamed without ETag
+		final HttpResponse<byte[]> largeResponse = post("/large", "identity");
+		assertEquals(200, largeResponse.statusCode());
+		assertTrue(largeResponse.headers().firstValue("ETag").isEmpty());
+		assertTrue(new JSONObject(new String(largeResponse.body(), StandardCharsets.UTF_8)).toString().contains("large large"));
+
+		final String pageETag = get("/index").headers().firstValue("ETag").orElseThrow();
+		assertEquals(304, get("/index", "If-None-Match", "\"other\", " + pageETag).statusCode());
+	}
+
+	@Test
+	public void fileRanges() throws Exception {
+		final File file = File.createTempFile("tui", ".bin");
+		file.deleteOnExit();
+		final byte[] content = new byte[FileResource.BUFFER_SIZE * 3 + 100]; // read with several buffers
+		for(int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		Files.write(file.toPath(), content);
+		startBackend(new Page("Index", "/index"));
+		m_backend.registerFileService("/file", file, "application/octet-stream");
+		m_backend.registerResourceService("/resource", "0123456789".getBytes(StandardCharsets.UTF_8), "text/plain");
+
+		final HttpResponse<byte[]> whole = get("/file");
+		assertEquals(200, whole.statusCode());
+		assertArrayEquals(content, whole.body());
+		assertEquals("bytes", whole.headers().firstValue("Accept-Ranges").orElse(null));
+		final String etag = whole.headers().firstValue("ETag").orElseThrow();
+		final String lastModified = whole.headers().firstValue("Last-Modified").orElseThrow();
+
+		final HttpResponse<byte[]> range = get("/file", "Range", "bytes=1000-1999");
+		assertEquals(206, range.statusCode());
+		assertEquals("bytes 1000-1999/" + content.length, range.headers().firstValue("Content-Range").orElse(null));
+		assertArrayEquals(Arrays.copyOfRange(content, 1000, 2000), range.body());
+
+		assertArrayEquals(Arrays.copyOfRange(content, content.length - 10, content.length),
+				get("/file", "Range", "bytes=-10").body());
+		assertEquals(416, get("/file", "Range", "bytes=" + content.length + "-").statusCode());
+		assertEquals(304, get("/file", "If-None-Match", etag).statusCode());
+		assertEquals(304, get("/file", "If-Modified-Since", lastModified).statusCode());
+		assertEquals(200, get("/file", "Range", "bytes=0-9", "If-Range", "\"other\"").statusCode());
+		assertEquals(206, get("/file", "Range", "bytes=0-9", "If-Range", etag).statusCode());
+
+		final HttpResponse<byte[]> resourceRange = get("/resource", "Range", "bytes=2-4");
+		assertEquals(206, resourceRange.statusCode());
+		assertEquals("234", new String(resourceRange.body(), StandardCharsets.UTF_8));
+
+		Files.write(file.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+		assertTrue(file.setLastModified(System.currentTimeMillis() + 10_000));
+		final HttpResponse<byte[]> changed = get("/file", "If-None-Match", etag);
+		assertEquals(200, changed.statusCode());
+		assertEquals("changed", new String(changed.body(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void responseCache() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		registerWebService("/data/{id}", (uri, request, response) -> {
+			final String filter = new RequestReader(request).getStringParameter("filter", "none");
+			return new Paragraph.Text(uri + " " + filter + " " + calls.incrementAndGet()).toJsonMap();
+		});
+		startBackend(new Page("Index", "/index"));
+		m_backend.configureRoute("/data/{id}", (options) -> options.withCache(2, 60_000));
+
+		final String first = postParameters("/data/1", "filter", "a");
+		assertEquals(first, postParameters("/data/1", "filter", "a"));
+		assertEquals(1, calls.get());
+		assertEquals(1, m_backend.getCacheHits());
+		assertEquals(1, m_backend.getCacheMisses());
+
+		// Other registrations keep the cached responses
+		m_backend.registerWebService("/other", (uri, request, response) -> new Paragraph("other").toJsonMap());
+		m_backend.configureRoute("/other", (options) -> options.withCompression(false));
+		assertEquals(1, m_backend.getCacheSize());
+
+		assertFalse(first.equals(postParameters("/data/1", "filter", "b"))); // parameters are part of the key
+		postParameters("/data/2", "filter", "a"); // evicts '/data/1?filter=a', the least recently used
+		assertEquals(3, calls.get());
+		assertEquals(1, m_backend.getCacheEvictions());
+		assertFalse(first.equals(postParameters("/data/1", "filter", "a")));
+
+		assertEquals(1, m_backend.invalidateCache("/data/2"));
+		assertEquals(1, m_backend.invalidateCache("/data/{id}"));
+		assertEquals(0, m_backend.getCacheSize());
+
+		m_backend.configureRoute("/data/{id}", (options) -> options.withCache(10, 1));
+		postParameters("/data/1", "filter", "a");
+		Thread.sleep(10);
+		final int callsBefore = calls.get();
+		postParameters("/data/1", "filter", "a"); // expired
+		assertEquals(callsBefore + 1, calls.get());
+
+		// Hits do not extend the expiration
+		m_backend.configureRoute("/data/{id}", (options) -> options.withCache(10, 500));
+		final long computed = System.currentTimeMillis();
+		postParameters("/data/1", "filter", "a");
+		final int callsAfterComputation = calls.get();
+		for(int i = 1; i <= 3; i++) {
+			Thread.sleep(Math.max(0, computed + i * 100L - System.currentTimeMillis()));
+			postParameters("/data/1", "filter", "a");
+		}
+		assertEquals(callsAfterComputation, calls.get());
+		Thread.sleep(Math.max(0, computed + 600 - System.currentTimeMillis()));
+		postParameters("/data/1", "filter", "a");
+		assertEquals(callsAfterComputation + 1, calls.get());
+
+		// Replacing the service removes its cached responses
+		m_backend.configureRoute("/data/{id}", (options) -> options.withCache(10, 60_000));
+		postParameters("/data/1", "filter", "a");
+		assertEquals(1, m_backend.getCacheSize());
+		m_backend.registerWebService("/data/{id}", (uri, request, response) -> new Paragraph.Text("replaced").toJsonMap());
+		assertEquals(0, m_backend.getCacheSize());
+		assertTrue(postParameters("/data/1", "filter", "a").contains("replaced"));
+	}
+
+	@Test
+	public void coalescing() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		registerWebService("/slow", (uri, request, response) -> {
+			calls.incrementAndGet();
+			try {
+				release.await();
+			} catch(InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			return new Paragraph.Text("slow " + new RequestReader(request).getStringParameter("filter")).toJsonMap();
+		});
+		startBackend(new Page("Index", "/index"));
+		m_backend.configureRoute("/slow", (options) -> options.withCoalescing(true));
+
+		final int callers = 5;
+		final ExecutorService executor = Executors.newFixedThreadPool(callers);
+		try {
+			final List<Future<String>> responses = new ArrayList<>();
+			for(int i = 0; i < callers; i++) {
+				responses.add(executor.submit(() -> postParameters("/slow", "filter", "a")));
+			}
+			final long deadline = System.currentTimeMillis() + 5_000;
+			while(m_backend.getCoalescedCalls() < callers - 1 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			release.countDown();
+			for(Future<String> response : responses) {
+				assertEquals(responses.get(0).get(), response.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, calls.get());
+		assertEquals(callers - 1, m_backend.getCoalescedCalls());
+
+		postParameters("/slow", "filter", "a"); // no call in flight
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void invalidationDuringComputation() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		registerWebService("/slow", (uri, request, response) -> {
+			final int call = calls.incrementAndGet();
+			try {
+				release.await();
+			} catch(InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			return new Paragraph.Text("slow " + call).toJsonMap();
+		});
+		startBackend(new Page("Index", "/index"));
+		m_backend.configureRoute("/slow", (options) -> options.withCache(10, 60_000).withCoalescing(true));
+
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final Future<String> stale = executor.submit(() -> postParameters("/slow", "filter", "a"));
+			waitForCount(calls, 1);
+			m_backend.invalidateCache("/slow");
+			final Future<String> fresh = executor.submit(() -> postParameters("/slow", "filter", "a"));
+			waitForCount(calls, 2); // not coalesced with the call started before the invalidation
+			release.countDown();
+			assertTrue(stale.get(5, TimeUnit.SECONDS).contains("slow 1"));
+			assertTrue(fresh.get(5, TimeUnit.SECONDS).contains("slow 2"));
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(postParameters("/slow", "filter", "a").contains("slow 2")); // the stale response has not been stored
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void precomputedWebService() throws Exception {
+		final AtomicInteger computations = new AtomicInteger();
+		startBackend(new Page("Index", "/index"));
+		m_backend.registerPrecomputedWebService("/kpi", () -> {
+			if(computations.incrementAndGet() == 2) {
+				throw new IllegalStateException("database unavailable");
+			}
+			return new Paragraph.Text("kpi " + computations.get()).toJsonMap();
+		}, RefreshSchedule.every(100).withJitter(10));
+
+		final long deadline = System.currentTimeMillis() + 5_000;
+		while(m_backend.getPrecomputations() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, m_backend.getPrecomputationFailures()); // the second computation failed
+		final int computationsBefore = computations.get();
+		final String kpi = postParameters("/kpi", "filter", "ignored");
+		assertTrue(kpi.contains("kpi "));
+		assertTrue(computations.get() - computationsBefore <= 1); // requests do not compute
+
+		m_backend.unregister("/kpi");
+		Thread.sleep(250);
+		final int computationsAfterUnregistration = computations.get();
+		Thread.sleep(250);
+		assertEquals(computationsAfterUnregistration, computations.get());
+	}
+
+	@Test
+	public void concurrencyLimits() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		registerWebService("/report", (uri, request, response) -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch(InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			return new Paragraph.Text("report").toJsonMap();
+		});
+		startBackend(new Page("Index", "/index"));
+		m_backend.registerAsyncWebService("/async",
+				(uri, request, response) -> CompletableFuture.completedFuture(new Paragraph.Text("async").toJsonMap()));
+		m_backend.configureRoute("/report", (options) -> options.withConcurrencyLimit(new ConcurrencyLimit(1, 0, 0)));
+		m_backend.configureRoute("/async", (options) -> options.withConcurrencyLimit(new ConcurrencyLimit(1, 0, 0)));
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final Future<HttpResponse<byte[]>> first = executor.submit(() -> send("/report", "POST"));
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+
+			final HttpResponse<byte[]> rejected = send("/report", "POST");
+			assertEquals(503, rejected.statusCode());
+			assertEquals(String.valueOf(TUIBackend.OVERLOAD_RETRY_AFTER_s), rejected.headers().firstValue("Retry-After").orElse(null));
+			assertEquals(1, m_backend.getRejectedRequests("/report"));
+
+			assertEquals(200, get("/index").statusCode()); // other routes are not affected
+			release.countDown();
+			assertEquals(200, first.get().statusCode());
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(200, send("/report", "POST").statusCode()); // the slot has been released
+
+		for(int i = 0; i < 3; i++) { // slots of asynchronous services are released on completion
+			assertEquals(200, send("/async", "POST").statusCode());
+		}
+
+		m_backend.setConcurrencyLimit(new ConcurrencyLimit(1, 1, 10_000));
+		assertEquals(200, get("/index").statusCode());
+		assertEquals(0, m_backend.getQueuedRequests());
+		assertEquals(1, m_backend.getRejectedRequests());
+	}
+
+	@Test
+	public void serverEvents() throws Exception {
+		final Page page = new Page("Index", "/index");
+		page.enableServerEvents();
+		startBackend(page);
+		assertTrue(new String(get("/index").body(), StandardCharsets.UTF_8).contains("SERVER_EVENTS_SOURCE='/tui/events'"));
+
+		final URI uri = URI.create(m_backend.sourceToURI(TUIBackend.PATH_TO_SERVER_EVENTS + "?user=alice"));
+		final HttpRequest request = HttpRequest.newBuilder(uri).build();
+		final HttpResponse<Stream<String>> response = HttpClient.newHttpClient()
+				.send(request, HttpResponse.BodyHandlers.ofLines());
+		assertEquals(200, response.statusCode());
+		assertEquals(ServerEvents.CONTENT_TYPE, response.headers().firstValue("Content-Type").orElse("").split(";")[0]);
+		final Iterator<String> lines = response.body().iterator();
+		assertTrue(lines.next().startsWith("retry: "));
+		assertEquals(1, m_backend.getServerEventsSubscribers());
+
+		m_backend.notifyRefresh("kpi", Map.of("period", "day"), (session) -> "bob".equals(session.get("user")));
+		m_backend.notifyRefresh("kpi", Map.of("period", "week"), (session) -> "alice".equals(session.get("user")));
+		String line = lines.next();
+		while(line.isEmpty()) {
+			line = lines.next();
+		}
+		assertEquals("event: refresh", line);
+		final StringBuilder data = new StringBuilder(); // several lines when json is pretty printed
+		for(line = lines.next(); !line.isEmpty(); line = lines.next()) {
+			assertTrue(line.startsWith("data: "));
+			data.append(line.substring("data: ".length()));
+		}
+		assertEquals("{\"type\":\"refresh\",\"target\":\"kpi\",\"params\":{\"period\":\"week\"}}",
+				data.toString().replaceAll("\\s", ""));
+		assertEquals(1, m_backend.getServerEventsSent());
+	}
+
+	@Test
+	public void serverEventsStalledSubscriber() throws Exception {
+		startBackend(new Page("Index", "/index"));
+		try(Socket stalled = new Socket("localhost", m_backend.getPort())) {
+			stalled.getOutputStream().write(String.format("GET %s HTTP/1.1\r\nHost: localhost\r\n\r\n", TUIBackend.PATH_TO_SERVER_EVENTS)
+					.getBytes(StandardCharsets.UTF_8));
+			stalled.getOutputStream().flush();
+			final long subscribed = System.currentTimeMillis() + 5_000;
+			while(m_backend.getServerEventsSubscribers() < 1 && System.currentTimeMillis() < subscribed) {
+				Thread.sleep(5);
+			}
+
+			// The client never reads: its connection fills up, then its queue
+			final String large = "x".repeat(64 * 1024);
+			for(int i = 0; i < 4 * ServerEvents.MAX_PENDING_MESSAGES; i++) {
+				m_backend.notifyRefresh("kpi", Map.of("data", large));
+			}
+			final long end = System.currentTimeMillis() + 10_000;
+			while(m_backend.getServerEventsDroppedSubscribers() < 1 && System.currentTimeMillis() < end) {
+				Thread.sleep(5);
+			}
+			assertEquals(1, m_backend.getServerEventsDroppedSubscribers());
+			assertEquals(0, m_backend.getServerEventsSubscribers());
+		}
+	}
+
+	@Test
+	public void webSocket() throws Exception {
+		final Map<String, Paragraph> greetings = new ConcurrentHashMap<>(); // same components, so that their etag is the same
+		registerWebService("/greeting", (uri, request, response) -> greetings.computeIfAbsent(
+				new RequestReader(request).getStringParameter("name", "nobody"), (name) -> new Paragraph("Hello " + name)).toJsonMap());
+		registerWebService("/thread", (uri, request, response) -> new Paragraph(Thread.currentThread().getName()).toJsonMap());
+		final Page page = new Page("Index", "/index");
+		page.enableWebSocket();
+		startBackend(page);
+		assertTrue(new String(get("/index").body(), StandardCharsets.UTF_8).contains("WEBSOCKET_SOURCE='/tui/ws'"));
+
+		final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+		final WebSocket webSocket = HttpClient.newHttpClient().newWebSocketBuilder()
+				.buildAsync(URI.create(m_backend.sourceToURI(TUIBackend.PATH_TO_WEBSOCKET).replace("http:", "ws:")),
+						new WebSocket.Listener() {
+							private final StringBuilder m_text = new StringBuilder();
+
+							@Override
+							public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+								m_text.append(data);
+								if(last) {
+									replies.add(m_text.toString());
+									m_text.setLength(0);
+								}
+								webSocket.request(1);
+								return null;
+							}
+						})
+				.get(5, TimeUnit.SECONDS);
+		try {
+			webSocket.sendText("{\"id\":1,\"path\":\"/greeting\",\"params\":{\"name\":\"Alice\"}}", true).get();
+			final JSONObject first = new JSONObject(replies.poll(5, TimeUnit.SECONDS));
+			assertEquals(1, first.getLong("id"));
+			assertEquals(200, first.getInt("status"));
+			assertTrue(first.getJSONObject("body").toString().contains("Hello Alice"));
+			final String etag = first.getString("etag");
+
+			webSocket.sendText(String.format("{\"id\":2,\"path\":\"/greeting\",\"params\":{\"name\":\"Alice\"},\"etag\":%s}",
+					JSONObject.quote(etag)), true).get();
+			final JSONObject second = new JSONObject(replies.poll(5, TimeUnit.SECONDS));
+			assertEquals(2, second.getLong("id"));
+			assertEquals(304, second.getInt("status"));
+			assertFalse(second.has("body"));
+
+			webSocket.sendText("{\"id\":3,\"path\":\"/unknown\"}", true).get();
+			assertEquals(404, new JSONObject(replies.poll(5, TimeUnit.SECONDS)).getInt("status"));
+
+			webSocket.sendText("{\"id\":4,\"path\":\"/thread\"}", true).get(); // not executed by the Jetty pool
+			assertTrue(new JSONObject(replies.poll(5, TimeUnit.SECONDS)).getJSONObject("body").toString().contains("tui-websocket-"));
+
+			assertEquals(1, m_backend.getWebSocketSessions());
+			assertEquals(4, m_backend.getWebSocketCalls());
+		} finally {
+			webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "").get(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void webSocketOrigin() throws Exception {
+		m_backend = new TUIBackend(getRandomAvailablePort());
+		m_backend.setWebSocketAllowedOrigins("https://portal.example.com");
+		startBackend(new Page("Index", "/index"));
+		final URI uri = URI.create(m_backend.sourceToURI(TUIBackend.PATH_TO_WEBSOCKET).replace("http:", "ws:"));
+		final WebSocket.Listener listener = new WebSocket.Listener() {
+		};
+
+		for(String origin : List.of("http://localhost:" + m_backend.getPort(), "https://portal.example.com")) {
+			HttpClient.newHttpClient().newWebSocketBuilder().header("Origin", origin).buildAsync(uri, listener).get(5, TimeUnit.SECONDS)
+					.sendClose(WebSocket.NORMAL_CLOSURE, "").get(5, TimeUnit.SECONDS);
+		}
+		try {
+			HttpClient.newHttpClient().newWebSocketBuilder().header("Origin", "https://attacker.example.com").buildAsync(uri, listener)
+					.get(5, TimeUnit.SECONDS);
+			fail("upgrade refused expected");
+		} catch(ExecutionException e) {
+			// expected: page of another site
+		}
+		assertEquals(1, m_backend.getWebSocketRefusedUpgrades());
+	}
+
+	@Test
+	public void batchRefresh() throws Exception {
+		final Paragraph constant = new Paragraph("constant");
+		registerWebService("/constant", (uri, request, response) -> constant.toJsonMap());
+		registerWebService("/echo", (uri, request, response) ->
+				new Paragraph("echo " + new RequestReader(request).getStringParameter("value")).toJsonMap());
+		registerWebService("/client", (uri, request, response) -> new Paragraph(String.format("client %s %s %s",
+				request.getRemoteAddr(), request.getCookies()[0].getValue(), request.getSession(false))).toJsonMap());
+		final Page page = new Page("Index", "/index");
+		page.enableBatchRefresh();
+		startBackend(page);
+		assertTrue(new String(get("/index").body(), StandardCharsets.UTF_8).contains("BATCH_SOURCE='/tui/batch'"));
+
+		final String etag = post("/constant", "identity").headers().firstValue("ETag").orElseThrow();
+		final JSONArray calls = new JSONArray()
+				.put(new JSONObject().put("source", "/echo").put("params", new JSONObject().put("value", "42")))
+				.put(new JSONObject().put("source", "/constant").put("etag", etag))
+				.put(new JSONObject().put("source", "/unknown"));
+		final HttpRequest request = HttpRequest.newBuilder(URI.create(m_backend.sourceToURI(TUIBackend.PATH_TO_BATCH)))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(calls.toString()))
+				.build();
+		final HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+		assertEquals(200, response.statusCode());
+
+		final JSONArray results = new JSONArray(response.body());
+		assertEquals(3, results.length());
+		assertEquals("/echo", results.getJSONObject(0).getString("source"));
+		assertEquals(200, results.getJSONObject(0).getInt("status"));
+		assertTrue(results.getJSONObject(0).getJSONObject("body").toString().contains("echo 42"));
+		assertEquals(304, results.getJSONObject(1).getInt("status"));
+		assertEquals(etag, results.getJSONObject(1).getString("etag"));
+		assertFalse(results.getJSONObject(1).has("body"));
+		assertEquals(404, results.getJSONObject(2).getInt("status"));
+
+		// The calls see the client of the batch request
+		final HttpRequest clientRequest = HttpRequest.newBuilder(URI.create(m_backend.sourceToURI(TUIBackend.PATH_TO_BATCH)))
+				.header("Cookie", "user=alice")
+				.POST(HttpRequest.BodyPublishers.ofString(new JSONArray().put(new JSONObject().put("source", "/client")).toString()))
+				.build();
+		final JSONObject client = new JSONArray(HttpClient.newHttpClient().send(clientRequest, HttpResponse.BodyHandlers.ofString())
+				.body()).getJSONObject(0);
+		assertEquals(200, client.getInt("status"));
+		assertTrue(client.getJSONObject("body").toString().contains("client 127.0.0.1 alice null"));
+
+		// Calls without source path are rejected
+		for(String malformed : new String[] { "[42]", "[{\"params\":{}}]", "[{\"source\":7}]" }) {
+			final HttpRequest malformedRequest = HttpRequest.newBuilder(URI.create(m_backend.sourceToURI(TUIBackend.PATH_TO_BATCH)))
+					.POST(HttpRequest.BodyPublishers.ofString(malformed))
+					.build();
+			assertEquals(400, HttpClient.newHttpClient().send(malformedRequest, HttpResponse.BodyHandlers.discarding()).statusCode());
+		}
+	}
+
+	@Test
+	public void errorStatusIsKept() throws Exception {
+		registerWebService("/invalid", (uri, request, response) -> {
+			response.setStatus(422);
+			return new Paragraph("invalid filter").toJsonMap();
+		});
+		registerWebService("/invalid/cached", (uri, request, response) -> {
+			response.setStatus(422);
+			return new Paragraph("invalid filter").toJsonMap();
+		});
+		startBackend(new Page("Index", "/index"));
+		m_backend.configureRoute("/invalid/cached", (options) -> options.withCache(10, 60_000).withCoalescing(true));
+
+		for(String path : List.of("/invalid", "/invalid/cached")) {
+			final HttpResponse<byte[]> response = send(path, "POST");
+			assertEquals(422, response.statusCode());
+			assertTrue(new String(response.body(), StandardCharsets.UTF_8).contains("invalid filter"));
+
+			final StringBuilder reply = new StringBuilder("{");
+			final ServiceCall call = ServiceCall.of(path, new JSONObject());
+			call.appendReply(reply, m_backend.callWebService(call));
+			final JSONObject json = new JSONObject(reply.append('}').toString());
+			assertEquals(422, json.getInt("status"));
+			assertFalse(json.has("etag"));
+			assertTrue(json.getJSONObject("body").toString().contains("invalid filter"));
+		}
+		assertEquals(0, m_backend.getCacheSize());
+	}
+
+	@Test
+	public void http2() throws Exception {
+		registerWebService("/hello", (uri, request, response) -> new Paragraph("hello").toJsonMap());
+		m_backend.setHttp2(new Http2Settings(16, Http2Settings.MIN_WINDOW, 2 * Http2Settings.MIN_WINDOW));
+		startBackend(new Page("Index", "/index"));
+
+		// The client upgrades its first connection then multiplexes the requests over it
+		final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+		for(int i = 0; i < 3; i++) {
+			final HttpResponse<String> response = client.send(
+					HttpRequest.newBuilder(URI.create(m_backend.sourceToURI("/hello"))).build(), HttpResponse.BodyHandlers.ofString());
+			assertEquals(200, response.statusCode());
+			assertTrue(response.body().contains("hello"));
+			assertEquals(HttpClient.Version.HTTP_2, response.version());
+		}
+		// HTTP/1.1 is still served
+		final HttpResponse<String> response = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()
+				.send(HttpRequest.newBuilder(URI.create(m_backend.sourceToURI("/hello"))).build(), HttpResponse.BodyHandlers.ofString());
+		assertEquals(HttpClient.Version.HTTP_1_1, response.version());
+
+		try {
+			new Http2Settings(16, 1024, 1024);
+			fail();
+		} catch(UIConfigurationException e) {
+			// expected: window smaller than the one of the RFC
+		}
+	}
+
+	@Test
+	public void unixSocket() throws Exception {
+		final File socket = new File(Files.createTempDirectory("tui-socket").toFile(), "tui.sock");
+		// Left by a previous process: deleted on start
+		try(ServerSocketChannel stale = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			stale.bind(UnixDomainSocketAddress.of(socket.toPath()));
+		}
+		assertTrue(socket.exists());
+		registerWebService("/hello", (uri, request, response) -> new Paragraph("hello from " + request.getRemoteAddr()).toJsonMap());
+		m_backend.setUnixSocket(socket.getAbsolutePath());
+		m_backend.setHttpPortEnabled(false);
+		startBackend(new Page("Index", "/index"));
+
+		final String response;
+		try(SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+			channel.connect(UnixDomainSocketAddress.of(socket.toPath()));
+			channel.write(StandardCharsets.UTF_8.encode(
+					"GET /hello HTTP/1.1\r\nHost: localhost\r\nX-Forwarded-For: 10.0.0.7\r\nConnection: close\r\n\r\n"));
+			final ByteArrayOutputStream received = new ByteArrayOutputStream();
+			final ByteBuffer buffer = ByteBuffer.allocate(4096);
+			while(channel.read(buffer) >= 0) {
+				received.write(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+			response = received.toString(StandardCharsets.UTF_8);
+		}
+		assertTrue(response.startsWith("HTTP/1.1 200"));
+		assertTrue(response.contains("hello from 10.0.0.7")); // forwarded by the proxy
+
+		try {
+			HttpClient.newHttpClient().send(HttpRequest.newBuilder(URI.create(m_backend.sourceToURI("/hello"))).build(),
+					HttpResponse.BodyHandlers.ofString());
+			fail();
+		} catch(IOException e) {
+			// expected: the HTTP port is disabled
+		}
+	}
+
+	@Test
+	public void unixSocketPathIsNotASocket() throws Exception {
+		final File file = File.createTempFile("tui-", ".txt");
+		file.deleteOnExit();
+		Files.writeString(file.toPath(), "precious");
+		m_backend = new TUIBackend(getRandomAvailablePort());
+		m_backend.setUnixSocket(file.getAbsolutePath());
+		m_backend.registerPage(new Page("Index", "/index"));
+		try {
+			m_backend.start();
+			fail();
+		} catch(UIConfigurationException e) {
+			// expected: mistyped path
+		}
+		assertEquals("precious", Files.readString(file.toPath()));
+	}
+
+	@Test
+	public void serverSettings() throws Exception {
+		registerWebService("/hello", (uri, request, response) -> new Paragraph("hello").toJsonMap());
+		m_backend.setServerSettings(ServerSettings.DEFAULT.withThreads(4, 16).withRequestHeaderSize(1024));
+		startBackend(new Page("Index", "/index"));
+
+		assertEquals(200, get("/hello").statusCode());
+		assertEquals(431, get("/hello", "X-Large", "x".repeat(2048)).statusCode());
+	}
+
+	@Test
+	public void serverSettingsWithSeveralConnectors() throws Exception {
+		m_backend = new TUIBackend(getRandomAvailablePort());
+		m_backend.setServerSettings(ServerSettings.DEFAULT.withThreads(1, 3).withAcceptors(1).withSelectors(1)); // enough for one
+		m_backend.setUnixSocket(new File(Files.createTempDirectory("tui-socket").toFile(), "tui.sock").getAbsolutePath());
+		m_backend.registerPage(new Page("Index", "/index"));
+		try {
+			m_backend.start();
+			fail();
+		} catch(UIConfigurationException e) {
+			// expected: the HTTP and Unix socket connectors both reserve threads
+		}
+	}
+
+	@Test
+	public void gracefulDrain() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		registerWebService("/slow", (uri, request, response) -> {
+			started.countDown();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch(InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			return new Paragraph("done").toJsonMap();
+		});
+		registerWebService("/fast", (uri, request, response) -> new Paragraph("fast").toJsonMap());
+		m_backend.setDrainTimeout_ms(10_000);
+		startBackend(new Page("Index", "/index"));
+
+		final HttpClient keptAlive = HttpClient.newHttpClient();
+		final HttpRequest fast = HttpRequest.newBuilder(URI.create(m_backend.sourceToURI("/fast"))).build();
+		assertEquals(200, keptAlive.send(fast, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+		final CompletableFuture<HttpResponse<String>> slow = HttpClient.newHttpClient().sendAsync(
+				HttpRequest.newBuilder(URI.create(m_backend.sourceToURI("/slow"))).build(), HttpResponse.BodyHandlers.ofString());
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		final CompletableFuture<Void> stopped = CompletableFuture.runAsync(() -> {
+			try {
+				m_backend.stop();
+			} catch(Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		while(!m_backend.isDraining()) {
+			Thread.sleep(5);
+		}
+
+		// New requests on open connections are rejected while the in-flight one completes
+		final HttpResponse<String> rejected = keptAlive.send(fast, HttpResponse.BodyHandlers.ofString());
+		assertEquals(503, rejected.statusCode());
+		assertEquals(String.valueOf(TUIBackend.OVERLOAD_RETRY_AFTER_s), rejected.headers().firstValue("Retry-After").orElseThrow());
+		assertFalse(stopped.isDone());
+
+		release.countDown();
+		assertEquals(200, slow.get(5, TimeUnit.SECONDS).statusCode());
+		stopped.get(5, TimeUnit.SECONDS);
+		assertEquals(1, m_backend.getDrainedRequests());
+		assertEquals(0, m_backend.getAbandonedRequests());
+	}
+
+	@Test
+	public void requestCancellation() throws Exception {
+		final BlockingQueue<RequestContext.Reason> reasons = new LinkedBlockingQueue<>();
+		final AtomicInteger cancelActions = new AtomicInteger();
+		registerWebService("/long", (uri, request, response) -> {
+			final RequestContext context = RequestContext.of(request);
+			context.onCancel(cancelActions::incrementAndGet);
+			final long end = System.currentTimeMillis() + 10_000;
+			while(!context.isCancelled() && System.currentTimeMillis() < end) {
+				try {
+					Thread.sleep(5);
+				} catch(InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			reasons.add(context.getCancellationReason());
+			context.throwIfCancelled();
+			return new Paragraph("done").toJsonMap();
+		});
+		registerWebService("/short", (uri, request, response) -> new Paragraph("short").toJsonMap());
+		startBackend(new Page("Index", "/index"));
+
+		// Deadline given by the client
+		assertEquals(504, send("/long", "POST", RequestContext.TIMEOUT_HEADER, "100").statusCode());
+		assertEquals(RequestContext.Reason.DEADLINE_EXCEEDED, reasons.poll(5, TimeUnit.SECONDS));
+		assertEquals(200, send("/short", "POST", RequestContext.TIMEOUT_HEADER, String.valueOf(Long.MAX_VALUE)).statusCode());
+
+		// Newer refresh of the same component
+		final CompletableFuture<HttpResponse<byte[]>> superseded = CompletableFuture.supplyAsync(() -> sendQuietly("/long",
+				RequestContext.REFRESH_KEY_HEADER, "page1/table"));
+		waitForInFlightRequests(1);
+		assertEquals(200, send("/short", "POST", RequestContext.REFRESH_KEY_HEADER, "page1/table").statusCode());
+		assertEquals(RequestContext.Reason.SUPERSEDED, reasons.poll(5, TimeUnit.SECONDS));
+		assertEquals(503, superseded.get(5, TimeUnit.SECONDS).statusCode());
+
+		// Page left
+		final CompletableFuture<HttpResponse<byte[]>> left = CompletableFuture.supplyAsync(() -> sendQuietly("/long",
+				RequestContext.REFRESH_KEY_HEADER, "page2/table"));
+		waitForInFlightRequests(1);
+		final HttpResponse<String> beacon = HttpClient.newHttpClient().send(
+				HttpRequest.newBuilder(URI.create(m_backend.sourceToURI(TUIBackend.PATH_TO_CANCEL)))
+						.POST(HttpRequest.BodyPublishers.ofString("page2")).build(), HttpResponse.BodyHandlers.ofString());
+		assertEquals(204, beacon.statusCode());
+		assertEquals(RequestContext.Reason.PAGE_CLOSED, reasons.poll(5, TimeUnit.SECONDS));
+		assertEquals(503, left.get(5, TimeUnit.SECONDS).statusCode());
+
+		assertEquals(3, cancelActions.get());
+		waitForInFlightRequests(0);
+		assertEquals(3, m_backend.getCancelledRequests());
+	}
+
+	@Test
+	public void jobService() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		registerWebService("/export", (uri, request, response) -> {
+			final TUIJobService jobService = m_backend.getJobService();
+			final String id = jobService.submit((progress) -> {
+				progress.update(50, "Half done");
+				if(!release.await(5, TimeUnit.SECONDS)) {
+					throw new IllegalStateException("not released");
+				}
+				return new TUIJob.Result("a;b".getBytes(StandardCharsets.UTF_8), "text/csv", "export.csv");
+			});
+			return jobService.newProgressBar(id).toJsonMap();
+		});
+		final TUIJobService jobService = m_backend.getJobService();
+		jobService.setLimits(1, 1);
+		startBackend(new Page("Index", "/index"));
+
+		final JSONObject submitted = new JSONObject(new String(send("/export", "POST").body(), StandardCharsets.UTF_8));
+		assertEquals(ProgressBar.JSON_TYPE, submitted.getString("type"));
+		assertTrue(submitted.has(ProgressBar.ATTRIBUTE_POLL_PERIOD));
+		final String statusPath = submitted.getString(ProgressBar.ATTRIBUTE_SOURCE);
+		final String id = statusPath.substring(TUIBackend.PATH_TO_JOBS.length() + 1);
+
+		// One job runs, one is queued, then the executor is full
+		assertEquals(200, send("/export", "POST").statusCode());
+		assertEquals(503, send("/export", "POST").statusCode());
+		assertEquals(1, jobService.getRejectedJobs());
+
+		final long end = System.currentTimeMillis() + 5_000;
+		while(jobService.getStatus(id).state() != TUIJobService.State.RUNNING && System.currentTimeMillis() < end) {
+			Thread.sleep(5);
+		}
+		final JSONObject running = new JSONObject(new String(send(statusPath, "POST").body(), StandardCharsets.UTF_8));
+		assertEquals(50, running.getInt(ProgressBar.ATTRIBUTE_VALUE));
+		assertEquals("Half done", running.getString(ProgressBar.ATTRIBUTE_MESSAGE));
+		assertEquals(404, get(jobService.getResultPath(id)).statusCode());
+
+		release.countDown();
+		while(jobService.getStatus(id).state() != TUIJobService.State.SUCCEEDED && System.currentTimeMillis() < end) {
+			Thread.sleep(5);
+		}
+		final JSONObject done = new JSONObject(new String(send(statusPath, "POST").body(), StandardCharsets.UTF_8));
+		assertEquals(100, done.getInt(ProgressBar.ATTRIBUTE_VALUE));
+		assertFalse(done.has(ProgressBar.ATTRIBUTE_POLL_PERIOD));
+		assertEquals(jobService.getResultPath(id), done.getString(ProgressBar.ATTRIBUTE_RESULT_LINK));
+
+		final HttpResponse<byte[]> result = get(jobService.getResultPath(id));
+		assertEquals(200, result.statusCode());
+		assertEquals("a;b", new String(result.body(), StandardCharsets.UTF_8));
+		assertEquals("attachment; filename=\"export.csv\"", result.headers().firstValue("Content-Disposition").orElse(null));
+
+		// Finished jobs are evicted after their TTL
+		jobService.setResultTTL_ms(0);
+		Thread.sleep(5);
+		final JSONObject evicted = new JSONObject(new String(send(statusPath, "POST").body(), StandardCharsets.UTF_8));
+		assertEquals("true", evicted.getString(ProgressBar.ATTRIBUTE_FAILED));
+		assertFalse(evicted.has(ProgressBar.ATTRIBUTE_POLL_PERIOD));
+		assertEquals(404, get(jobService.getResultPath(id)).statusCode());
+		assertTrue(jobService.getEvictedJobs() >= 1);
+	}
+
+	@Test
+	public void metrics() throws Exception {
+		registerWebService("/orders/{id}", (uri, request, response) ->
+				new Paragraph("order %s", PathVariables.of(request).getString("id")).toJsonMap());
+		startBackend(new Page("Index", "/index"));
+		m_backend.enableMetricsEndpoint();
+		final MetricsRegistry metrics = m_backend.getMetrics();
+
+		assertEquals(200, send("/orders/1", "POST").statusCode());
+		assertEquals(200, send("/orders/2", "POST").statusCode());
+		// Requests are recorded once complete, which may be after the client has read the response
+		final long end = System.currentTimeMillis() + 5_000;
+		while(metrics.getRequests(MetricsRegistry.ServiceType.WEB, "/orders/{id}") < 2 && System.currentTimeMillis() < end) {
+			Thread.sleep(5);
+		}
+		// Calls without HTTP request of their own are recorded under the same route
+		m_backend.callWebService(ServiceCall.of("/orders/3", new JSONObject()));
+		assertEquals(3, metrics.getRequests(MetricsRegistry.ServiceType.WEB, "/orders/{id}"));
+		assertTrue(metrics.getResponseBytes(MetricsRegistry.ServiceType.WEB, "/orders/{id}") > 0);
+		assertTrue(metrics.getLatencyPercentile_ms(MetricsRegistry.ServiceType.WEB, "/orders/{id}", 99) > 0);
+		assertEquals(0, metrics.getInFlightRequests(MetricsRegistry.ServiceType.WEB));
+		assertEquals(2, m_backend.getSuccessfulResponses());
+
+		final HttpResponse<byte[]> scrape = get(TUIBackend.PATH_TO_METRICS);
+		assertEquals(200, scrape.statusCode());
+		assertEquals(MetricsRegistry.CONTENT_TYPE, scrape.headers().firstValue("Content-Type").orElse(null));
+		final String text = new String(scrape.body(), StandardCharsets.UTF_8);
+		assertTrue(text.contains("# TYPE tui_request_duration_seconds histogram\n"));
+		assertTrue(text.contains("tui_request_duration_seconds_count{type=\"web\",route=\"/orders/{id}\"} 3\n"));
+		assertTrue(text.contains("tui_request_duration_seconds_bucket{type=\"web\",route=\"/orders/{id}\",le=\"+Inf\"} 3\n"));
+		assertTrue(text.contains("tui_responses_total{type=\"web\",route=\"/orders/{id}\",code=\"2xx\"} 3\n"));
+		assertTrue(text.contains("# TYPE tui_requests_rejected_total counter\n"));
+		assertTrue(text.contains("# TYPE tui_compressed_responses_total counter\n"));
+		assertTrue(text.contains("tui_compression_output_bytes_total "));
+		assertTrue(text.contains("tui_drain_abandoned_requests 0\n"));
+	}
+
+	@Test
+	public void mount() throws Exception {
+		registerWebService("/orders/{id}", (uri, request, response) -> new Paragraph("host order").toJsonMap());
+		final TUIBackend app = new TUIBackend();
+		final Style appStyle = new Style();
+		appStyle.setColorForAction(Color.RED);
+		app.setStyle(appStyle);
+		app.registerPage(new Page("App", "/index"));
+		app.registerWebService("/orders/{id}", (uri, request, response) ->
+				new Paragraph("app order %s", PathVariables.of(request).getString("id")).toJsonMap());
+		m_backend.mount("/app", app);
+		startBackend(new Page("Index", "/index"));
+
+		assertEquals(m_backend.getPort(), app.getPort());
+		assertEquals("/app", app.getContextPath());
+		final HttpClient client = HttpClient.newHttpClient();
+		final HttpResponse<String> hostOrder = client.send(HttpRequest.newBuilder(URI.create(m_backend.sourceToURI("/orders/1")))
+				.POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+		assertTrue(hostOrder.body().contains("host order"));
+		final HttpResponse<String> appOrder = client.send(HttpRequest.newBuilder(URI.create(app.sourceToURI("/orders/1")))
+				.POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+		assertTrue(appOrder.body().contains("app order 1"));
+
+		// Each application serves its own assets, under its context path
+		final String appStylePath = app.getHashedPath(TUIBackend.PATH_TO_CSS);
+		assertTrue(appStylePath.startsWith("/app/"));
+		assertFalse(appStylePath.equals("/app" + m_backend.getHashedPath(TUIBackend.PATH_TO_CSS)));
+		final HttpResponse<String> page = client.send(HttpRequest.newBuilder(URI.create(app.sourceToURI("/index"))).build(),
+				HttpResponse.BodyHandlers.ofString());
+		assertTrue(page.body().contains(appStylePath));
+		assertTrue(page.body().contains(app.getHashedPath(TUIBackend.PATH_TO_SCRIPT)));
+		assertTrue(page.body().contains("const CONTEXT_PATH='/app';"));
+		assertEquals(200, client.send(HttpRequest.newBuilder(URI.create(m_backend.sourceToURI(appStylePath))).build(),
+				HttpResponse.BodyHandlers.discarding()).statusCode());
+		assertEquals(200, client.send(HttpRequest.newBuilder(URI.create(app.sourceToURI(TUIBackend.PATH_TO_SCRIPT))).build(),
+				HttpResponse.BodyHandlers.discarding()).statusCode());
+
+		// Metrics are kept by application
+		final long end = System.currentTimeMillis() + 5_000;
+		while(app.getMetrics().getRequests(MetricsRegistry.ServiceType.WEB, "/orders/{id}") < 1 && System.currentTimeMillis() < end) {
+			Thread.sleep(5);
+		}
+		assertEquals(1, app.getMetrics().getRequests(MetricsRegistry.ServiceType.WEB, "/orders/{id}"));
+		assertEquals(1, m_backend.getMetrics().getRequests(MetricsRegistry.ServiceType.WEB, "/orders/{id}"));
+
+		try {
+			m_backend.mount("/other", new TUIBackend());
+			fail();
+		} catch(UIConfigurationException e) {
+			// expected: the host is started
+		}
+		try {
+			app.stop();
+			fail();
+		} catch(UIConfigurationException e) {
+			// expected: stopped by the host
+		}
+	}
+
+	@Test
+	public void mountedContextPaths() {
+		final TUIBackend host = new TUIBackend();
+		for(String contextPath : new String[] { null, "", "/", "app", "/app/" }) {
+			try {
+				host.mount(contextPath, new TUIBackend());
+				fail(contextPath);
+			} catch(UIConfigurationException e) {
+				// expected
+			}
+		}
+		final TUIBackend app = new TUIBackend();
+		host.mount("/app", app);
+		try {
+			host.mount("/app", new TUIBackend());
+			fail();
+		} catch(UIConfigurationException e) {
+			// expected: already mounted
+		}
+		try {
+			new TUIBackend().mount("/other", app);
+			fail();
+		} catch(UIConfigurationException e) {
+			// expected: mounted once
+		}
+		assertEquals(Map.of("/app", app), host.getMountedBackends());
+	}
+
+	@Test
+	public void accessLog() throws Exception {
+		final File file = new File(Files.createTempDirectory("tui-access-log").toFile(), "access.log");
+		registerWebService("/orders/{id}", (uri, request, response) -> new Paragraph("order").toJsonMap());
+		m_backend.setAccessLog(AccessLogSettings.of(file));
+		startBackend(new Page("Index", "/index"));
+
+		assertEquals(200, send("/orders/1", "POST", RequestContext.REFRESH_KEY_HEADER, "page1/table").statusCode());
+		m_backend.stop(); // writes the pending entries
+
+		final List<String> lines = Files.readAllLines(file.toPath());
+		assertEquals(1, lines.size());
+		final JSONObject entry = new JSONObject(lines.get(0));
+		assertEquals("/orders/1", entry.getString("path"));
+		assertEquals("/orders/{id}", entry.getString("route"));
+		assertEquals("web", entry.getString("type"));
+		assertEquals(200, entry.getInt("status"));
+		assertTrue(entry.getLong("bytes") > 0);
+		assertEquals("page1", entry.getString("session"));
+		assertEquals(0, m_backend.getAccessLogDropped());
+	}
+
+	private HttpResponse<byte[]> sendQuietly(String path, String... headers) {
+		try {
+			return send(path, "POST", headers);
+		} catch(IOException | InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void waitForInFlightRequests(int expected) throws InterruptedException {
+		final long end = System.currentTimeMillis() + 5_000;
+		while(m_backend.getInFlightRequests() != expected && System.currentTimeMillis() < end) {
+			Thread.sleep(5);
+		}
+		assertEquals(expected, m_backend.getInFlightRequests());
+	}
+
+	private static void waitForCount(AtomicInteger counter, int expected) throws InterruptedException {
+		final long end = System.currentTimeMillis() + 5_000;
+		while(counter.get() != expected && System.currentTimeMillis() < end) {
+			Thread.sleep(5);
+		}
+		assertEquals(expected, counter.get());
+	}
+
+	private String postParameters(String path, String key, String value) throws IOException, InterruptedException {
+		final HttpRequest request = HttpRequest.newBuilder(URI.create(m_backend.sourceToURI(path)))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(String.format("[[\"%s\",\"%s\"]]", key, value)))
+				.build();
+		final HttpResponse<String> result = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+		assertEquals(200, result.statusCode());
+		return result.body();
+	}
+
+	private HttpResponse<byte[]> get(String path, String... headers) throws IOException, InterruptedException {
+		return send(path, "GET", headers);
+	}
+
+	private HttpResponse<byte[]> send(String path, String method, String... headers) throws IOException, InterruptedException {
+		final HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(m_backend.sourceToURI(path)))
+				.method(method, HttpRequest.BodyPublishers.noBody());
+		if(headers.length > 0) {
+			request.headers(headers);
+		}
+		return HttpClient.newHttpClient().send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+	}
+
+	private HttpResponse<byte[]> post(String path, String acceptedEncoding) throws IOException, InterruptedException {
+		final HttpRequest request = HttpRequest.newBuilder(URI.create(m_backend.sourceToURI(path)))
+				.header("Accept-Encoding", acceptedEncoding)
+				.POST(HttpRequest.BodyPublishers.noBody())
+				.build();
+		final HttpResponse<byte[]> result = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofByteArray());
+		assertEquals(200, result.statusCode());
+		return result;
+	}
+}
@@ -16,11 +16,14 @@ SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package tui.ui.components;
 
 import org.junit.Test;
+import tui.http.TUIBackend;
 
 import java.util.Map;
 import java.util.TreeMap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class PageTest {
 
@@ -34,4 +37,13 @@ public class PageTest {
 				Page.generateSessionParametersInitialization("testMap", params));
 	}
 
+	@Test
+	public void cancellation() {
+		final Page page = new Page("Index");
+		assertFalse(page.toHTMLNode().toHTML().contains("CANCEL_SOURCE"));
+
+		page.enableCancellation();
+		assertTrue(page.toHTMLNode().toHTML().contains(String.format("const CANCEL_SOURCE='%s';", TUIBackend.PATH_TO_CANCEL)));
+	}
+
 }
\ No newline at end of file
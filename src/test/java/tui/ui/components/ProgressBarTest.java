@@ -0,0 +1,71 @@
+/* Copyright (c) 2024, Mathieu Bordas
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+
+1- Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+2- Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+3- Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package tui.ui.components;
+
+import org.junit.Test;
+import org.openqa.selenium.By;
+import tui.json.JsonMap;
+import tui.test.Browser;
+import tui.utils.TestUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProgressBarTest {
+
+	@Test
+	public void html() {
+		final ProgressBar progressBar = new ProgressBar().setProgress(40, "Exporting")
+				.setResultLink("/result", "export.csv");
+
+		TestUtils.assertHTMLProcedure(() -> progressBar, (prefix, element) -> {
+			assertTrue(prefix, Browser.getClasses(element).contains(ProgressBar.HTML_CLASS));
+			assertEquals(prefix, "40", element.findElement(By.tagName("progress")).getAttribute("value"));
+			assertEquals(prefix, "Exporting", element.findElement(By.className(ProgressBar.HTML_CLASS_MESSAGE)).getText());
+			assertEquals(prefix, "export.csv", element.findElement(By.className(ProgressBar.HTML_CLASS_RESULT)).getText());
+		});
+	}
+
+	@Test
+	public void progressIsBounded() {
+		assertEquals(100, new ProgressBar().setProgress(120, null).getPercent());
+		assertEquals(0, new ProgressBar().setProgress(-5, null).getPercent());
+	}
+
+	@Test
+	public void pollPeriodOnlyWithSource() {
+		final ProgressBar progressBar = new ProgressBar().setPollPeriod_ms(500);
+		assertFalse(progressBar.toHTMLNode().toHTML().contains(ProgressBar.HTML_ATTRIBUTE_POLL_PERIOD));
+		assertNull(progressBar.toJsonMap().getAttributeOrNull(ProgressBar.ATTRIBUTE_POLL_PERIOD));
+
+		progressBar.setSource("/jobs/1");
+		assertTrue(progressBar.toHTMLNode().toHTML().contains(ProgressBar.HTML_ATTRIBUTE_POLL_PERIOD + "=\"500\""));
+		final JsonMap json = progressBar.toJsonMap();
+		assertEquals(500, json.getLongAttribute(ProgressBar.ATTRIBUTE_POLL_PERIOD));
+		assertEquals("/jobs/1", json.getAttribute(UIRefreshableComponent.ATTRIBUTE_SOURCE));
+	}
+
+	@Test
+	public void failed() {
+		final ProgressBar progressBar = new ProgressBar().setProgress(30, "Reading").setFailed("Disk full");
+		assertTrue(progressBar.isFailed());
+		assertEquals("Disk full", progressBar.getMessage());
+		assertTrue(progressBar.toHTMLNode().toHTML().contains(ProgressBar.HTML_CLASS_FAILED));
+		assertEquals("true", progressBar.toJsonMap().getAttribute(ProgressBar.ATTRIBUTE_FAILED));
+	}
+}